@@ -0,0 +1,417 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: BatchEnvironment.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file runs many games of the same board size at once for training
+ bots. Instead of one object per game, every game's bitboards sit end to
+ end in a few shared arrays, and the players and goals in int arrays, so
+ stepping all of them is a walk over a few arrays. A step takes an action
+ for every game and writes the rewards, done flags and, if asked for,
+ observations into buffers the caller made once, so stepping makes no
+ garbage. With more than one thread, worker threads that live as long as
+ the environment each step their own slice of the games.
+
+ Each game's bitsets start on a word boundary, so a cell of game g is bit
+ g * stride + cell of the shared arrays and BitboardGameState's bitset
+ helpers work on them unchanged.
+ */
+
+import java.util.concurrent.Phaser;
+
+/**
+ * N Streamline games stepped together. Games that are won or stuck are put
+ * back to their starting state right after the step that ended them.
+ */
+public class BatchEnvironment implements AutoCloseable {
+    // Actions are Direction ordinals, or NO_ACTION to leave a game alone
+    static final int NO_ACTION = -1;
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    static final float MOVE_REWARD = -0.01f;
+    static final float BLOCKED_REWARD = -0.05f;    // the player didn't move
+    static final float WIN_REWARD = 1f;
+    static final float STUCK_REWARD = -1f;         // no way to move at all
+
+    // What observe() writes for each cell
+    static final byte EMPTY = 0;
+    static final byte OBSTACLE = 1;
+    static final byte TRAIL = 2;
+    static final byte PLAYER = 3;
+    static final byte GOAL = 4;
+
+    final int count, height, width, cells;
+    final int stride;                   // bits per game in the bitsets
+
+    // Row major and column major bitsets of every game, end to end
+    final long[] obstacles, obstaclesT, trails, trailsT;
+    final long[] startTrails, startTrailsT;
+    final int[] playerRow, playerCol, goalRow, goalCol;
+    final int[] startRow, startCol;
+
+    // The buffers of the step in progress, for the workers
+    int[] actions;
+    float[] rewards;
+    boolean[] done;
+    byte[] observations;
+
+    final Thread[] workers;
+    final Phaser phaser;                // workers and the stepping thread
+    volatile boolean closed;
+
+    /**
+     * Constructor that makes count empty boards, stepped on one thread.
+     * @param count how many games, type int
+     * @param height,width the board size of every game, type int
+     * @return none, constructor method
+     */
+    public BatchEnvironment(int count, int height, int width) {
+        this(count, height, width, 1);
+    }
+
+    /**
+     * Constructor that makes count empty boards. Call setLevel() for each
+     * game before stepping.
+     * @param count how many games, type int
+     * @param height,width the board size of every game, type int
+     * @param threads how many threads step the games, counting the one that
+     * calls step(), type int
+     * @return none, constructor method
+     */
+    public BatchEnvironment(int count, int height, int width, int threads) {
+        this.count = count;
+        this.height = height;
+        this.width = width;
+        this.cells = height * width;
+        this.stride = BitboardGameState.wordCount(cells)
+            << BitboardGameState.WORD_SHIFT;
+        // Bit indices of every game have to fit in an int
+        if((long) count * stride > Integer.MAX_VALUE){
+            throw new IllegalArgumentException(count + " games of " + height
+                    + "x" + width + " are too many for one environment");
+        }
+        int words = (count * stride) >>> BitboardGameState.WORD_SHIFT;
+        obstacles = new long[words];
+        obstaclesT = new long[words];
+        trails = new long[words];
+        trailsT = new long[words];
+        startTrails = new long[words];
+        startTrailsT = new long[words];
+        playerRow = new int[count];
+        playerCol = new int[count];
+        goalRow = new int[count];
+        goalCol = new int[count];
+        startRow = new int[count];
+        startCol = new int[count];
+
+        threads = Math.max(1, Math.min(threads, count));
+        workers = new Thread[threads - 1];
+        phaser = new Phaser(threads);
+        for(int i = 0; i < workers.length; i++){
+            final int slice = i + 1;
+            workers[i] = new Thread(() -> work(slice), "batch-step-" + slice);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Puts a level in one game's slot and resets that game to it.
+     * @param game which game, type int
+     * @param level a level of this environment's board size, type
+     * BitboardGameState
+     * @return none
+     */
+    public void setLevel(int game, BitboardGameState level) {
+        if(level.height != height || level.width != width){
+            throw new IllegalArgumentException("level is " + level.height
+                    + "x" + level.width + ", environment is " + height + "x"
+                    + width);
+        }
+        int base = game * stride;
+        copyBits(level.obstacles, obstacles, base);
+        copyBits(level.trails, startTrails, base);
+        for(int row = 0; row < height; row++){
+            for(int col = 0; col < width; col++){
+                int cell = row * width + col;
+                int cellT = col * height + row;
+                setBit(obstaclesT, base + cellT,
+                        BitboardGameState.isSet(level.obstacles, cell));
+                setBit(startTrailsT, base + cellT,
+                        BitboardGameState.isSet(level.trails, cell));
+            }
+        }
+        startRow[game] = level.playerRow;
+        startCol[game] = level.playerCol;
+        goalRow[game] = level.goalRow;
+        goalCol[game] = level.goalCol;
+        reset(game);
+    }
+
+    private void copyBits(long[] from, long[] to, int base) {
+        System.arraycopy(from, 0, to, base >>> BitboardGameState.WORD_SHIFT,
+                from.length);
+    }
+
+    private static void setBit(long[] bits, int index, boolean value) {
+        if(value){
+            BitboardGameState.setBit(bits, index);
+        }
+        else{
+            BitboardGameState.clearBit(bits, index);
+        }
+    }
+
+    /**
+     * Puts a game back to its starting state.
+     * @param game which game, type int
+     * @return none
+     */
+    public void reset(int game) {
+        int word = (game * stride) >>> BitboardGameState.WORD_SHIFT;
+        int words = stride >>> BitboardGameState.WORD_SHIFT;
+        System.arraycopy(startTrails, word, trails, word, words);
+        System.arraycopy(startTrailsT, word, trailsT, word, words);
+        playerRow[game] = startRow[game];
+        playerCol[game] = startCol[game];
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Stepping
+    //-----------------------------------------------------------------------
+
+    /**
+     * Takes one action in every game. A game that is won or can't move
+     * any more is marked done and reset, so its observation is already of
+     * the next episode.
+     * @param actions a Direction ordinal or NO_ACTION per game, type int[]
+     * @param rewards filled with each game's reward, type float[]
+     * @param done filled with whether each game ended, type boolean[]
+     * @param observations filled with count * height * width cell codes,
+     * or null to skip them, type byte[]
+     * @return none
+     */
+    public void step(int[] actions, float[] rewards, boolean[] done,
+            byte[] observations) {
+        this.actions = actions;
+        this.rewards = rewards;
+        this.done = done;
+        this.observations = observations;
+        if(workers.length == 0){
+            stepSlice(0);
+            return;
+        }
+        phaser.arriveAndAwaitAdvance();     // starts the workers
+        stepSlice(0);
+        phaser.arriveAndAwaitAdvance();     // waits for them to finish
+    }
+
+    /**
+     * What each worker does until the environment is closed.
+     * @param slice which slice of the games it steps, type int
+     * @return none
+     */
+    private void work(int slice) {
+        while(true){
+            phaser.arriveAndAwaitAdvance();
+            if(closed){
+                phaser.arriveAndDeregister();
+                return;
+            }
+            stepSlice(slice);
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Steps one slice of the games, one slice per thread.
+     * @param slice type int
+     * @return none
+     */
+    private void stepSlice(int slice) {
+        int threads = workers.length + 1;
+        int first = (int) ((long) count * slice / threads);
+        int last = (int) ((long) count * (slice + 1) / threads);
+        for(int game = first; game < last; game++){
+            int action = actions[game];
+            if(action == NO_ACTION){
+                rewards[game] = 0;
+                done[game] = false;
+            }
+            else if(!slide(game, DIRECTIONS[action])){
+                rewards[game] = BLOCKED_REWARD;
+                done[game] = false;
+            }
+            else if(playerRow[game] == goalRow[game]
+                    && playerCol[game] == goalCol[game]){
+                rewards[game] = WIN_REWARD;
+                done[game] = true;
+                reset(game);
+            }
+            else if(isStuck(game)){
+                rewards[game] = STUCK_REWARD;
+                done[game] = true;
+                reset(game);
+            }
+            else{
+                rewards[game] = MOVE_REWARD;
+                done[game] = false;
+            }
+            if(observations != null){
+                observe(game, observations);
+            }
+        }
+    }
+
+    /**
+     * Slides a game's player like BitboardGameState.move(), on the shared
+     * bitsets.
+     * @param game type int
+     * @param direction type Direction
+     * @return true if the player moved, type boolean
+     */
+    private boolean slide(int game, Direction direction) {
+        switch (direction) {
+            case RIGHT:
+                return slideRow(game, width - 1);
+            case LEFT:
+                return slideRow(game, 0);
+            case DOWN:
+                return slideCol(game, height - 1);
+            case UP:
+                return slideCol(game, 0);
+            default:
+                return false;
+        }
+    }
+
+    private boolean slideRow(int game, int edge) {
+        int base = game * stride;
+        int row = playerRow[game];
+        int col = playerCol[game];
+        int rowStart = base + row * width;
+        int goal = goalRow[game] == row ? goalCol[game] : SlideRules.NOT_FOUND;
+        int stop = SlideRules.stop(obstacles, trails, rowStart, col, edge,
+                goal);
+        if(stop == col){
+            return false;
+        }
+        SlideRules.layTrail(trails, trailsT, rowStart, base + row, height,
+                SlideRules.runFirst(col, stop), SlideRules.runLast(col, stop),
+                true);
+        playerCol[game] = stop;
+        return true;
+    }
+
+    private boolean slideCol(int game, int edge) {
+        int base = game * stride;
+        int row = playerRow[game];
+        int col = playerCol[game];
+        int colStart = base + col * height;
+        int goal = goalCol[game] == col ? goalRow[game] : SlideRules.NOT_FOUND;
+        int stop = SlideRules.stop(obstaclesT, trailsT, colStart, row, edge,
+                goal);
+        if(stop == row){
+            return false;
+        }
+        SlideRules.layTrail(trailsT, trails, colStart, base + col, width,
+                SlideRules.runFirst(row, stop), SlideRules.runLast(row, stop),
+                true);
+        playerRow[game] = stop;
+        return true;
+    }
+
+    /**
+     * Whether a game's player is boxed in, so no action can move it.
+     * @param game type int
+     * @return true if every side is an edge, obstacle or trail, type
+     * boolean
+     */
+    private boolean isStuck(int game) {
+        int row = playerRow[game];
+        int col = playerCol[game];
+        return isBlocked(game, row - 1, col) && isBlocked(game, row + 1, col)
+            && isBlocked(game, row, col - 1) && isBlocked(game, row, col + 1);
+    }
+
+    private boolean isBlocked(int game, int row, int col) {
+        if(row < 0 || row >= height || col < 0 || col >= width){
+            return true;
+        }
+        if(row == goalRow[game] && col == goalCol[game]){
+            return false;
+        }
+        int index = game * stride + row * width + col;
+        return BitboardGameState.isSet(obstacles, index)
+            || BitboardGameState.isSet(trails, index);
+    }
+
+    //-----------------------------------------------------------------------
+    //                            Observations
+    //-----------------------------------------------------------------------
+
+    /**
+     * Writes one game's board as cell codes, row major, at
+     * game * height * width in the buffer.
+     * @param game type int
+     * @param out type byte[]
+     * @return none
+     */
+    public void observe(int game, byte[] out) {
+        int base = game * stride;
+        int offset = game * cells;
+        for(int cell = 0; cell < cells; cell++){
+            out[offset + cell] =
+                BitboardGameState.isSet(obstacles, base + cell) ? OBSTACLE
+                : BitboardGameState.isSet(trails, base + cell) ? TRAIL
+                : EMPTY;
+        }
+        out[offset + goalRow[game] * width + goalCol[game]] = GOAL;
+        out[offset + playerRow[game] * width + playerCol[game]] = PLAYER;
+    }
+
+    /**
+     * Writes every game's board, as observe(game, out) does.
+     * @param out count * height * width bytes, type byte[]
+     * @return none
+     */
+    public void observeAll(byte[] out) {
+        for(int game = 0; game < count; game++){
+            observe(game, out);
+        }
+    }
+
+    /**
+     * Copies one game out as a BitboardGameState, e.g. to solve or save it.
+     * @param game type int
+     * @return the copy, type BitboardGameState
+     */
+    public BitboardGameState toState(int game) {
+        int word = (game * stride) >>> BitboardGameState.WORD_SHIFT;
+        int words = BitboardGameState.wordCount(cells);
+        long[] obstacleCopy = new long[words];
+        long[] trailCopy = new long[words];
+        System.arraycopy(obstacles, word, obstacleCopy, 0, words);
+        System.arraycopy(trails, word, trailCopy, 0, words);
+        return BitboardGameState.fromBitsets(height, width, playerRow[game],
+                playerCol[game], goalRow[game], goalCol[game], obstacleCopy,
+                trailCopy);
+    }
+
+    /**
+     * Stops the worker threads.
+     * @param none
+     * @return none
+     */
+    @Override
+    public void close() {
+        if(closed || workers.length == 0){
+            return;
+        }
+        closed = true;
+        phaser.arriveAndDeregister();
+    }
+}
@@ -0,0 +1,698 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: BitboardGameState.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file holds a compact version of a Streamline game state. Instead of a
+ char[][] board it keeps the obstacles and trails as bitsets packed into
+ long arrays, so moving the player is a couple of bit scans and copying a
+ state is a handful of array copies.
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A game state where obstacles and trails are stored as bitsets. Every
+ * bitset is kept twice: once in row major order, so horizontal slides are a
+ * scan along consecutive bits, and once in column major order, so vertical
+ * slides are too. The obstacle bitsets never change after the level is
+ * built and are shared between copies of the state.
+ */
+public class BitboardGameState implements LevelFormat.Cells {
+    //Chars used by the read only char view of the board
+    static final char TRAIL_CHAR = '.';
+    static final char OBSTACLE_CHAR = 'X';
+    static final char SPACE_CHAR = ' ';
+
+    // A long holds 64 cells, index >>> WORD_SHIFT finds the word for a cell
+    static final int WORD_SHIFT = 6;
+    static final int BITS_PER_WORD = 64;
+    static final int BIT_INDEX_MASK = BITS_PER_WORD - 1;
+    static final long ALL_BITS = -1L;
+
+    final int height;
+    final int width;
+
+    final long[] obstacles;         // row major, index = row * width + col
+    final long[] obstaclesT;        // column major, index = col * height + row
+    long[] trails;                  // row major
+    long[] trailsT;                 // column major
+
+    int playerRow, playerCol;
+    int goalRow, goalCol;
+    boolean levelPassed;
+
+    // Only set once enableHashing() is called, shared between copies
+    ZobristKeys zobrist;
+    long hash;                      // Zobrist hash of player and trails
+    // Only set once enableSlideTable() is called, shared between copies
+    SlideTable slides;
+
+    /**
+     * Constructor that creates an empty board of the given size with the
+     * player and goal at the given positions. Every way of making a level
+     * goes through here, so a player that starts on the goal has passed the
+     * level however it was loaded.
+     * @param height,width,playerRow,playerCol,goalRow,goalCol type int
+     * @return none, constructor method
+     */
+    public BitboardGameState(int height, int width, int playerRow,
+            int playerCol, int goalRow, int goalCol) {
+        this.height = height;
+        this.width = width;
+        this.obstacles = new long[wordCount(height * width)];
+        this.obstaclesT = new long[wordCount(height * width)];
+        this.trails = new long[wordCount(height * width)];
+        this.trailsT = new long[wordCount(height * width)];
+        this.playerRow = playerRow;
+        this.playerCol = playerCol;
+        this.goalRow = goalRow;
+        this.goalCol = goalCol;
+        this.levelPassed = playerRow == goalRow && playerCol == goalCol;
+    }
+
+    /**
+     * Copy constructor. The obstacle bitsets are shared since they never
+     * change, only the trails are copied.
+     * @param other the state to copy, type BitboardGameState
+     * @return none, constructor method
+     */
+    public BitboardGameState(BitboardGameState other) {
+        this.height = other.height;
+        this.width = other.width;
+        this.obstacles = other.obstacles;
+        this.obstaclesT = other.obstaclesT;
+        this.trails = other.trails.clone();
+        this.trailsT = other.trailsT.clone();
+        this.playerRow = other.playerRow;
+        this.playerCol = other.playerCol;
+        this.goalRow = other.goalRow;
+        this.goalCol = other.goalCol;
+        this.levelPassed = other.levelPassed;
+        this.zobrist = other.zobrist;
+        this.hash = other.hash;
+        this.slides = other.slides;
+    }
+
+    /**
+     * Builds a bitboard state out of a char board like the one in GameState.
+     * @param board the char board, type char[][]
+     * @param playerRow,playerCol,goalRow,goalCol type int
+     * @param levelPassed whether the level is already passed, it is anyway
+     * if the player is on the goal, type boolean
+     * @return the new state, type BitboardGameState
+     */
+    public static BitboardGameState fromBoard(char[][] board, int playerRow,
+            int playerCol, int goalRow, int goalCol, boolean levelPassed) {
+        BitboardGameState state = new BitboardGameState(board.length,
+                board[0].length, playerRow, playerCol, goalRow, goalCol);
+        for(int row = 0; row < state.height; row++){
+            for(int col = 0; col < state.width; col++){
+                if(board[row][col] == OBSTACLE_CHAR){
+                    state.setObstacle(row, col);
+                }
+                else if(board[row][col] == TRAIL_CHAR){
+                    state.setTrail(row, col);
+                }
+            }
+        }
+        state.levelPassed |= levelPassed;
+        return state;
+    }
+
+    /**
+     * Makes a level with the player and goal on random different cells and
+     * each other cell an obstacle with the given probability.
+     * @param height,width the board size, type int
+     * @param density chance of a cell being an obstacle, type double
+     * @param random type Random
+     * @return the new state, type BitboardGameState
+     */
+    public static BitboardGameState random(int height, int width,
+            double density, Random random) {
+        int cells = height * width;
+        int player = random.nextInt(cells);
+        int goal = cells == 1 ? player : random.nextInt(cells - 1);
+        if(goal >= player && cells > 1){
+            goal++;
+        }
+        BitboardGameState state = new BitboardGameState(height, width,
+                player / width, player % width, goal / width, goal % width);
+        for(int cell = 0; cell < cells; cell++){
+            if(cell != player && cell != goal
+                    && random.nextDouble() < density){
+                state.setObstacle(cell / width, cell % width);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Builds a bitboard state out of row major obstacle and trail bitsets,
+     * like the ones in a level pack. The column major copies are filled in
+     * by visiting only the set bits.
+     * @param height,width,playerRow,playerCol,goalRow,goalCol type int
+     * @param obstacles,trails row major bitsets, type long[]
+     * @return the new state, type BitboardGameState
+     */
+    public static BitboardGameState fromBitsets(int height, int width,
+            int playerRow, int playerCol, int goalRow, int goalCol,
+            long[] obstacles, long[] trails) {
+        BitboardGameState state = new BitboardGameState(height, width,
+                playerRow, playerCol, goalRow, goalCol);
+        for(int word = 0; word < obstacles.length; word++){
+            long bits = obstacles[word];
+            while(bits != 0){
+                int index = (word << WORD_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                state.setObstacle(index / width, index % width);
+                bits &= bits - 1;
+            }
+        }
+        for(int word = 0; word < trails.length; word++){
+            long bits = trails[word];
+            while(bits != 0){
+                int index = (word << WORD_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                state.setTrail(index / width, index % width);
+                bits &= bits - 1;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Builds a bitboard state out of the current state of a loaded level.
+     * @param level the level, type Streamline
+     * @return the new state, type BitboardGameState
+     */
+    public static BitboardGameState fromStreamline(Streamline level) {
+        return fromBoard(level.currentState.board,
+                level.currentState.playerRow, level.currentState.playerCol,
+                level.currentState.goalRow, level.currentState.goalCol,
+                level.currentState.levelPassed);
+    }
+
+    /**
+     * Turns on Zobrist hashing for this state and every copy made from it.
+     * From then on hash is kept up to date by every move and undo.
+     * @param keys the keys for this level, type ZobristKeys
+     * @return none
+     */
+    public void enableHashing(ZobristKeys keys) {
+        zobrist = keys;
+        hash = keys.playerKeys[playerRow * width + playerCol];
+        for(int word = 0; word < trails.length; word++){
+            long bits = trails[word];
+            while(bits != 0){
+                int index = (word << WORD_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                hash ^= keys.trailKeys[index];
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Gives this state and every copy made from it the shared slide table
+     * of its level, so moves no longer scan for obstacles. The state is
+     * hashed with the table's keys so whole slides are hashed at once too.
+     * Does nothing if the level is too big for a table.
+     * @param none
+     * @return none
+     */
+    public void enableSlideTable() {
+        SlideTable table = SlideTable.forLevel(this);
+        if(table != null){
+            enableHashing(table.keys);
+            slides = table;
+        }
+    }
+
+    // Multiplier used to mix words into contentHash (from splitmix64)
+    static final long HASH_MULTIPLIER = 0xBF58476D1CE4E5B9L;
+    static final int HASH_SHIFT = 31;
+
+    /**
+     * Hashes everything about the state: size, player, goal, obstacles and
+     * trails. Unlike the Zobrist hash this is the same no matter which keys
+     * are in use, so it can tell levels apart across runs.
+     * @param none
+     * @return the hash, type long
+     */
+    public long contentHash() {
+        long result = mix(0, height);
+        result = mix(result, width);
+        result = mix(result, playerRow * width + playerCol);
+        result = mix(result, goalRow * width + goalCol);
+        for(long word : obstacles){
+            result = mix(result, word);
+        }
+        for(long word : trails){
+            result = mix(result, word);
+        }
+        return result;
+    }
+
+    static long mix(long hash, long value) {
+        long result = (hash ^ value) * HASH_MULTIPLIER;
+        return result ^ (result >>> HASH_SHIFT);
+    }
+
+    //-----------------------------------------------------------------------
+    //                         Read only char view
+    //-----------------------------------------------------------------------
+
+    /**
+     * Getter for the char at a board position, the same char that would be
+     * in GameState's board.
+     * @param row,col type int
+     * @return OBSTACLE_CHAR, TRAIL_CHAR or SPACE_CHAR, type char
+     */
+    public char charAt(int row, int col) {
+        int index = row * width + col;
+        if(isSet(obstacles, index)){
+            return OBSTACLE_CHAR;
+        }
+        if(isSet(trails, index)){
+            return TRAIL_CHAR;
+        }
+        return SPACE_CHAR;
+    }
+
+    /**
+     * Copies the board into a new char array in the GameState layout.
+     * @param none
+     * @return the board, type char[][]
+     */
+    public char[][] toCharBoard() {
+        char[][] board = new char[height][width];
+        for(int row = 0; row < height; row++){
+            for(int col = 0; col < width; col++){
+                board[row][col] = charAt(row, col);
+            }
+        }
+        return board;
+    }
+
+    public boolean isObstacle(int row, int col) {
+        return isSet(obstacles, row * width + col);
+    }
+
+    public boolean isTrail(int row, int col) {
+        return isSet(trails, row * width + col);
+    }
+
+    /**
+     * Places an obstacle. Only meant to be used while building a level.
+     * @param row,col type int
+     * @return none
+     */
+    public void setObstacle(int row, int col) {
+        setBit(obstacles, row * width + col);
+        setBit(obstaclesT, col * height + row);
+        // The table was made for the old obstacles
+        slides = null;
+    }
+
+    /**
+     * Places a trail marker.
+     * @param row,col type int
+     * @return none
+     */
+    public void setTrail(int row, int col) {
+        if(zobrist != null && !isTrail(row, col)){
+            hash ^= zobrist.trailKeys[row * width + col];
+        }
+        setBit(trails, row * width + col);
+        setBit(trailsT, col * height + row);
+    }
+
+    /**
+     * Removes a trail marker.
+     * @param row,col type int
+     * @return none
+     */
+    public void clearTrail(int row, int col) {
+        if(zobrist != null && isTrail(row, col)){
+            hash ^= zobrist.trailKeys[row * width + col];
+        }
+        clearBit(trails, row * width + col);
+        clearBit(trailsT, col * height + row);
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Movement
+    //-----------------------------------------------------------------------
+
+    /**
+     * Slides the player in the given direction until it hits an obstacle,
+     * a trail, the edge of the board, or lands on the goal. Every cell the
+     * player leaves gets a trail marker.
+     * @param direction type Direction
+     * @return true if the player moved, type boolean
+     */
+    public boolean move(Direction direction) {
+        if(levelPassed){
+            return false;
+        }
+        switch (direction) {
+            case RIGHT:
+                return slideRow(direction, width - 1);
+            case LEFT:
+                return slideRow(direction, 0);
+            case DOWN:
+                return slideCol(direction, height - 1);
+            case UP:
+                return slideCol(direction, 0);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Slides along the player's row, scanning the row major bitsets.
+     * @param direction LEFT or RIGHT, type Direction
+     * @param edge the last column that way, type int
+     * @return true if the player moved, type boolean
+     */
+    private boolean slideRow(Direction direction, int edge) {
+        int rowStart = playerRow * width;
+        int goal = goalRow == playerRow ? goalCol : SlideRules.NOT_FOUND;
+        int stop;
+        if(slides != null){
+            // Obstacles, the goal and the edge are already in the table,
+            // only a trail before its stop can cut the slide short
+            stop = SlideRules.stop(null, trails, rowStart, playerCol,
+                    slides.stop(playerRow, playerCol, direction), goal);
+        }
+        else{
+            stop = SlideRules.stop(obstacles, trails, rowStart, playerCol,
+                    edge, goal);
+        }
+        if(stop == playerCol){
+            return false;
+        }
+
+        // Trail every cell from the start up to, but not including, the stop
+        int first = SlideRules.runFirst(playerCol, stop);
+        int last = SlideRules.runLast(playerCol, stop);
+        if(zobrist != null){
+            if(isSet(trails, rowStart + playerCol)){
+                // The start cell keeps its old trail, cancel its key below
+                hash ^= zobrist.trailKeys[rowStart + playerCol];
+            }
+            hash ^= rowRunKey(playerRow, first, last);
+        }
+        SlideRules.layTrail(trails, trailsT, rowStart, playerRow, height,
+                first, last, true);
+        movePlayer(playerRow, stop);
+        return true;
+    }
+
+    /**
+     * Slides along the player's column, scanning the column major bitsets.
+     * @param direction UP or DOWN, type Direction
+     * @param edge the last row that way, type int
+     * @return true if the player moved, type boolean
+     */
+    private boolean slideCol(Direction direction, int edge) {
+        int colStart = playerCol * height;
+        int goal = goalCol == playerCol ? goalRow : SlideRules.NOT_FOUND;
+        int stop;
+        if(slides != null){
+            stop = SlideRules.stop(null, trailsT, colStart, playerRow,
+                    slides.stop(playerRow, playerCol, direction), goal);
+        }
+        else{
+            stop = SlideRules.stop(obstaclesT, trailsT, colStart, playerRow,
+                    edge, goal);
+        }
+        if(stop == playerRow){
+            return false;
+        }
+
+        int first = SlideRules.runFirst(playerRow, stop);
+        int last = SlideRules.runLast(playerRow, stop);
+        if(zobrist != null){
+            if(isSet(trailsT, colStart + playerRow)){
+                hash ^= zobrist.trailKeys[playerRow * width + playerCol];
+            }
+            hash ^= colRunKey(playerCol, first, last);
+        }
+        SlideRules.layTrail(trailsT, trails, colStart, playerCol, width,
+                first, last, true);
+        movePlayer(stop, playerCol);
+        return true;
+    }
+
+    /**
+     * The xor of the trail keys of a run of cells in a row, from the slide
+     * table if it was made with the same keys.
+     * @param row type int
+     * @param first,last the columns, both included, type int
+     * @return the xor, type long
+     */
+    private long rowRunKey(int row, int first, int last) {
+        if(slides != null && slides.keys == zobrist){
+            return slides.rowRunKey(row, first, last);
+        }
+        long run = 0;
+        for(int col = first; col <= last; col++){
+            run ^= zobrist.trailKeys[row * width + col];
+        }
+        return run;
+    }
+
+    /**
+     * The xor of the trail keys of a run of cells in a column, from the
+     * slide table if it was made with the same keys.
+     * @param col type int
+     * @param first,last the rows, both included, type int
+     * @return the xor, type long
+     */
+    private long colRunKey(int col, int first, int last) {
+        if(slides != null && slides.keys == zobrist){
+            return slides.colRunKey(col, first, last);
+        }
+        long run = 0;
+        for(int row = first; row <= last; row++){
+            run ^= zobrist.trailKeys[row * width + col];
+        }
+        return run;
+    }
+
+    /**
+     * Puts the player on a new cell, keeping the hash and levelPassed
+     * up to date.
+     * @param row,col type int
+     * @return none
+     */
+    private void movePlayer(int row, int col) {
+        if(zobrist != null){
+            hash ^= zobrist.playerKeys[playerRow * width + playerCol]
+                ^ zobrist.playerKeys[row * width + col];
+        }
+        playerRow = row;
+        playerCol = col;
+        levelPassed = playerRow == goalRow && playerCol == goalCol;
+    }
+
+    /**
+     * Reverses a slide that started at the given cell and ended where the
+     * player is now, removing the trail it left behind.
+     * @param fromRow,fromCol where the slide started, type int
+     * @param keepStartTrail true if the start cell already had a trail
+     * before the slide, type boolean
+     * @return none
+     */
+    public void undoSlide(int fromRow, int fromCol, boolean keepStartTrail) {
+        if(fromRow == playerRow){
+            int first = SlideRules.runFirst(fromCol, playerCol);
+            int last = SlideRules.runLast(fromCol, playerCol);
+            SlideRules.layTrail(trails, trailsT, fromRow * width, fromRow,
+                    height, first, last, false);
+            if(zobrist != null){
+                hash ^= rowRunKey(fromRow, first, last);
+            }
+        }
+        else{
+            int first = SlideRules.runFirst(fromRow, playerRow);
+            int last = SlideRules.runLast(fromRow, playerRow);
+            SlideRules.layTrail(trailsT, trails, fromCol * height, fromCol,
+                    width, first, last, false);
+            if(zobrist != null){
+                hash ^= colRunKey(fromCol, first, last);
+            }
+        }
+        if(keepStartTrail){
+            setTrail(fromRow, fromCol);
+        }
+        movePlayer(fromRow, fromCol);
+        // The player could move from there, so the level was not passed
+        levelPassed = false;
+    }
+
+    /**
+     * Puts the trails and player back the way they were when a history
+     * checkpoint was taken.
+     * @param checkpoint type MoveHistory.Checkpoint
+     * @return none
+     */
+    public void restore(MoveHistory.Checkpoint checkpoint) {
+        System.arraycopy(checkpoint.trails, 0, trails, 0, trails.length);
+        System.arraycopy(checkpoint.trailsT, 0, trailsT, 0, trailsT.length);
+        playerRow = checkpoint.playerRow;
+        playerCol = checkpoint.playerCol;
+        levelPassed = checkpoint.levelPassed;
+        if(zobrist != null){
+            enableHashing(zobrist);
+        }
+    }
+
+    //-----------------------------------------------------------------------
+    //                          Bitset helpers
+    //-----------------------------------------------------------------------
+
+    static int wordCount(int bits) {
+        return (bits + BIT_INDEX_MASK) >>> WORD_SHIFT;
+    }
+
+    static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> WORD_SHIFT] & (1L << index)) != 0;
+    }
+
+    static void setBit(long[] bits, int index) {
+        bits[index >>> WORD_SHIFT] |= 1L << index;
+    }
+
+    static void clearBit(long[] bits, int index) {
+        bits[index >>> WORD_SHIFT] &= ~(1L << index);
+    }
+
+    /**
+     * Sets every bit from first to last, both inclusive, a word at a time.
+     * @param bits,first,last type long[], int, int
+     * @return none
+     */
+    static void setRange(long[] bits, int first, int last) {
+        int firstWord = first >>> WORD_SHIFT;
+        int lastWord = last >>> WORD_SHIFT;
+        long firstMask = ALL_BITS << first;
+        long lastMask = ALL_BITS >>> (BIT_INDEX_MASK - (last & BIT_INDEX_MASK));
+        if(firstWord == lastWord){
+            bits[firstWord] |= firstMask & lastMask;
+            return;
+        }
+        bits[firstWord] |= firstMask;
+        Arrays.fill(bits, firstWord + 1, lastWord, ALL_BITS);
+        bits[lastWord] |= lastMask;
+    }
+
+    /**
+     * Clears every bit from first to last, both inclusive, a word at a time.
+     * @param bits,first,last type long[], int, int
+     * @return none
+     */
+    static void clearRange(long[] bits, int first, int last) {
+        int firstWord = first >>> WORD_SHIFT;
+        int lastWord = last >>> WORD_SHIFT;
+        long firstMask = ALL_BITS << first;
+        long lastMask = ALL_BITS >>> (BIT_INDEX_MASK - (last & BIT_INDEX_MASK));
+        if(firstWord == lastWord){
+            bits[firstWord] &= ~(firstMask & lastMask);
+            return;
+        }
+        bits[firstWord] &= ~firstMask;
+        Arrays.fill(bits, firstWord + 1, lastWord, 0L);
+        bits[lastWord] &= ~lastMask;
+    }
+
+    /**
+     * Finds the lowest index between from and to, both inclusive, that is
+     * set in either bitset.
+     * @param a,b,from,to type long[], long[], int, int
+     * @return the index, or -1 if there is none, type int
+     */
+    static int nextSetBit(long[] a, long[] b, int from, int to) {
+        int word = from >>> WORD_SHIFT;
+        int lastWord = to >>> WORD_SHIFT;
+        long bits = (a[word] | b[word]) & (ALL_BITS << from);
+        while(bits == 0){
+            if(++word > lastWord){
+                return -1;
+            }
+            bits = a[word] | b[word];
+        }
+        int index = (word << WORD_SHIFT) + Long.numberOfTrailingZeros(bits);
+        return index <= to ? index : -1;
+    }
+
+    /**
+     * Finds the lowest index between from and to, both inclusive, that is
+     * set.
+     * @param bits,from,to type long[], int, int
+     * @return the index, or -1 if there is none, type int
+     */
+    static int nextSetBit(long[] bits, int from, int to) {
+        int word = from >>> WORD_SHIFT;
+        int lastWord = to >>> WORD_SHIFT;
+        long set = bits[word] & (ALL_BITS << from);
+        while(set == 0){
+            if(++word > lastWord){
+                return -1;
+            }
+            set = bits[word];
+        }
+        int index = (word << WORD_SHIFT) + Long.numberOfTrailingZeros(set);
+        return index <= to ? index : -1;
+    }
+
+    /**
+     * Finds the highest index between from and to, both inclusive, that is
+     * set. Scans downwards starting at to.
+     * @param bits,from,to type long[], int, int
+     * @return the index, or -1 if there is none, type int
+     */
+    static int prevSetBit(long[] bits, int from, int to) {
+        int word = to >>> WORD_SHIFT;
+        int firstWord = from >>> WORD_SHIFT;
+        long set = bits[word]
+            & (ALL_BITS >>> (BIT_INDEX_MASK - (to & BIT_INDEX_MASK)));
+        while(set == 0){
+            if(--word < firstWord){
+                return -1;
+            }
+            set = bits[word];
+        }
+        int index = (word << WORD_SHIFT) + BIT_INDEX_MASK
+            - Long.numberOfLeadingZeros(set);
+        return index >= from ? index : -1;
+    }
+
+    /**
+     * Finds the highest index between from and to, both inclusive, that is
+     * set in either bitset. Scans downwards starting at to.
+     * @param a,b,from,to type long[], long[], int, int
+     * @return the index, or -1 if there is none, type int
+     */
+    static int prevSetBit(long[] a, long[] b, int from, int to) {
+        int word = to >>> WORD_SHIFT;
+        int firstWord = from >>> WORD_SHIFT;
+        long bits = (a[word] | b[word])
+            & (ALL_BITS >>> (BIT_INDEX_MASK - (to & BIT_INDEX_MASK)));
+        while(bits == 0){
+            if(--word < firstWord){
+                return -1;
+            }
+            bits = a[word] | b[word];
+        }
+        int index = (word << WORD_SHIFT) + BIT_INDEX_MASK
+            - Long.numberOfLeadingZeros(bits);
+        return index >= from ? index : -1;
+    }
+}
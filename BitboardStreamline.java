@@ -0,0 +1,269 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: BitboardStreamline.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file runs a level of Streamline on top of BitboardGameState. Levels
+ are still read and saved through Streamline, but moves and undos work on
+ the packed bitboards and the history only remembers each slide as a
+ packed move instead of a copy of the whole board.
+ */
+
+/**
+ * A Streamline level backed by a BitboardGameState. It has the same
+ * recordAndMove, undo and saveToFile methods as Streamline so the GUI can
+ * drive either one the same way.
+ */
+public class BitboardStreamline {
+    static final int INITIAL_CHANGED_SIZE = 16;
+    static final int GROWTH_FACTOR = 2;
+    // changedCount when every cell may have changed, after a rewind
+    static final int ALL_CELLS_CHANGED = -1;
+
+    BitboardGameState currentState;
+    Streamline source;                  // The level this was loaded from,
+                                        // null if it came from a pack
+    final long levelHash;               // contentHash of the start state
+
+    MoveHistory history = new MoveHistory();  // for undo and redo
+
+    // Goes up every time the state changes, so work started on an older
+    // state (like a hint) can tell that it is out of date
+    int version;
+
+    // Cells (row * width + col) whose trail changed in the last move or
+    // undo, only the first changedCount entries are used
+    int[] changedCells = new int[INITIAL_CHANGED_SIZE];
+    int changedCount;
+
+    /**
+     * Constructor that creates a default sized random level.
+     * @param none
+     * @return none, constructor method
+     */
+    public BitboardStreamline() {
+        this(new Streamline());
+    }
+
+    /**
+     * Constructor that loads a level from a file.
+     * @param filename the file to read the level from, type String
+     * @return none, constructor method
+     */
+    public BitboardStreamline(String filename) {
+        this(new Streamline(filename));
+    }
+
+    /**
+     * Constructor that takes over an already loaded level.
+     * @param level the level, type Streamline
+     * @return none, constructor method
+     */
+    public BitboardStreamline(Streamline level) {
+        this.source = level;
+        this.currentState = BitboardGameState.fromStreamline(level);
+        this.levelHash = currentState.contentHash();
+    }
+
+    /**
+     * Constructor that plays an already built state, for levels that were
+     * not read through Streamline.
+     * @param state the starting state, type BitboardGameState
+     * @return none, constructor method
+     */
+    public BitboardStreamline(BitboardGameState state) {
+        this.currentState = state;
+        this.levelHash = currentState.contentHash();
+    }
+
+    /**
+     * Moves the player and remembers where the move started so it can be
+     * undone. Nothing is recorded if the player could not move.
+     * @param direction type Direction
+     * @return none
+     */
+    void recordAndMove(Direction direction) {
+        long start = Metrics.start();
+        applyMove(direction);
+        Metrics.stop(Metrics.RECORD_AND_MOVE, start);
+    }
+
+    private void applyMove(Direction direction) {
+        int fromRow = currentState.playerRow;
+        int fromCol = currentState.playerCol;
+        boolean startHadTrail = currentState.isTrail(fromRow, fromCol);
+        changedCount = 0;
+        if(currentState.levelPassed){
+            return;
+        }
+        // A checkpoint has to be of the state before the move, but is only
+        // kept if the move is made
+        MoveHistory.Checkpoint before = history.checkpointBefore(currentState);
+        if(!currentState.move(direction)){
+            return;
+        }
+        int length = recordChangedRun(fromRow, fromCol,
+                currentState.playerRow, currentState.playerCol);
+        history.record(MoveHistory.pack(direction,
+                    fromRow * currentState.width + fromCol, length,
+                    startHadTrail), before);
+        version++;
+    }
+
+    /**
+     * Reverts the last recorded move, if there is one.
+     * @param none
+     * @return none
+     */
+    void undo() {
+        long start = Metrics.start();
+        applyUndo();
+        Metrics.stop(Metrics.UNDO, start);
+    }
+
+    private void applyUndo() {
+        changedCount = 0;
+        long move = history.undo();
+        if(move == MoveHistory.NO_MOVE){
+            return;
+        }
+        int startCell = MoveHistory.startCell(move);
+        int startRow = startCell / currentState.width;
+        int startCol = startCell % currentState.width;
+        recordChangedRun(startRow, startCol, currentState.playerRow,
+                currentState.playerCol);
+        currentState.undoSlide(startRow, startCol,
+                MoveHistory.startHadTrail(move));
+        version++;
+    }
+
+    /**
+     * Makes the last undone move again, if there is one.
+     * @param none
+     * @return none
+     */
+    void redo() {
+        changedCount = 0;
+        long move = history.redo();
+        if(move == MoveHistory.NO_MOVE){
+            return;
+        }
+        int fromRow = currentState.playerRow;
+        int fromCol = currentState.playerCol;
+        currentState.move(MoveHistory.direction(move));
+        recordChangedRun(fromRow, fromCol, currentState.playerRow,
+                currentState.playerCol);
+        version++;
+    }
+
+    /**
+     * Undoes up to count moves at once. Long jumps restore the closest
+     * history checkpoint and redo forward from it rather than undoing every
+     * move. Afterwards getChangedCount() is ALL_CELLS_CHANGED.
+     * @param count how many moves to undo, type int
+     * @return none
+     */
+    void rewind(int count) {
+        long target = Math.max(history.getOldestMove(),
+                history.position() - count);
+        MoveHistory.Checkpoint checkpoint =
+            history.checkpointAtOrBefore(target);
+        if(checkpoint == null
+                || history.position() - target <= target - checkpoint.move){
+            while(history.position() > target){
+                undo();
+            }
+        }
+        else{
+            history.seek(checkpoint);
+            currentState.restore(checkpoint);
+            while(history.position() < target){
+                currentState.move(MoveHistory.direction(history.redo()));
+            }
+        }
+        changedCount = ALL_CELLS_CHANGED;
+        version++;
+    }
+
+    /**
+     * Remembers the cells of a slide as the cells changed by the last move
+     * or undo: every cell from the start of the slide up to, but not
+     * including, where it ended.
+     * @param fromRow,fromCol where the slide started, type int
+     * @param toRow,toCol where the slide ended, type int
+     * @return the number of cells, type int
+     */
+    private int recordChangedRun(int fromRow, int fromCol, int toRow,
+            int toCol) {
+        int length = Math.abs(toRow - fromRow) + Math.abs(toCol - fromCol);
+        if(changedCells.length < length){
+            changedCells = new int[Math.max(length,
+                        changedCells.length * GROWTH_FACTOR)];
+        }
+        int rowStep = Integer.signum(toRow - fromRow);
+        int colStep = Integer.signum(toCol - fromCol);
+        int row = fromRow;
+        int col = fromCol;
+        for(int i = 0; i < length; i++){
+            changedCells[i] = row * currentState.width + col;
+            row += rowStep;
+            col += colStep;
+        }
+        changedCount = length;
+        return length;
+    }
+
+    /**
+     * Getter for the number of cells changed by the last move or undo.
+     * @param none
+     * @return the count, or ALL_CELLS_CHANGED after a rewind, type int
+     */
+    public int getChangedCount() {
+        return changedCount;
+    }
+
+    /**
+     * Getter for one of the cells changed by the last move or undo.
+     * @param i which changed cell, from 0 to getChangedCount() - 1, type int
+     * @return the cell as row * width + col, type int
+     */
+    public int getChangedCell(int i) {
+        return changedCells[i];
+    }
+
+    /**
+     * Saves the current state through the Streamline it was loaded from, so
+     * the file format stays the same.
+     * @param none
+     * @return none
+     */
+    void saveToFile() {
+        saveSnapshot(currentState);
+    }
+
+    /**
+     * Saves a copy of a state of this level. Used by SaveWriter so the file
+     * can be written on another thread while the game goes on. Levels that
+     * did not come from a Streamline borrow a default one just for its
+     * saveToFile.
+     * @param snapshot a state of this level, type BitboardGameState
+     * @return none
+     */
+    synchronized void saveSnapshot(BitboardGameState snapshot) {
+        long start = Metrics.start();
+        if(source == null){
+            source = new Streamline();
+        }
+        source.currentState.board = snapshot.toCharBoard();
+        source.currentState.playerRow = snapshot.playerRow;
+        source.currentState.playerCol = snapshot.playerCol;
+        source.currentState.goalRow = snapshot.goalRow;
+        source.currentState.goalCol = snapshot.goalCol;
+        source.currentState.levelPassed = snapshot.levelPassed;
+        source.saveToFile();
+        Metrics.stop(Metrics.SAVE_TO_FILE, start);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: BoardLayout.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file works out where every row and column of the board goes in the
+ scene, once per board or scene size, so laying out shapes is a table
+ lookup per cell instead of a division, and never makes garbage.
+ */
+
+/**
+ * Scene coordinates of the center of every board row and column, and the
+ * size of a board square, for one board size and scene size.
+ */
+public class BoardLayout {
+    int width, height;                  // board size
+    double sceneWidth, sceneHeight;
+    double squareSize;
+    double[] colX = new double[0];      // center x of each column
+    double[] rowY = new double[0];      // center y of each row
+
+    /**
+     * Recomputes the tables if the board or scene size changed. The tables
+     * only ever grow, so shrinking makes no garbage.
+     * @param width,height the board size, type int
+     * @param sceneWidth,sceneHeight the scene size, type double
+     * @return true if anything changed, type boolean
+     */
+    public boolean update(int width, int height, double sceneWidth,
+            double sceneHeight) {
+        if(width == this.width && height == this.height
+                && sceneWidth == this.sceneWidth
+                && sceneHeight == this.sceneHeight){
+            return false;
+        }
+        this.width = width;
+        this.height = height;
+        this.sceneWidth = sceneWidth;
+        this.sceneHeight = sceneHeight;
+        this.squareSize = GuiStreamline.squareSize(sceneWidth, sceneHeight,
+                width, height);
+        if(colX.length < width){
+            colX = new double[width];
+        }
+        if(rowY.length < height){
+            rowY = new double[height];
+        }
+        for(int col = 0; col < width; col++){
+            colX[col] = GuiStreamline.boardIdxToScene(col, width, sceneWidth);
+        }
+        for(int row = 0; row < height; row++){
+            rowY[row] = GuiStreamline.boardIdxToScene(row, height,
+                    sceneHeight);
+        }
+        return true;
+    }
+
+    /**
+     * Getter for the scene x of the center of a column.
+     * @param col type int
+     * @return the x, type double
+     */
+    public double x(int col) {
+        return colX[col];
+    }
+
+    /**
+     * Getter for the scene y of the center of a row.
+     * @param row type int
+     * @return the y, type double
+     */
+    public double y(int row) {
+        return rowY[row];
+    }
+
+    /**
+     * Getter for the size of a board square.
+     * @param none
+     * @return the size, type double
+     */
+    public double getSquareSize() {
+        return squareSize;
+    }
+}
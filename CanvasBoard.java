@@ -0,0 +1,158 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: CanvasBoard.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file draws the obstacles and trails of a level onto a Canvas instead
+ of making a shape for every cell, for boards too big for one node per
+ cell. The obstacles never change during a level, so they are drawn once
+ and kept as an image; the trails go on a transparent canvas above it, and
+ a move only redraws the cells it changed.
+ */
+
+import javafx.scene.Group;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * The obstacle and trail layers of the board as two nodes: an ImageView of
+ * the cached obstacles and a Canvas of trails.
+ */
+public class CanvasBoard extends Group {
+    // Same as the default fill of the RoundedSquares resetGrid() makes
+    static final Color OBSTACLE_FILL = Color.BLACK;
+    // Extra room cleared around a trail dot for its anti-aliased edge
+    static final double EDGE_MARGIN = 1;
+    static final int HALF_DIVISOR = 2;
+
+    final ImageView obstacleLayer = new ImageView();
+    final Canvas trailLayer = new Canvas();
+    final GraphicsContext trails = trailLayer.getGraphicsContext2D();
+
+    BitboardGameState state;            // the level being drawn
+    double sceneWidth, sceneHeight;
+    final BoardLayout layout = new BoardLayout();
+
+    /**
+     * Constructor that creates the empty layers.
+     * @param none
+     * @return none, constructor method
+     */
+    public CanvasBoard() {
+        obstacleLayer.setSmooth(false);
+        getChildren().addAll(obstacleLayer, trailLayer);
+    }
+
+    /**
+     * Starts drawing a new level, or the same level after the scene was
+     * resized. The obstacle image is redrawn and every trail is drawn
+     * again.
+     * @param state the level, type BitboardGameState
+     * @param sceneWidth,sceneHeight the scene size, type double
+     * @return none
+     */
+    public void reset(BitboardGameState state, double sceneWidth,
+            double sceneHeight) {
+        this.state = state;
+        this.sceneWidth = sceneWidth;
+        this.sceneHeight = sceneHeight;
+        layout.update(state.width, state.height, sceneWidth, sceneHeight);
+        obstacleLayer.setImage(drawObstacles());
+        trailLayer.setWidth(sceneWidth);
+        trailLayer.setHeight(sceneHeight);
+        redrawTrails();
+    }
+
+    /**
+     * Draws the obstacles once onto a scratch canvas and keeps the result
+     * as an image, so the obstacle layer costs one node however many
+     * obstacles there are.
+     * @param none
+     * @return the obstacle layer, type WritableImage
+     */
+    private WritableImage drawObstacles() {
+        Canvas scratch = new Canvas(sceneWidth, sceneHeight);
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.setFill(OBSTACLE_FILL);
+        double size = GuiStreamline.SQUARE_FRACTION * layout.getSquareSize();
+        double arc = size * RoundedSquare.DEFAULT_ARC_FRACTION;
+        int width = state.width;
+        for(int word = 0; word < state.obstacles.length; word++){
+            long bits = state.obstacles[word];
+            while(bits != 0){
+                int index = (word << BitboardGameState.WORD_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                double x = sceneX(index % width) - size / HALF_DIVISOR;
+                double y = sceneY(index / width) - size / HALF_DIVISOR;
+                gc.fillRoundRect(x, y, size, size, arc, arc);
+                bits &= bits - 1;
+            }
+        }
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        return scratch.snapshot(parameters, new WritableImage(
+                    (int) Math.ceil(sceneWidth), (int) Math.ceil(sceneHeight)));
+    }
+
+    /**
+     * Clears the trail layer and draws every trail of the level again, for
+     * when many cells changed at once.
+     * @param none
+     * @return none
+     */
+    public void redrawTrails() {
+        trails.clearRect(0, 0, sceneWidth, sceneHeight);
+        trails.setFill(GuiStreamline.TRAIL_COLOR);
+        int width = state.width;
+        for(int word = 0; word < state.trails.length; word++){
+            long bits = state.trails[word];
+            while(bits != 0){
+                int index = (word << BitboardGameState.WORD_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                fillDot(index / width, index % width);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Redraws a single cell of the trail layer: a dot if it has a trail,
+     * nothing otherwise.
+     * @param row,col the cell, type int
+     * @return none
+     */
+    public void drawCell(int row, int col) {
+        double radius = trailRadius() + EDGE_MARGIN;
+        trails.clearRect(sceneX(col) - radius, sceneY(row) - radius,
+                HALF_DIVISOR * radius, HALF_DIVISOR * radius);
+        if(state.isTrail(row, col)){
+            trails.setFill(GuiStreamline.TRAIL_COLOR);
+            fillDot(row, col);
+        }
+    }
+
+    private void fillDot(int row, int col) {
+        double radius = trailRadius();
+        trails.fillOval(sceneX(col) - radius, sceneY(row) - radius,
+                HALF_DIVISOR * radius, HALF_DIVISOR * radius);
+    }
+
+    private double trailRadius() {
+        return GuiStreamline.TRAIL_RADIUS_FRACTION * layout.getSquareSize();
+    }
+
+    private double sceneX(int col) {
+        return layout.x(col);
+    }
+
+    private double sceneY(int row) {
+        return layout.y(row);
+    }
+}
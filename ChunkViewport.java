@@ -0,0 +1,327 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: ChunkViewport.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file shows the part of a SparseStreamline board around the player.
+ Shapes only exist for the chunks that are on screen: when the view
+ scrolls, chunks that went off screen give their shapes back to a pool and
+ chunks that came on screen take them. Scrolling itself only moves one
+ Group, so the shapes of chunks that stay on screen are never touched, and
+ the number of shapes goes with the size of the window, not of the board.
+ */
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import javafx.scene.Group;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * A scrolling view of a sparse board that follows the player.
+ */
+public class ChunkViewport extends Group {
+    static final Color BOARD_COLOR = Color.WHITESMOKE;
+    static final int HALF_DIVISOR = 2;
+    static final int NONE = -1;
+
+    final SparseStreamline game;
+    final double squareSize;            // fixed, the view scrolls instead
+
+    final Rectangle background = new Rectangle();
+    final Group chunkLayer = new Group();
+    final RoundedSquare goalRect = new RoundedSquare();
+    final Player playerRect = new Player();
+    final Group content = new Group();  // everything, moved to scroll
+
+    double viewWidth, viewHeight;
+    // Chunks with shapes, both ends included
+    int firstChunkRow = 0, lastChunkRow = NONE;
+    int firstChunkCol = 0, lastChunkCol = NONE;
+    final HashMap<Long, ViewChunk> shown = new HashMap<Long, ViewChunk>();
+
+    // Shapes of chunks that went off screen, for chunks coming on screen
+    final ArrayDeque<RoundedSquare> obstaclePool =
+        new ArrayDeque<RoundedSquare>();
+    final ArrayDeque<Circle> trailPool = new ArrayDeque<Circle>();
+
+    /**
+     * The shapes of one chunk on screen.
+     */
+    static class ViewChunk {
+        final Group group = new Group();
+        // Trail dot of each cell of the chunk, made when first needed
+        Circle[] trails;
+    }
+
+    /**
+     * Constructor that sets up an empty view of a level.
+     * @param game the level, type SparseStreamline
+     * @param squareSize the size of a board square on screen, type double
+     * @return none, constructor method
+     */
+    public ChunkViewport(SparseStreamline game, double squareSize) {
+        this.game = game;
+        this.squareSize = squareSize;
+        background.setWidth(game.width * squareSize);
+        background.setHeight(game.height * squareSize);
+        background.setFill(BOARD_COLOR);
+        goalRect.setFill(GuiStreamline.GOAL_COLOR);
+        goalRect.setSize(squareSize * GuiStreamline.SQUARE_FRACTION);
+        goalRect.setCenterX(cellX(game.goalCol));
+        goalRect.setCenterY(cellY(game.goalRow));
+        playerRect.setSize(squareSize * GuiStreamline.SQUARE_FRACTION);
+        content.getChildren().addAll(background, chunkLayer, goalRect,
+                playerRect);
+        getChildren().add(content);
+    }
+
+    private double cellX(int col) {
+        return col * squareSize + squareSize / HALF_DIVISOR;
+    }
+
+    private double cellY(int row) {
+        return row * squareSize + squareSize / HALF_DIVISOR;
+    }
+
+    /**
+     * Sets how big the view is and shows the player in it.
+     * @param width,height the scene size, type double
+     * @return none
+     */
+    public void setViewSize(double width, double height) {
+        viewWidth = width;
+        viewHeight = height;
+        follow();
+    }
+
+    /**
+     * Updates the trails the last move or undo changed, and scrolls to
+     * keep the player in the middle of the view.
+     * @param none
+     * @return none
+     */
+    public void onMoved() {
+        if(game.changed){
+            refreshRun(game.changedFromRow, game.changedFromCol,
+                    game.changedToRow, game.changedToCol);
+        }
+        follow();
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Scrolling
+    //-----------------------------------------------------------------------
+
+    /**
+     * Centers the view on the player, or the board if it is smaller than
+     * the view, and gives shapes to the chunks that are now on screen.
+     * @param none
+     * @return none
+     */
+    void follow() {
+        playerRect.setCenterX(cellX(game.playerCol));
+        playerRect.setCenterY(cellY(game.playerRow));
+        double left = origin(cellX(game.playerCol), viewWidth,
+                game.width * squareSize);
+        double top = origin(cellY(game.playerRow), viewHeight,
+                game.height * squareSize);
+        content.setTranslateX(-left);
+        content.setTranslateY(-top);
+
+        int firstCol = Math.max(0, (int) Math.floor(left / squareSize));
+        int lastCol = Math.min(game.width - 1,
+                (int) Math.floor((left + viewWidth) / squareSize));
+        int firstRow = Math.max(0, (int) Math.floor(top / squareSize));
+        int lastRow = Math.min(game.height - 1,
+                (int) Math.floor((top + viewHeight) / squareSize));
+        showChunks(firstRow >> ChunkedBoard.CHUNK_SHIFT,
+                lastRow >> ChunkedBoard.CHUNK_SHIFT,
+                firstCol >> ChunkedBoard.CHUNK_SHIFT,
+                lastCol >> ChunkedBoard.CHUNK_SHIFT);
+    }
+
+    /**
+     * Where the left or top edge of the view goes on the board.
+     * @param center what to center on, type double
+     * @param view the view width or height, type double
+     * @param board the board width or height, type double
+     * @return the edge, type double
+     */
+    private static double origin(double center, double view, double board) {
+        if(board <= view){
+            return (board - view) / HALF_DIVISOR;
+        }
+        return Math.max(0, Math.min(board - view,
+                    center - view / HALF_DIVISOR));
+    }
+
+    /**
+     * Changes which chunks have shapes.
+     * @param firstRow,lastRow,firstCol,lastCol the chunks that are on
+     * screen, both ends included, type int
+     * @return none
+     */
+    private void showChunks(int firstRow, int lastRow, int firstCol,
+            int lastCol) {
+        if(firstRow == firstChunkRow && lastRow == lastChunkRow
+                && firstCol == firstChunkCol && lastCol == lastChunkCol){
+            return;
+        }
+        Iterator<HashMap.Entry<Long, ViewChunk>> it =
+            shown.entrySet().iterator();
+        while(it.hasNext()){
+            HashMap.Entry<Long, ViewChunk> entry = it.next();
+            int chunkRow = (int) (entry.getKey() >> Integer.SIZE);
+            int chunkCol = (int) (long) entry.getKey();
+            if(chunkRow < firstRow || chunkRow > lastRow
+                    || chunkCol < firstCol || chunkCol > lastCol){
+                release(entry.getValue());
+                it.remove();
+            }
+        }
+        for(int chunkRow = firstRow; chunkRow <= lastRow; chunkRow++){
+            for(int chunkCol = firstCol; chunkCol <= lastCol; chunkCol++){
+                long key = ChunkedBoard.key(chunkRow, chunkCol);
+                if(!shown.containsKey(key)){
+                    shown.put(key, materialize(chunkRow, chunkCol));
+                }
+            }
+        }
+        firstChunkRow = firstRow;
+        lastChunkRow = lastRow;
+        firstChunkCol = firstCol;
+        lastChunkCol = lastCol;
+    }
+
+    /**
+     * Makes the shapes of a chunk from the pools.
+     * @param chunkRow,chunkCol type int
+     * @return the chunk's shapes, type ViewChunk
+     */
+    private ViewChunk materialize(int chunkRow, int chunkCol) {
+        ViewChunk view = new ViewChunk();
+        ChunkedBoard.Chunk chunk = game.board.chunk(chunkRow, chunkCol);
+        if(chunk != null){
+            double size = squareSize * GuiStreamline.SQUARE_FRACTION;
+            for(int r = 0; r < ChunkedBoard.CHUNK_SIZE; r++){
+                int row = (chunkRow << ChunkedBoard.CHUNK_SHIFT) + r;
+                long bits = chunk.obstacles[r];
+                while(bits != 0){
+                    int col = (chunkCol << ChunkedBoard.CHUNK_SHIFT)
+                        + Long.numberOfTrailingZeros(bits);
+                    RoundedSquare obstacle = obstaclePool.isEmpty()
+                        ? new RoundedSquare() : obstaclePool.pop();
+                    obstacle.setFill(GuiStreamline.OBSTACLE_COLOR);
+                    obstacle.setSize(size);
+                    obstacle.setCenterX(cellX(col));
+                    obstacle.setCenterY(cellY(row));
+                    view.group.getChildren().add(obstacle);
+                    bits &= bits - 1;
+                }
+                bits = chunk.trails[r];
+                while(bits != 0){
+                    int col = (chunkCol << ChunkedBoard.CHUNK_SHIFT)
+                        + Long.numberOfTrailingZeros(bits);
+                    showTrail(view, row, col);
+                    bits &= bits - 1;
+                }
+            }
+        }
+        chunkLayer.getChildren().add(view.group);
+        return view;
+    }
+
+    /**
+     * Takes a chunk's shapes off screen and back to the pools.
+     * @param view type ViewChunk
+     * @return none
+     */
+    private void release(ViewChunk view) {
+        for(javafx.scene.Node node : view.group.getChildren()){
+            if(node instanceof RoundedSquare){
+                obstaclePool.push((RoundedSquare) node);
+            }
+            else{
+                trailPool.push((Circle) node);
+            }
+        }
+        view.group.getChildren().clear();
+        chunkLayer.getChildren().remove(view.group);
+    }
+
+    //-----------------------------------------------------------------------
+    //                               Trails
+    //-----------------------------------------------------------------------
+
+    private static int cellInChunk(int row, int col) {
+        return ((row & ChunkedBoard.CHUNK_MASK) << ChunkedBoard.CHUNK_SHIFT)
+            | (col & ChunkedBoard.CHUNK_MASK);
+    }
+
+    private void showTrail(ViewChunk view, int row, int col) {
+        if(view.trails == null){
+            view.trails = new Circle[ChunkedBoard.CHUNK_CELLS];
+        }
+        int cell = cellInChunk(row, col);
+        if(view.trails[cell] != null){
+            return;
+        }
+        Circle dot = trailPool.isEmpty() ? new Circle() : trailPool.pop();
+        dot.setFill(GuiStreamline.TRAIL_COLOR);
+        dot.setRadius(squareSize * GuiStreamline.TRAIL_RADIUS_FRACTION);
+        dot.setCenterX(cellX(col));
+        dot.setCenterY(cellY(row));
+        view.trails[cell] = dot;
+        view.group.getChildren().add(dot);
+    }
+
+    private void hideTrail(ViewChunk view, int row, int col) {
+        int cell = cellInChunk(row, col);
+        if(view.trails == null || view.trails[cell] == null){
+            return;
+        }
+        view.group.getChildren().remove(view.trails[cell]);
+        trailPool.push(view.trails[cell]);
+        view.trails[cell] = null;
+    }
+
+    /**
+     * Brings the trail dots of a straight run of cells up to date, only
+     * looking at the part of the run that is on screen.
+     * @param fromRow,fromCol,toRow,toCol the ends of the run, both included,
+     * type int
+     * @return none
+     */
+    private void refreshRun(int fromRow, int fromCol, int toRow, int toCol) {
+        int shownFirstRow = firstChunkRow << ChunkedBoard.CHUNK_SHIFT;
+        int shownLastRow = ((lastChunkRow + 1) << ChunkedBoard.CHUNK_SHIFT)
+            - 1;
+        int shownFirstCol = firstChunkCol << ChunkedBoard.CHUNK_SHIFT;
+        int shownLastCol = ((lastChunkCol + 1) << ChunkedBoard.CHUNK_SHIFT)
+            - 1;
+        int firstRow = Math.max(Math.min(fromRow, toRow), shownFirstRow);
+        int lastRow = Math.min(Math.max(fromRow, toRow), shownLastRow);
+        int firstCol = Math.max(Math.min(fromCol, toCol), shownFirstCol);
+        int lastCol = Math.min(Math.max(fromCol, toCol), shownLastCol);
+        for(int row = firstRow; row <= lastRow; row++){
+            for(int col = firstCol; col <= lastCol; col++){
+                ViewChunk view = shown.get(ChunkedBoard.key(
+                            row >> ChunkedBoard.CHUNK_SHIFT,
+                            col >> ChunkedBoard.CHUNK_SHIFT));
+                if(game.board.isTrail(row, col)){
+                    showTrail(view, row, col);
+                }
+                else{
+                    hideTrail(view, row, col);
+                }
+            }
+        }
+    }
+}
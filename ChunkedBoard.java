@@ -0,0 +1,404 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: ChunkedBoard.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file stores the obstacles and trails of boards too big to keep
+ whole, like 20000 by 20000. The board is cut into 64 by 64 chunks, and a
+ chunk only takes memory while something is in it, so memory goes with
+ what is on the board instead of its area. Inside a chunk each row is one
+ long, so a slide along a row checks 64 cells at a time and skips empty
+ chunks without looking at them.
+ */
+
+/**
+ * Obstacles and trails of a board, in chunks made only where needed. A
+ * chunk without obstacles is freed again once its last trail is undone.
+ */
+public class ChunkedBoard implements LevelFormat.Cells {
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    static final long ALL_BITS = -1L;
+    static final int NOT_FOUND = SlideRules.NOT_FOUND;
+
+    static final int INITIAL_TABLE_SIZE = 64;
+    static final int LOAD_DIVISOR = 2;  // the table is at most half full
+    static final long KEY_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    final int height, width;
+
+    // Open addressing table of the chunks, by key(chunkRow, chunkCol)
+    long[] keys = new long[INITIAL_TABLE_SIZE];
+    Chunk[] chunks = new Chunk[INITIAL_TABLE_SIZE];
+    int chunkCount;
+
+    /**
+     * One 64 by 64 piece of the board. Bit c of word r is the cell in row
+     * r and column c of the chunk.
+     */
+    static class Chunk {
+        final long[] obstacles = new long[CHUNK_SIZE];
+        final long[] trails = new long[CHUNK_SIZE];
+        boolean hasObstacles;           // obstacles are never taken away
+
+        /**
+         * Whether the chunk holds nothing and can be freed.
+         * @param none
+         * @return true if it is empty, type boolean
+         */
+        boolean isEmpty() {
+            if(hasObstacles){
+                return false;
+            }
+            for(long word : trails){
+                if(word != 0){
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Constructor that makes an empty board.
+     * @param height,width type int
+     * @return none, constructor method
+     */
+    public ChunkedBoard(int height, int width) {
+        this.height = height;
+        this.width = width;
+    }
+
+    //-----------------------------------------------------------------------
+    //                            Chunk table
+    //-----------------------------------------------------------------------
+
+    static long key(int chunkRow, int chunkCol) {
+        return ((long) chunkRow << Integer.SIZE) | chunkCol;
+    }
+
+    private int slot(long key) {
+        return (int) ((key * KEY_MULTIPLIER) >>> (Long.SIZE
+                    - Integer.numberOfTrailingZeros(keys.length)));
+    }
+
+    /**
+     * Finds a chunk.
+     * @param chunkRow,chunkCol type int
+     * @return the chunk, or null if nothing was ever put there, type Chunk
+     */
+    Chunk chunk(int chunkRow, int chunkCol) {
+        int i = indexOf(key(chunkRow, chunkCol));
+        return i == NOT_FOUND ? null : chunks[i];
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        for(int i = slot(key); chunks[i] != null; i = (i + 1) & mask){
+            if(keys[i] == key){
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Finds a chunk, making it if it doesn't exist yet.
+     * @param chunkRow,chunkCol type int
+     * @return the chunk, type Chunk
+     */
+    Chunk chunkForWrite(int chunkRow, int chunkCol) {
+        Chunk chunk = chunk(chunkRow, chunkCol);
+        if(chunk != null){
+            return chunk;
+        }
+        if((chunkCount + 1) * LOAD_DIVISOR > keys.length){
+            grow();
+        }
+        chunk = new Chunk();
+        insert(key(chunkRow, chunkCol), chunk);
+        chunkCount++;
+        return chunk;
+    }
+
+    private void insert(long key, Chunk chunk) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while(chunks[i] != null){
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        chunks[i] = chunk;
+    }
+
+    /**
+     * Frees a chunk if nothing is left in it. The chunks after it in the
+     * table are moved back over the hole, so no lookup stops there early.
+     * @param chunkRow,chunkCol type int
+     * @param chunk the chunk there, type Chunk
+     * @return none
+     */
+    private void freeIfEmpty(int chunkRow, int chunkCol, Chunk chunk) {
+        if(!chunk.isEmpty()){
+            return;
+        }
+        int mask = keys.length - 1;
+        int hole = indexOf(key(chunkRow, chunkCol));
+        chunks[hole] = null;
+        chunkCount--;
+        for(int i = (hole + 1) & mask; chunks[i] != null; i = (i + 1) & mask){
+            // A chunk can fill the hole if the hole is between its slot and
+            // where it is now
+            if(((i - slot(keys[i])) & mask) >= ((i - hole) & mask)){
+                keys[hole] = keys[i];
+                chunks[hole] = chunks[i];
+                chunks[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Chunk[] oldChunks = chunks;
+        keys = new long[oldKeys.length * LOAD_DIVISOR];
+        chunks = new Chunk[oldKeys.length * LOAD_DIVISOR];
+        for(int i = 0; i < oldKeys.length; i++){
+            if(oldChunks[i] != null){
+                insert(oldKeys[i], oldChunks[i]);
+            }
+        }
+    }
+
+    /**
+     * Getter for how many chunks there are now.
+     * @param none
+     * @return the count, type int
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Cells
+    //-----------------------------------------------------------------------
+
+    private static long bit(int col) {
+        return 1L << (col & CHUNK_MASK);
+    }
+
+    @Override
+    public boolean isObstacle(int row, int col) {
+        Chunk chunk = chunk(row >> CHUNK_SHIFT, col >> CHUNK_SHIFT);
+        return chunk != null
+            && (chunk.obstacles[row & CHUNK_MASK] & bit(col)) != 0;
+    }
+
+    public boolean isTrail(int row, int col) {
+        Chunk chunk = chunk(row >> CHUNK_SHIFT, col >> CHUNK_SHIFT);
+        return chunk != null
+            && (chunk.trails[row & CHUNK_MASK] & bit(col)) != 0;
+    }
+
+    @Override
+    public void setObstacle(int row, int col) {
+        Chunk chunk = chunkForWrite(row >> CHUNK_SHIFT, col >> CHUNK_SHIFT);
+        chunk.obstacles[row & CHUNK_MASK] |= bit(col);
+        chunk.hasObstacles = true;
+    }
+
+    @Override
+    public void setTrail(int row, int col) {
+        chunkForWrite(row >> CHUNK_SHIFT, col >> CHUNK_SHIFT)
+            .trails[row & CHUNK_MASK] |= bit(col);
+    }
+
+    public void clearTrail(int row, int col) {
+        Chunk chunk = chunk(row >> CHUNK_SHIFT, col >> CHUNK_SHIFT);
+        if(chunk != null){
+            chunk.trails[row & CHUNK_MASK] &= ~bit(col);
+            freeIfEmpty(row >> CHUNK_SHIFT, col >> CHUNK_SHIFT, chunk);
+        }
+    }
+
+    /**
+     * Sets or clears the trail of every cell of a straight run, a word at a
+     * time along rows and a chunk at a time along columns.
+     * @param fromRow,fromCol,toRow,toCol the ends of the run, both included,
+     * on one row or one column, type int
+     * @param trail true to set the trails, false to clear them, type boolean
+     * @return none
+     */
+    public void setTrails(int fromRow, int fromCol, int toRow, int toCol,
+            boolean trail) {
+        if(fromRow == toRow){
+            int first = Math.min(fromCol, toCol);
+            int last = Math.max(fromCol, toCol);
+            int word = fromRow & CHUNK_MASK;
+            for(int chunkCol = first >> CHUNK_SHIFT;
+                    chunkCol <= last >> CHUNK_SHIFT; chunkCol++){
+                int start = Math.max(first, chunkCol << CHUNK_SHIFT);
+                int end = Math.min(last, (chunkCol << CHUNK_SHIFT)
+                        + CHUNK_MASK);
+                long bits = (ALL_BITS << (start & CHUNK_MASK))
+                    & (ALL_BITS >>> (CHUNK_MASK - (end & CHUNK_MASK)));
+                if(trail){
+                    chunkForWrite(fromRow >> CHUNK_SHIFT, chunkCol)
+                        .trails[word] |= bits;
+                }
+                else{
+                    Chunk chunk = chunk(fromRow >> CHUNK_SHIFT, chunkCol);
+                    if(chunk != null){
+                        chunk.trails[word] &= ~bits;
+                        freeIfEmpty(fromRow >> CHUNK_SHIFT, chunkCol, chunk);
+                    }
+                }
+            }
+            return;
+        }
+        int first = Math.min(fromRow, toRow);
+        int last = Math.max(fromRow, toRow);
+        long bit = bit(fromCol);
+        int chunkCol = fromCol >> CHUNK_SHIFT;
+        for(int chunkRow = first >> CHUNK_SHIFT;
+                chunkRow <= last >> CHUNK_SHIFT; chunkRow++){
+            Chunk chunk = trail ? chunkForWrite(chunkRow, chunkCol)
+                : chunk(chunkRow, chunkCol);
+            if(chunk == null){
+                continue;
+            }
+            int start = Math.max(first, chunkRow << CHUNK_SHIFT);
+            int end = Math.min(last, (chunkRow << CHUNK_SHIFT) + CHUNK_MASK);
+            for(int row = start; row <= end; row++){
+                if(trail){
+                    chunk.trails[row & CHUNK_MASK] |= bit;
+                }
+                else{
+                    chunk.trails[row & CHUNK_MASK] &= ~bit;
+                }
+            }
+            if(!trail){
+                freeIfEmpty(chunkRow, chunkCol, chunk);
+            }
+        }
+    }
+
+    //-----------------------------------------------------------------------
+    //                            Slide scans
+    //-----------------------------------------------------------------------
+
+    /**
+     * Finds the first obstacle or trail along a row, scanning to the right.
+     * @param row type int
+     * @param from,to the columns to look at, both included, type int
+     * @return the column, or NOT_FOUND, type int
+     */
+    public int nextBlockedCol(int row, int from, int to) {
+        int word = row & CHUNK_MASK;
+        for(int chunkCol = from >> CHUNK_SHIFT; chunkCol <= to >> CHUNK_SHIFT;
+                chunkCol++){
+            Chunk chunk = chunk(row >> CHUNK_SHIFT, chunkCol);
+            if(chunk == null){
+                continue;
+            }
+            long bits = chunk.obstacles[word] | chunk.trails[word];
+            if(chunkCol == from >> CHUNK_SHIFT){
+                bits &= ALL_BITS << (from & CHUNK_MASK);
+            }
+            if(bits != 0){
+                int col = (chunkCol << CHUNK_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                return col <= to ? col : NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Finds the first obstacle or trail along a row, scanning to the left
+     * from to.
+     * @param row type int
+     * @param from,to the columns to look at, both included, type int
+     * @return the column, or NOT_FOUND, type int
+     */
+    public int prevBlockedCol(int row, int from, int to) {
+        int word = row & CHUNK_MASK;
+        for(int chunkCol = to >> CHUNK_SHIFT; chunkCol >= from >> CHUNK_SHIFT;
+                chunkCol--){
+            Chunk chunk = chunk(row >> CHUNK_SHIFT, chunkCol);
+            if(chunk == null){
+                continue;
+            }
+            long bits = chunk.obstacles[word] | chunk.trails[word];
+            if(chunkCol == to >> CHUNK_SHIFT){
+                bits &= ALL_BITS >>> (CHUNK_MASK - (to & CHUNK_MASK));
+            }
+            if(bits != 0){
+                int col = (chunkCol << CHUNK_SHIFT) + CHUNK_MASK
+                    - Long.numberOfLeadingZeros(bits);
+                return col >= from ? col : NOT_FOUND;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Finds the first obstacle or trail along a column, scanning down.
+     * @param col type int
+     * @param from,to the rows to look at, both included, type int
+     * @return the row, or NOT_FOUND, type int
+     */
+    public int nextBlockedRow(int col, int from, int to) {
+        long bit = bit(col);
+        for(int chunkRow = from >> CHUNK_SHIFT; chunkRow <= to >> CHUNK_SHIFT;
+                chunkRow++){
+            Chunk chunk = chunk(chunkRow, col >> CHUNK_SHIFT);
+            if(chunk == null){
+                continue;
+            }
+            int first = Math.max(from, chunkRow << CHUNK_SHIFT);
+            int last = Math.min(to, (chunkRow << CHUNK_SHIFT) + CHUNK_MASK);
+            for(int row = first; row <= last; row++){
+                int word = row & CHUNK_MASK;
+                if(((chunk.obstacles[word] | chunk.trails[word]) & bit)
+                        != 0){
+                    return row;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Finds the first obstacle or trail along a column, scanning up from
+     * to.
+     * @param col type int
+     * @param from,to the rows to look at, both included, type int
+     * @return the row, or NOT_FOUND, type int
+     */
+    public int prevBlockedRow(int col, int from, int to) {
+        long bit = bit(col);
+        for(int chunkRow = to >> CHUNK_SHIFT; chunkRow >= from >> CHUNK_SHIFT;
+                chunkRow--){
+            Chunk chunk = chunk(chunkRow, col >> CHUNK_SHIFT);
+            if(chunk == null){
+                continue;
+            }
+            int first = Math.max(from, chunkRow << CHUNK_SHIFT);
+            int last = Math.min(to, (chunkRow << CHUNK_SHIFT) + CHUNK_MASK);
+            for(int row = last; row >= first; row--){
+                int word = row & CHUNK_MASK;
+                if(((chunk.obstacles[word] | chunk.trails[word]) & bit)
+                        != 0){
+                    return row;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: DirectoryLevelSource.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file lists the level files of a directory, in sorted order, so they
+ can be loaded one at a time when needed.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The levels of a directory, one level per file. Only the file names are
+ * read up front, each file is parsed when its level is loaded.
+ */
+public class DirectoryLevelSource implements LevelSource {
+    // Mixes the time a file was changed with its length
+    static final long FINGERPRINT_MULTIPLIER = 31;
+
+    final File[] files;
+
+    /**
+     * Constructor that lists the files in the directory. Subdirectories
+     * are skipped.
+     * @param directory type File
+     * @return none, constructor method
+     */
+    public DirectoryLevelSource(File directory) {
+        File[] subfiles = directory.listFiles();
+        if(subfiles == null){
+            subfiles = new File[0];
+        }
+        Arrays.sort(subfiles);
+        List<File> levelFiles = new ArrayList<File>();
+        for(File subfile : subfiles){
+            // in case there's a directory in there, skip
+            if(!subfile.isDirectory()){
+                levelFiles.add(subfile);
+            }
+        }
+        files = levelFiles.toArray(new File[levelFiles.size()]);
+    }
+
+    @Override
+    public int size() {
+        return files.length;
+    }
+
+    @Override
+    public BitboardStreamline load(int index) throws IOException {
+        return new BitboardStreamline(files[index].toString());
+    }
+
+    @Override
+    public BitboardGameState loadState(int index) throws IOException {
+        return LevelFormat.read(files[index]);
+    }
+
+    @Override
+    public String describe(int index) {
+        return files[index].toString();
+    }
+
+    @Override
+    public long fingerprint(int index) {
+        return files[index].lastModified() * FINGERPRINT_MULTIPLIER
+            + files[index].length();
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: EngineCheck.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file checks, without opening a window, that every engine plays the
+ game the same way. It makes random levels and plays the same random
+ moves, undos, redos and rewinds in the reference Streamline, in
+ BitboardStreamline with and without the solver's slide table, in
+ BatchEnvironment and in SparseStreamline, and after every step compares
+ the boards, the players, whether the level is passed, the Zobrist hash
+ against one worked out from scratch, and that the sparse board frees its
+ chunks again. It stops at the first difference and prints the level and
+ the steps that led to it.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays random games in every engine side by side and reports the first
+ * place they disagree.
+ */
+public class EngineCheck {
+    static final String USAGE =
+        "Usage: \n" +
+        "> java EngineCheck [levels] [seed]   - to play random games on " +
+        "that many random levels in every engine and compare them\n";
+    static final int DEFAULT_LEVELS = 2000;
+    static final long DEFAULT_SEED = 8;
+    static final int MAX_SIDE = 24;
+    // One level in LARGE_ODDS is up to LARGE_SIDE on a side, so the sparse
+    // board has more than one chunk
+    static final int LARGE_ODDS = 8;
+    static final int LARGE_SIDE = 200;
+    static final double[] DENSITIES = {0.05, 0.2, 0.4};
+    // Steps per level, more than MoveHistory's checkpoint interval so
+    // rewinds restore checkpoints too
+    static final int STEPS = 300;
+    // What a step is, out of 100, the rest are moves
+    static final int UNDO_PERCENT = 20;
+    static final int REDO_PERCENT = 10;
+    static final int REWIND_PERCENT = 3;
+    static final int MAX_REWIND = 80;
+    static final int PERCENT = 100;
+
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    final Random random;
+    final BitboardGameState level;
+    final Streamline reference;
+    final BitboardStreamline plain;
+    final BitboardStreamline tabled;
+    final BatchEnvironment batch;
+    final SparseStreamline sparse;
+    final int sparseChunks;             // before any trail was laid
+
+    // The moves that moved, oldest first, and the ones undone since
+    final List<Direction> played = new ArrayList<Direction>();
+    final List<Direction> undone = new ArrayList<Direction>();
+    // Whether the batch game still matches, it resets once a game ends
+    boolean batchLive = true;
+    final List<String> steps = new ArrayList<String>();
+
+    /**
+     * Constructor that loads one level into every engine.
+     * @param level the level, type BitboardGameState
+     * @param random where the steps come from, type Random
+     * @return none, constructor method
+     */
+    EngineCheck(BitboardGameState level, Random random) {
+        this.random = random;
+        this.level = level;
+        reference = new Streamline();
+        reference.currentState.board = level.toCharBoard();
+        reference.currentState.playerRow = level.playerRow;
+        reference.currentState.playerCol = level.playerCol;
+        reference.currentState.goalRow = level.goalRow;
+        reference.currentState.goalCol = level.goalCol;
+        reference.currentState.levelPassed = level.levelPassed;
+
+        plain = new BitboardStreamline(new BitboardGameState(level));
+        plain.currentState.enableHashing(
+                new ZobristKeys(level.height * level.width));
+        tabled = new BitboardStreamline(new BitboardGameState(level));
+        tabled.currentState.enableSlideTable();
+
+        batch = new BatchEnvironment(1, level.height, level.width);
+        batch.setLevel(0, level);
+
+        sparse = new SparseStreamline(level.height, level.width,
+                level.playerRow, level.playerCol, level.goalRow,
+                level.goalCol);
+        for(int row = 0; row < level.height; row++){
+            for(int col = 0; col < level.width; col++){
+                if(level.isObstacle(row, col)){
+                    sparse.board.setObstacle(row, col);
+                }
+            }
+        }
+        sparseChunks = sparse.board.getChunkCount();
+    }
+
+    /**
+     * Plays the steps of one level, comparing after each.
+     * @param none
+     * @return what went wrong, or null if every engine agreed, type String
+     */
+    String run() {
+        String problem = compare();
+        for(int step = 0; step < STEPS && problem == null; step++){
+            int kind = random.nextInt(PERCENT);
+            if(kind < UNDO_PERCENT){
+                undo(1);
+            }
+            else if(kind < UNDO_PERCENT + REDO_PERCENT){
+                redo();
+            }
+            else if(kind < UNDO_PERCENT + REDO_PERCENT + REWIND_PERCENT){
+                undo(1 + random.nextInt(MAX_REWIND));
+            }
+            else{
+                move(DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            }
+            problem = compare();
+        }
+        batch.close();
+        return problem;
+    }
+
+    private void move(Direction direction) {
+        steps.add(direction.toString());
+        int fromRow = plain.currentState.playerRow;
+        int fromCol = plain.currentState.playerCol;
+        reference.recordAndMove(direction);
+        plain.recordAndMove(direction);
+        tabled.recordAndMove(direction);
+        sparse.recordAndMove(direction);
+        stepBatch(direction);
+        if(plain.currentState.playerRow != fromRow
+                || plain.currentState.playerCol != fromCol){
+            played.add(direction);
+            undone.clear();
+        }
+    }
+
+    private void undo(int count) {
+        steps.add(count == 1 ? "undo" : "rewind " + count);
+        int undos = Math.min(count, played.size());
+        for(int i = 0; i < undos; i++){
+            undone.add(played.remove(played.size() - 1));
+            reference.undo();
+            sparse.undo();
+        }
+        if(count == 1){
+            plain.undo();
+            tabled.undo();
+        }
+        else{
+            plain.rewind(count);
+            tabled.rewind(count);
+        }
+        replayBatch();
+    }
+
+    private void redo() {
+        steps.add("redo");
+        if(undone.isEmpty()){
+            plain.redo();
+            tabled.redo();
+            sparse.redo();
+            return;
+        }
+        Direction direction = undone.remove(undone.size() - 1);
+        played.add(direction);
+        // The reference has no redo, making the move again is the same
+        reference.recordAndMove(direction);
+        sparse.redo();
+        plain.redo();
+        tabled.redo();
+        stepBatch(direction);
+    }
+
+    /**
+     * Steps the batch game, which can't undo, and notes when it ended and
+     * was reset so it is left out until the next replay.
+     * @param direction type Direction
+     * @return none
+     */
+    private void stepBatch(Direction direction) {
+        if(!batchLive){
+            return;
+        }
+        boolean[] done = new boolean[1];
+        batch.step(new int[] {direction.ordinal()}, new float[1], done, null);
+        batchLive = !done[0];
+    }
+
+    /**
+     * Puts the batch game back to the start and plays the moves again.
+     * @param none
+     * @return none
+     */
+    private void replayBatch() {
+        batch.reset(0);
+        batchLive = true;
+        for(Direction direction : played){
+            stepBatch(direction);
+        }
+    }
+
+    /**
+     * Compares every engine with the reference.
+     * @param none
+     * @return what differs, or null if nothing does, type String
+     */
+    private String compare() {
+        GameState expected = reference.currentState;
+        String problem = compare("bitboard", plain.currentState, expected);
+        if(problem == null){
+            problem = compare("slide table", tabled.currentState, expected);
+        }
+        if(problem == null && batchLive){
+            problem = compare("batch", batch.toState(0), expected);
+        }
+        if(problem == null){
+            problem = compareSparse(expected);
+        }
+        return problem;
+    }
+
+    private static String compare(String engine, BitboardGameState state,
+            GameState expected) {
+        if(state.playerRow != expected.playerRow
+                || state.playerCol != expected.playerCol){
+            return engine + " player at " + state.playerRow + ","
+                + state.playerCol + ", expected " + expected.playerRow + ","
+                + expected.playerCol;
+        }
+        if(state.levelPassed != expected.levelPassed){
+            return engine + " levelPassed is " + state.levelPassed;
+        }
+        for(int row = 0; row < state.height; row++){
+            for(int col = 0; col < state.width; col++){
+                boolean trail = state.isTrail(row, col);
+                if(state.charAt(row, col) != expected.board[row][col]){
+                    return engine + " has '" + state.charAt(row, col)
+                        + "' at " + row + "," + col + ", expected '"
+                        + expected.board[row][col] + "'";
+                }
+                if(trail != BitboardGameState.isSet(state.trailsT,
+                            col * state.height + row)){
+                    return engine + " column major trail differs at "
+                        + row + "," + col;
+                }
+            }
+        }
+        if(state.zobrist != null){
+            BitboardGameState fresh = new BitboardGameState(state);
+            fresh.enableHashing(state.zobrist);
+            if(fresh.hash != state.hash){
+                return engine + " hash differs from a fresh one";
+            }
+        }
+        return null;
+    }
+
+    private String compareSparse(GameState expected) {
+        if(sparse.playerRow != expected.playerRow
+                || sparse.playerCol != expected.playerCol){
+            return "sparse player at " + sparse.playerRow + ","
+                + sparse.playerCol;
+        }
+        if(sparse.levelPassed != expected.levelPassed){
+            return "sparse levelPassed is " + sparse.levelPassed;
+        }
+        for(int row = 0; row < level.height; row++){
+            for(int col = 0; col < level.width; col++){
+                char cell = sparse.board.isObstacle(row, col)
+                    ? BitboardGameState.OBSTACLE_CHAR
+                    : sparse.board.isTrail(row, col)
+                    ? BitboardGameState.TRAIL_CHAR
+                    : BitboardGameState.SPACE_CHAR;
+                if(cell != expected.board[row][col]){
+                    return "sparse has '" + cell + "' at " + row + ","
+                        + col;
+                }
+            }
+        }
+        // Every chunk made for a trail is freed once its trails are undone
+        if(played.isEmpty() && sparse.board.getChunkCount() != sparseChunks){
+            return "sparse kept " + sparse.board.getChunkCount()
+                + " chunks, expected " + sparseChunks;
+        }
+        return null;
+    }
+
+    public static void main(String[] args) {
+        int levels = DEFAULT_LEVELS;
+        long seed = DEFAULT_SEED;
+        try {
+            if(args.length > 0){
+                levels = Integer.parseInt(args[0]);
+            }
+            if(args.length > 1){
+                seed = Long.parseLong(args[1]);
+            }
+        }
+        catch(NumberFormatException e){
+            System.out.print(USAGE);
+            return;
+        }
+        Random random = new Random(seed);
+        for(int i = 0; i < levels; i++){
+            // At least two cells, for the player and the goal
+            int side = random.nextInt(LARGE_ODDS) == 0 ? LARGE_SIDE
+                : MAX_SIDE;
+            int height = 1 + random.nextInt(side);
+            int width = (height == 1 ? 2 : 1) + random.nextInt(side);
+            double density = DENSITIES[random.nextInt(DENSITIES.length)];
+            BitboardGameState level = BitboardGameState.random(height,
+                    width, density, random);
+            EngineCheck check = new EngineCheck(level, random);
+            String problem = check.run();
+            if(problem != null){
+                System.out.println("level " + i + " differs: " + problem);
+                printBoard(level);
+                System.out.println("after " + check.steps);
+                System.exit(1);
+            }
+        }
+        System.out.println("all engines agree on " + levels + " levels");
+    }
+
+    private static void printBoard(BitboardGameState level) {
+        System.out.println(level.height + "x" + level.width + " player "
+                + level.playerRow + "," + level.playerCol + " goal "
+                + level.goalRow + "," + level.goalCol);
+        for(char[] row : level.toCharBoard()){
+            System.out.println(new String(row));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: GridBuffer.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file holds the obstacle and trail shapes of one level in their own
+ Group. The GUI keeps two of them: the one on screen and one the next
+ level is built into while the win animation plays. A Group that is not
+ part of a showing scene may be built on any thread, so the next level's
+ shapes are ready by the time the animation ends.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.Group;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Shape;
+
+/**
+ * A Group of pooled obstacle and trail shapes laid out for one level.
+ * Shapes are kept between levels and only made when a level needs more
+ * than any level before.
+ */
+public class GridBuffer {
+    final Group group = new Group();
+    Shape[][] grid;                     // Same dimensions as the game board
+    final BoardLayout layout = new BoardLayout();
+
+    // Shapes kept between levels, all of them children of group
+    final List<RoundedSquare> obstaclePool = new ArrayList<RoundedSquare>();
+    final List<Circle> trailPool = new ArrayList<Circle>();
+
+    /**
+     * Lays the shapes out for a level: an obstacle at every obstacle, and a
+     * trail dot everywhere else, colored only if there is a trail. Must be
+     * called on the FX thread if group is showing, from any thread if not.
+     * @param state the level, type BitboardGameState
+     * @param sceneWidth,sceneHeight the scene size, type double
+     * @return none, changes grid
+     */
+    public void build(BitboardGameState state, double sceneWidth,
+            double sceneHeight) {
+        if(grid == null || grid.length != state.height
+                || grid[0].length != state.width){
+            grid = new Shape[state.height][state.width];
+        }
+        layout.update(state.width, state.height, sceneWidth, sceneHeight);
+        double obstacleSize = obstacleSize();
+        double trailRadius = trailRadius();
+        int obstaclesUsed = 0;
+        int trailsUsed = 0;
+        for(int row = 0; row < state.height; row++){
+            double sceneY = layout.y(row);
+            for(int col = 0; col < state.width; col++){
+                double sceneX = layout.x(col);
+                //Places an obstacle
+                if(state.isObstacle(row, col)){
+                    RoundedSquare obstacle = pooledObstacle(obstaclesUsed++);
+                    obstacle.setSize(obstacleSize);
+                    obstacle.setCenterX(sceneX);
+                    obstacle.setCenterY(sceneY);
+                    grid[row][col] = obstacle;
+                }
+                //Places a trail dot, colored only if there is a trail
+                else{
+                    Circle trailCircle = pooledTrail(trailsUsed++);
+                    trailCircle.setRadius(trailRadius);
+                    trailCircle.setCenterX(sceneX);
+                    trailCircle.setCenterY(sceneY);
+                    trailCircle.setFill(state.isTrail(row, col)
+                            ? GuiStreamline.TRAIL_COLOR : null);
+                    grid[row][col] = trailCircle;
+                }
+            }
+        }
+        //Hides the shapes this level doesn't need
+        for(int i = obstaclesUsed; i < obstaclePool.size(); i++){
+            obstaclePool.get(i).setVisible(false);
+        }
+        for(int i = trailsUsed; i < trailPool.size(); i++){
+            trailPool.get(i).setVisible(false);
+        }
+    }
+
+    /**
+     * Moves and resizes the shapes already laid out to fit a new scene
+     * size, without rebuilding them. Colors and which cells are obstacles
+     * stay as they are. Must be called on the FX thread.
+     * @param sceneWidth,sceneHeight the new scene size, type double
+     * @return true if anything moved, type boolean
+     */
+    public boolean relayout(double sceneWidth, double sceneHeight) {
+        if(grid == null || !layout.update(grid[0].length, grid.length,
+                    sceneWidth, sceneHeight)){
+            return false;
+        }
+        double obstacleSize = obstacleSize();
+        double trailRadius = trailRadius();
+        for(int row = 0; row < grid.length; row++){
+            double sceneY = layout.y(row);
+            for(int col = 0; col < grid[row].length; col++){
+                Shape shape = grid[row][col];
+                if(shape instanceof RoundedSquare){
+                    RoundedSquare obstacle = (RoundedSquare) shape;
+                    obstacle.setSize(obstacleSize);
+                    obstacle.setCenterX(layout.x(col));
+                    obstacle.setCenterY(sceneY);
+                }
+                else{
+                    Circle trailCircle = (Circle) shape;
+                    trailCircle.setRadius(trailRadius);
+                    trailCircle.setCenterX(layout.x(col));
+                    trailCircle.setCenterY(sceneY);
+                }
+            }
+        }
+        return true;
+    }
+
+    private double obstacleSize() {
+        return GuiStreamline.SQUARE_FRACTION * layout.getSquareSize();
+    }
+
+    private double trailRadius() {
+        return GuiStreamline.TRAIL_RADIUS_FRACTION * layout.getSquareSize();
+    }
+
+    /**
+     * Getter for a pooled obstacle shape, making it if the pool is too
+     * small. New shapes are added to group once and stay there.
+     * @param index which pooled shape, type int
+     * @return the shape, visible, type RoundedSquare
+     */
+    RoundedSquare pooledObstacle(int index) {
+        if(index == obstaclePool.size()){
+            RoundedSquare obstacle = new RoundedSquare();
+            obstaclePool.add(obstacle);
+            group.getChildren().add(obstacle);
+        }
+        RoundedSquare obstacle = obstaclePool.get(index);
+        obstacle.setVisible(true);
+        return obstacle;
+    }
+
+    /**
+     * Getter for a pooled trail dot, making it if the pool is too small.
+     * New shapes are added to group once and stay there.
+     * @param index which pooled shape, type int
+     * @return the shape, visible, type Circle
+     */
+    Circle pooledTrail(int index) {
+        if(index == trailPool.size()){
+            Circle trailCircle = new Circle();
+            trailPool.add(trailCircle);
+            group.getChildren().add(trailCircle);
+        }
+        Circle trailCircle = trailPool.get(index);
+        trailCircle.setVisible(true);
+        return trailCircle;
+    }
+}
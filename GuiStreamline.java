@@ -17,13 +17,17 @@ import javafx.scene.shape.*;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import javafx.animation.*;
 import javafx.animation.PathTransition.*;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.event.ActionEvent;
 import javafx.scene.Group;
@@ -40,6 +44,12 @@ import javafx.util.Duration;
 public class GuiStreamline extends Application {
     static final double SCENE_WIDTH = 500;
     static final double SCENE_HEIGHT = 600;
+    // Smallest the window can be dragged to
+    static final double MIN_WINDOW_WIDTH = 200;
+    static final double MIN_WINDOW_HEIGHT = 200;
+    // Least time between relayouts while the window is being resized, in
+    // nanoseconds
+    static final long RELAYOUT_INTERVAL = 50000000L;
     static final String TITLE = "CSE 8b Streamline GUI";
     static final String USAGE = 
         "Usage: \n" + 
@@ -50,11 +60,37 @@ public class GuiStreamline extends Application {
         "> java GuiStreamline <directory>   - to start a game by reading a" +
         "ll game states from files in\n" +
         "                                     the specified directory and " +
-        "playing them in order\n";
+        "playing them in order\n" +
+        "> java GuiStreamline <pack>.slpk   - to start a game by reading a" +
+        "ll game states from a level\n" +
+        "                                     pack made by LevelPackWriter" +
+        "\n" +
+        "> java GuiStreamline -             - to start a game by reading g" +
+        "ame states from stdin as they\n" +
+        "                                     arrive, or give a named pipe" +
+        " instead of -\n" +
+        "Add --canvas before the file to draw the board on a canvas, for ve" +
+        "ry large boards\n" +
+        "Add --record before the file to save a replay of every level in " +
+        ReplayRecorder.DEFAULT_DIRECTORY + "\n" +
+        "Add --select before a directory or pack to pick the first level " +
+        "from a grid of thumbnails,\n" +
+        "which are cached in " + ThumbnailCache.DEFAULT_DIRECTORY + "\n" +
+        "Add --restart before the file to start over instead of resuming " +
+        "from " + MoveJournal.DEFAULT_FILE + "\n" +
+        "> java GuiStreamline --sparse ...  - to play one very large level " +
+        "in a scrolling window,\n" +
+        "                                     see SparseGui\n";
+    static final String CANVAS_FLAG = "--canvas";
+    static final String RECORD_FLAG = "--record";
+    static final String SELECT_FLAG = "--select";
+    static final String RESTART_FLAG = "--restart";
+    static final String SPARSE_FLAG = "--sparse";
 
     static final Color TRAIL_COLOR = Color.PALEVIOLETRED;
     static final Color GOAL_COLOR = Color.MEDIUMAQUAMARINE;
     static final Color OBSTACLE_COLOR = Color.DIMGRAY;
+    static final Color HINT_COLOR = Color.GOLD;
     //Chars represent obstacles, and trails
     private static final char TRAIL_CHAR = '.';
     private static final char OBSTACLE_CHAR = 'X';
@@ -70,13 +106,44 @@ public class GuiStreamline extends Application {
     Group rootGroup;                    // Parent group for everything else
     Player playerRect;                  // GUI representation of the player
     RoundedSquare goalRect;             // GUI representation of the goal
+    RoundedSquare hintRect;             // Flashes where a hint move ends
 
-    Shape[][] grid;                     // Same dimensions as the game board
+    Shape[][] grid;                     // shownGrid's shapes
+    GridBuffer shownGrid = new GridBuffer();    // the level on screen
+    GridBuffer spareGrid = new GridBuffer();    // the next level, built early
+    boolean canvasMode;                 // draw the board with canvasBoard
+    CanvasBoard canvasBoard;            // used instead of grid in canvasMode
 
-    Streamline game;                    // The current level
-    ArrayList<Streamline> nextGames;    // Future levels
+    // Once the window is up, game, nextGames, journal and recorder are
+    // only used by the logic thread. The FX thread draws shownState, its
+    // own copy, kept up to date from the snapshots in handoff
+    BitboardStreamline game;                    // The current level
+    LevelFeed nextGames;                // Future levels, null if none
+    // nextGames if its levels can be picked from the level select screen,
+    // null otherwise
+    LevelLoader pickableGames;
+    LevelSelectView levelSelect;        // on screen until a level is picked
+    Thread logicThread;                 // applies queued keys to game
+    int logicLevel;                     // levels won, on the logic thread
+    final SnapshotHandoff handoff = new SnapshotHandoff();
+    BitboardGameState shownState;       // the level on screen
+    int shownVersion;                   // game.version of shownState
 
     MyKeyHandler myKeyHandler;          // for keyboard input
+    InputQueue inputQueue = new InputQueue(InputQueue.DEFAULT_CAPACITY);
+    AnimationTimer inputPump;           // shows the game every frame
+    MetricsOverlay metricsOverlay;      // frame rate and latencies
+    volatile int levelNumber;           // levels won, on screen
+    boolean levelReady = true;          // false during the win animation
+    boolean relayoutPending;            // the scene was resized
+    long lastRelayout;                  // when the last relayout happened
+    // The scene size, for the logic thread to lay out the next level
+    volatile double knownSceneWidth, knownSceneHeight;
+    StreamlineSolver solver = new StreamlineSolver();   // for hints
+    SaveWriter saveWriter = new SaveWriter();   // writes saves off thread
+    MoveJournal journal;                // autosave of the current level
+    MoveJournal.Resume resume;          // journal left by an earlier run
+    ReplayRecorder recorder;            // null unless run with --record
 
     /**
      * getter for Board Width
@@ -84,7 +151,7 @@ public class GuiStreamline extends Application {
      */
     // returns the width of the board for the current level
     public int getBoardWidth() {
-        return game.currentState.board[0].length;
+        return shownState.width;
     }
     
     /**
@@ -93,7 +160,7 @@ public class GuiStreamline extends Application {
      */
     // the height of the board for the current level
     public int getBoardHeight() {
-        return game.currentState.board.length;
+        return shownState.height;
     }
 
     /**
@@ -107,8 +174,21 @@ public class GuiStreamline extends Application {
            of 5 by 6, we have room for each square to be 200x100. Since we
            want squares not rectangles, return the minimum which is 100 
            in this example. */
-        double squareWidth = mainScene.getWidth() / getBoardWidth();
-        double squareHeight = mainScene.getHeight() / getBoardHeight();
+        return squareSize(mainScene.getWidth(), mainScene.getHeight(),
+                getBoardWidth(), getBoardHeight());
+    }
+
+    /**
+     * Finds the size of a board square for any scene and board size, so a
+     * level can be laid out before it is the current one.
+     * @param sceneWidth,sceneHeight the scene size, type double
+     * @param boardWidth,boardHeight the board size, type int
+     * @return square size, type double
+     */
+    static double squareSize(double sceneWidth, double sceneHeight,
+            int boardWidth, int boardHeight) {
+        double squareWidth = sceneWidth / boardWidth;
+        double squareHeight = sceneHeight / boardHeight;
         if( squareWidth < squareHeight ){
             return squareWidth;
         }
@@ -118,49 +198,41 @@ public class GuiStreamline extends Application {
     /**
      * Resets the grid back to default with all transparent trail dots
      * at every empty space, colored trail dots at trail chars, and obstacles
-     * at obstacle chars.
+     * at obstacle chars. Shapes from earlier levels are reused, and new
+     * ones are only made when this level needs more than any level before.
      * @param none
      * @return none, changes grid
      */
-    // Destroy and recreate grid and all trail and obstacle shapes.
+    // Recreate grid from the pooled trail and obstacle shapes.
     // Assumes the dimensions of the board may have changed.
     public void resetGrid() {
-        levelGroup.getChildren().clear();
-        grid = new Shape[getBoardHeight()][getBoardWidth()];
-        for(int row = 0; row < getBoardHeight(); row++){
-            for(int col = 0; col < getBoardWidth(); col++){
-                //gets location of on grid by using col and row
-                double[] shapeLocation = boardIdxToScenePos(col,row);
-                //Adds obstacle
-                if(game.currentState.board[row][col] == OBSTACLE_CHAR){
-                    Shape obstacle = new RoundedSquare(shapeLocation[0],
-                            shapeLocation[1], SQUARE_FRACTION * 
-                            getSquareSize());
-                    grid[row][col] = obstacle;
-                }
-                //Adds transparent trail dots
-                else if (game.currentState.board[row][col] == EMPTY_SPACE){
-                    Shape trailCircle = new Circle(shapeLocation[0],
-                            shapeLocation[1],TRAIL_RADIUS_FRACTION
-                            *getSquareSize(),null);
-                    grid[row][col] = trailCircle;
-                }
-                //Adds colored trail dots
-                else if(game.currentState.board[row][col] == TRAIL_CHAR){
-                    Shape trailCircle = new Circle(shapeLocation[0],
-                            shapeLocation[1],TRAIL_RADIUS_FRACTION
-                            * getSquareSize(),TRAIL_COLOR);
-                    grid[row][col] = trailCircle;
-                }
-                //Adds objects to group class
-                levelGroup.getChildren().add(grid[row][col]);
-            }
+        long start = Metrics.start();
+        //Canvas mode draws every cell onto one node instead
+        if(canvasMode){
+            levelGroup.getChildren().setAll(canvasBoard);
+            canvasBoard.reset(shownState, mainScene.getWidth(),
+                    mainScene.getHeight());
         }
-        // Hints: Empty out levelGroup and recreate grid.
-        // Also makes sure grid is the right size, in case the size of the
-        // board changed.
+        else{
+            shownGrid.build(shownState, mainScene.getWidth(),
+                    mainScene.getHeight());
+            showGrid();
+        }
+        Metrics.stop(Metrics.RESET_GRID, start);
+    }
 
+    /**
+     * Puts shownGrid's shapes on screen if they aren't already.
+     * @param none
+     * @return none
+     */
+    void showGrid() {
+        if(!levelGroup.getChildren().contains(shownGrid.group)){
+            levelGroup.getChildren().setAll(shownGrid.group);
+        }
+        grid = shownGrid.grid;
     }
+
     /**
      * updates the Trail color from transparent to colored.
      * @param none
@@ -170,16 +242,52 @@ public class GuiStreamline extends Application {
     // Sets the fill color of all trail Circles making them visible or not
     // depending on if that board position equals TRAIL_CHAR.
     public void updateTrailColors() {
-        for(int row = 0; row < getBoardHeight(); row++){
-            for(int col = 0; col < getBoardWidth(); col++){
-                if(game.currentState.board[row][col] == TRAIL_CHAR){
-                    grid[row][col].setFill(TRAIL_COLOR);
-                }
-                if(game.currentState.board[row][col] == EMPTY_SPACE){
-                    grid[row][col].setFill(null);
+        long start = Metrics.start();
+        if(canvasMode){
+            canvasBoard.redrawTrails();
+        }
+        else{
+            for(int row = 0; row < getBoardHeight(); row++){
+                for(int col = 0; col < getBoardWidth(); col++){
+                    if(shownState.charAt(row, col) == TRAIL_CHAR){
+                        grid[row][col].setFill(TRAIL_COLOR);
+                    }
+                    if(shownState.charAt(row, col) == EMPTY_SPACE){
+                        grid[row][col].setFill(null);
+                    }
                 }
             }
         }
+        Metrics.stop(Metrics.UPDATE_TRAIL_COLORS, start);
+    }
+    /**
+     * Updates the trail color of only the cells a snapshot changed, so a
+     * move costs as much as the length of the slide instead of the size of
+     * the board.
+     * @param snapshot type SnapshotHandoff.Snapshot
+     * @return none, changes shownState and the fill of the changed trail
+     * objects
+     */
+    public void updateChangedTrails(SnapshotHandoff.Snapshot snapshot) {
+        long start = Metrics.start();
+        for(int i = 0; i < snapshot.cells.length; i++){
+            int row = snapshot.cells[i] / getBoardWidth();
+            int col = snapshot.cells[i] % getBoardWidth();
+            if(snapshot.trails[i]){
+                shownState.setTrail(row, col);
+            }
+            else{
+                shownState.clearTrail(row, col);
+            }
+            if(canvasMode){
+                canvasBoard.drawCell(row, col);
+            }
+            else{
+                grid[row][col].setFill(snapshot.trails[i] ? TRAIL_COLOR
+                        : null);
+            }
+        }
+        Metrics.stop(Metrics.UPDATE_CHANGED_TRAILS, start);
     }
     /** 
      * Coverts the given board column and row into scene coordinates.
@@ -191,20 +299,32 @@ public class GuiStreamline extends Application {
      */
     static final double MIDDLE_OFFSET = 0.5;
     public double[] boardIdxToScenePos (int boardCol, int boardRow) {
-        double sceneX = ((boardCol + MIDDLE_OFFSET) * 
-                (mainScene.getWidth() - 1)) / getBoardWidth();
-        double sceneY = ((boardRow + MIDDLE_OFFSET) * 
-                (mainScene.getHeight() - 1)) / getBoardHeight();
+        double sceneX = boardIdxToScene(boardCol, getBoardWidth(),
+                mainScene.getWidth());
+        double sceneY = boardIdxToScene(boardRow, getBoardHeight(),
+                mainScene.getHeight());
         return new double[]{sceneX, sceneY};
     }
 
+    /**
+     * Converts one board index (a column or a row) into a scene coordinate.
+     * Static so it can be used without a scene, e.g. by benchmarks.
+     * @param boardIdx the column or row, type int
+     * @param boardSize the board width or height, type int
+     * @param sceneSize the scene width or height, type double
+     * @return the center of the tile in scene coordinates, type double
+     */
+    static double boardIdxToScene(int boardIdx, int boardSize,
+            double sceneSize) {
+        return ((boardIdx + MIDDLE_OFFSET) * (sceneSize - 1)) / boardSize;
+    }
+
     /**
      * Updates the player location when its col and row has been changed
      * @param fromCol,fromRow,toCol,toRow types int
-     * @return none, updates the location of the player object and updates the
-     * trail colors
+     * @return none, updates the location of the player object
      */
-    // Makes trail markers visible and changes player position.
+    // Changes player position, the trails are updated by applySnapshot().
     // To be called when the user moved the player and the GUI needs to be 
     // updated to show the new position.
     // Parameters are the old position, new position, and whether it was an
@@ -216,64 +336,232 @@ public class GuiStreamline extends Application {
         if (fromCol == toCol && fromRow == toRow) {
             return;
         }
-        //Changes colors of trail dots
-        updateTrailColors();
-        double[] playerLocation = boardIdxToScenePos(toCol,toRow);
-        playerRect.setCenterX(playerLocation[0]);
-        playerRect.setCenterY(playerLocation[1]);
-        //ends game if level is passed
-        if(game.currentState.levelPassed == true){
-            onLevelFinished();
-            return;
-        }
-
+        BoardLayout layout = currentLayout();
+        playerRect.setCenterX(layout.x(toCol));
+        playerRect.setCenterY(layout.y(toRow));
     }
     
     /**
-     * Changes the gamestate if a certain keyCode is inserted
+     * Changes the gamestate if a certain keyCode is inserted. Runs on the
+     * logic thread, the FX thread sees the change in the next snapshot.
      * @param keycode type KeyCode
-     * @return none, updates the board
+     * @return none, publishes the changed game
      */
-    // To be called when a key is pressed
+    // To be called when a key is taken from the queue
     void handleKeyCode(KeyCode keyCode) {
+        long start = Metrics.start();
 
         /*TODO*/
-        int prevCol = game.currentState.playerCol;
-        int prevRow = game.currentState.playerRow;
+        int prevVersion = game.version;
         switch (keyCode) {
             /*TODO*/
             case UP:
-                game.recordAndMove(Direction.UP); 
-                break;
             case LEFT:
-                game.recordAndMove(Direction.LEFT);
-                break;
             case DOWN:
-                game.recordAndMove(Direction.DOWN);
-                break;
             case RIGHT:
-                game.recordAndMove(Direction.RIGHT);
+                game.recordAndMove(directionOf(keyCode));
                 break;
             case U:
                 game.undo();
                 break;
+            case R:
+                game.redo();
+                break;
             case O:
-                game.saveToFile();
+                // written by a background thread, play goes on right away
+                saveWriter.requestSave(game);
+                break;
+            case H:
+                showHint();
                 break;
             case Q:
-                System.exit(0);
-
+                // the journal is closed, nothing below may touch it
+                quit();
+                return;
             default:
                 System.out.println("Possible commands:\n w - up\n " + 
                         "a - left\n s - down\n d - right\n u - undo\n " + 
+                        "r - redo\n h - hint\n f - show stats\n " +
                         "q - quit level");
                 break;
         }
-        
-        onPlayerMoved(prevCol,prevRow,game.currentState.playerCol,
-                game.currentState.playerRow,game.currentState.levelPassed);
-        // Call onPlayerMoved() to update the GUI to reflect the player's 
-        // movement (if any)
+        //Journals and publishes the key if it changed the game
+        if(game.version != prevVersion){
+            journal.append(journalEvent(keyCode));
+            if(recorder != null){
+                recorder.record(journalEvent(keyCode));
+            }
+            handoff.publish(logicLevel, game, false);
+        }
+        Metrics.stop(Metrics.HANDLE_KEY, start);
+        if(game.currentState.levelPassed){
+            onLevelWon();
+        }
+    }
+
+    /**
+     * The direction a key moves the player in. Every window of the game
+     * moves with the same keys.
+     * @param keyCode type KeyCode
+     * @return the direction, or null if the key doesn't move, type
+     * Direction
+     */
+    static Direction directionOf(KeyCode keyCode) {
+        switch (keyCode) {
+            case UP:
+                return Direction.UP;
+            case LEFT:
+                return Direction.LEFT;
+            case DOWN:
+                return Direction.DOWN;
+            case RIGHT:
+                return Direction.RIGHT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Puts a scene in a resizable window no smaller than the game's
+     * minimum, the same for every window of the game, and shows it.
+     * @param stage,scene type Stage, Scene
+     * @param title type String
+     * @param onResize called whenever the scene changes size, type Runnable
+     * @return none
+     */
+    static void showStage(Stage stage, Scene scene, String title,
+            Runnable onResize) {
+        stage.setTitle(title);
+        stage.setScene(scene);
+        stage.setResizable(true);
+        stage.setMinWidth(MIN_WINDOW_WIDTH);
+        stage.setMinHeight(MIN_WINDOW_HEIGHT);
+        scene.widthProperty().addListener(
+                (observable, oldWidth, newWidth) -> onResize.run());
+        scene.heightProperty().addListener(
+                (observable, oldHeight, newHeight) -> onResize.run());
+        stage.show();
+    }
+
+    static final double HINT_TIME = 600;   // milliseconds the hint shows
+    /**
+     * Asks the solver for the next best move on a background thread, then
+     * flashes the square that move would end on. The answer is thrown away
+     * if the level on screen moved or changed while the solver was working.
+     * Runs on the logic thread.
+     * @param none
+     * @return none, shows the hint once it is found
+     */
+    public void showHint() {
+        final BitboardGameState state =
+            new BitboardGameState(game.currentState);
+        final int level = logicLevel;
+        final int version = game.version;
+        solver.solveAsync(state).thenAccept(solution ->
+            Platform.runLater(() -> {
+                if(levelNumber != level || shownVersion != version){
+                    return;
+                }
+                if(!solution.isSolved()){
+                    System.out.println(solution.isUnsolvable()
+                            ? "No way to the goal from here, try undoing."
+                            : "Could not find a hint in time.");
+                    return;
+                }
+                if(solution.length() == 0){
+                    return;
+                }
+                //Finds where the hinted move ends and flashes that square
+                BitboardGameState next = new BitboardGameState(state);
+                next.move(solution.firstMove());
+                BoardLayout layout = currentLayout();
+                hintRect.setSize(layout.getSquareSize() * SQUARE_FRACTION);
+                hintRect.setCenterX(layout.x(next.playerCol));
+                hintRect.setCenterY(layout.y(next.playerRow));
+                FadeTransition fade = new FadeTransition(
+                        Duration.millis(HINT_TIME), hintRect);
+                fade.setFromValue(1);
+                fade.setToValue(0);
+                fade.play();
+                System.out.printf("Hint: %s (%d moves to the goal)\n",
+                        solution.firstMove(), solution.length());
+            }));
+    }
+
+    /**
+     * Turns a key into the event the move journal records for it.
+     * @param keyCode type KeyCode
+     * @return the event, or NO_EVENT for keys that don't change the game,
+     * type byte
+     */
+    static byte journalEvent(KeyCode keyCode) {
+        switch (keyCode) {
+            case UP:
+                return (byte) Direction.UP.ordinal();
+            case LEFT:
+                return (byte) Direction.LEFT.ordinal();
+            case DOWN:
+                return (byte) Direction.DOWN.ordinal();
+            case RIGHT:
+                return (byte) Direction.RIGHT.ordinal();
+            case U:
+                return MoveJournal.UNDO;
+            case R:
+                return MoveJournal.REDO;
+            default:
+                return MoveJournal.NO_EVENT;
+        }
+    }
+
+    /**
+     * Finishes any waiting saves and journal writes, then quits.
+     * @param none
+     * @return none
+     */
+    void quit() {
+        System.out.println(inputQueue.latencyReport());
+        saveWriter.close();
+        journal.close();
+        if(recorder != null){
+            recorder.finishLevel(game);
+            recorder.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Getter for the index of the current level in the pack or directory.
+     * @param none
+     * @return the index, type int
+     */
+    int currentLevelIndex() {
+        return nextGames == null ? 0 : nextGames.nextIndex() - 1;
+    }
+
+    /**
+     * Starts journaling the current level. If an earlier session left a
+     * journal for this very level, its moves are replayed first so the
+     * player picks up where they left off.
+     * @param none
+     * @return none
+     */
+    void resumeJournal() {
+        journal.startLevel(currentLevelIndex(), game.levelHash);
+        if(recorder != null){
+            recorder.startLevel(game, currentLevelIndex(), Replay.NO_SEED);
+        }
+        if(resume == null || !resume.replayOnto(game)){
+            return;
+        }
+        for(byte event : resume.events){
+            journal.append(event);
+            if(recorder != null){
+                recorder.record(event);
+            }
+        }
+        System.out.printf("Resumed %d moves from %s\n",
+                resume.events.length, MoveJournal.DEFAULT_FILE);
+        resume = null;
     }
 
     // This nested class handles keyboard input and calls handleKeyCode()
@@ -290,8 +578,172 @@ public class GuiStreamline extends Application {
              * @return none
              */
             public void handle(KeyEvent e) {
-                handleKeyCode(e.getCode());
+                queueKey(e.getCode());
+            }
+    }
+
+    /**
+     * Queues a key for the logic thread and wakes it up. Keys pressed while
+     * the win animation plays are meant for the next level. The stats key
+     * only changes the screen, so it is handled right here. A key that
+     * doesn't fit in the queue is counted in the latency report.
+     * @param keyCode type KeyCode
+     * @return none
+     */
+    void queueKey(KeyCode keyCode) {
+        if(keyCode == KeyCode.F){
+            metricsOverlay.toggle();
+            return;
+        }
+        int level = levelReady ? levelNumber : levelNumber + 1;
+        inputQueue.offer(keyCode, level);
+        LockSupport.unpark(logicThread);
+    }
+
+    /**
+     * The logic thread: applies keys as they are queued and sleeps when
+     * there are none, so slow moves, saves and level loads never hold up a
+     * frame.
+     * @param none
+     * @return none
+     */
+    void runLogic() {
+        // The journal ended right as the level was won
+        if(game.currentState.levelPassed){
+            onLevelWon();
+        }
+        while(true){
+            processInput();
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Applies every queued key meant for the current level. Keys typed
+     * ahead of a win wait for the next level, since the won level takes no
+     * more moves, and keys for a level that is already over are thrown
+     * away.
+     * @param none
+     * @return none
+     */
+    void processInput() {
+        while(!game.currentState.levelPassed && !inputQueue.isEmpty()){
+            int level = inputQueue.peekLevel();
+            if(level > logicLevel){
+                break;
+            }
+            if(level < logicLevel){
+                inputQueue.discard();
+                continue;
+            }
+            handleKeyCode(inputQueue.poll());
+            inputQueue.onApplied(logicLevel, game.version);
+        }
+    }
+
+    /**
+     * Switches to the next level as soon as one is won, and lays out its
+     * shapes in spareGrid, while the FX thread plays the win animation. If
+     * there is no next level, the FX thread quits after the animation.
+     * @param none
+     * @return none
+     */
+    void onLevelWon() {
+        if(recorder != null){
+            recorder.finishLevel(game);
+        }
+        // spareGrid may still be waiting to be shown until the level just
+        // won is on screen
+        while(levelNumber < logicLevel){
+            LockSupport.park(this);
+        }
+        BitboardStreamline next = nextGames == null ? null : nextGames.next();
+        if(next == null){
+            // every level is done, nothing left to resume
+            journal.discard();
+            if(recorder != null){
+                recorder.close();
             }
+            handoff.publish(logicLevel, game, true);
+            return;
+        }
+        game = next;
+        logicLevel++;
+        journal.startLevel(currentLevelIndex(), game.levelHash);
+        if(recorder != null){
+            recorder.startLevel(game, currentLevelIndex(), Replay.NO_SEED);
+        }
+        // Canvas mode has to draw on the FX thread, it only loads early
+        GridBuffer buffer = null;
+        if(!canvasMode){
+            buffer = spareGrid;
+            buffer.build(game.currentState, knownSceneWidth,
+                    knownSceneHeight);
+        }
+        handoff.publishWhole(logicLevel, game, false, buffer);
+    }
+
+    /**
+     * Shows the changes the logic thread made since the last frame. A
+     * snapshot of a later level means the level on screen was won, so the
+     * win animation plays first. Nothing is taken during the animation,
+     * the logic thread keeps merging its changes until it ends.
+     * @param none
+     * @return none
+     */
+    void showSnapshot() {
+        if(!levelReady){
+            return;
+        }
+        SnapshotHandoff.Snapshot snapshot = handoff.take();
+        if(snapshot == null){
+            return;
+        }
+        if(snapshot.level > levelNumber){
+            // The winning move may not have been shown
+            playerRect.setCenterX(goalRect.getCenterX());
+            playerRect.setCenterY(goalRect.getCenterY());
+            onLevelFinished(snapshot);
+            return;
+        }
+        applySnapshot(snapshot);
+        if(snapshot.lastLevel){
+            onLevelFinished(null);
+        }
+    }
+
+    /**
+     * Brings shownState and the screen up to date with a snapshot.
+     * @param snapshot type SnapshotHandoff.Snapshot
+     * @return none
+     */
+    void applySnapshot(SnapshotHandoff.Snapshot snapshot) {
+        int fromCol = shownState.playerCol;
+        int fromRow = shownState.playerRow;
+        if(snapshot.start != null){
+            shownState = snapshot.start;
+            if(snapshot.grid == null){
+                resetGrid();
+            }
+            else{
+                // Its shapes are already laid out, so they are just swapped
+                // in
+                spareGrid = shownGrid;
+                shownGrid = snapshot.grid;
+                // The window may have been resized since
+                shownGrid.relayout(mainScene.getWidth(),
+                        mainScene.getHeight());
+                showGrid();
+            }
+            placePlayerAndGoal();
+        }
+        updateChangedTrails(snapshot);
+        shownState.playerRow = snapshot.playerRow;
+        shownState.playerCol = snapshot.playerCol;
+        shownState.levelPassed = snapshot.levelPassed;
+        shownVersion = snapshot.version;
+        onPlayerMoved(fromCol, fromRow, snapshot.playerCol,
+                snapshot.playerRow, false);
     }
 
     /**
@@ -305,23 +757,68 @@ public class GuiStreamline extends Application {
     // a new level
     public void onLevelLoaded() {
         resetGrid();
+        placePlayerAndGoal();
+    }
 
-        double squareSize = getSquareSize() * SQUARE_FRACTION;
+    /**
+     * Moves the player and goal to where they start in the current level.
+     * @param none
+     * @return none
+     */
+    void placePlayerAndGoal() {
+        BoardLayout layout = currentLayout();
+        double squareSize = layout.getSquareSize() * SQUARE_FRACTION;
 
         // Update the player position
-        double[] playerPos = boardIdxToScenePos(
-                game.currentState.playerCol, game.currentState.playerRow
-                );
         playerRect.setSize(squareSize);
-        playerRect.setCenterX(playerPos[0]);
-        playerRect.setCenterY(playerPos[1]);
+        playerRect.setCenterX(layout.x(shownState.playerCol));
+        playerRect.setCenterY(layout.y(shownState.playerRow));
 
         //update the goal position
-        double[] goalPos = boardIdxToScenePos(
-                game.currentState.goalCol, game.currentState.goalRow);
         goalRect.setSize(squareSize);
-        goalRect.setCenterX(goalPos[0]);
-        goalRect.setCenterY(goalPos[1]);
+        goalRect.setCenterX(layout.x(shownState.goalCol));
+        goalRect.setCenterY(layout.y(shownState.goalRow));
+    }
+
+    /**
+     * Getter for the layout of the board on screen.
+     * @param none
+     * @return the layout, type BoardLayout
+     */
+    BoardLayout currentLayout() {
+        return canvasMode ? canvasBoard.layout : shownGrid.layout;
+    }
+
+    /**
+     * Fits the board to the scene after it was resized. Runs at most once
+     * every RELAYOUT_INTERVAL so dragging the window edge doesn't relayout
+     * on every pulse, and never during the win animation. The shapes on
+     * screen are moved, not rebuilt.
+     * @param now the time of the frame, type long
+     * @return none
+     */
+    void relayout(long now) {
+        if(!relayoutPending || !levelReady
+                || now - lastRelayout < RELAYOUT_INTERVAL){
+            return;
+        }
+        relayoutPending = false;
+        lastRelayout = now;
+        double sceneWidth = mainScene.getWidth();
+        double sceneHeight = mainScene.getHeight();
+        knownSceneWidth = sceneWidth;
+        knownSceneHeight = sceneHeight;
+        if(canvasMode){
+            if(sceneWidth == canvasBoard.sceneWidth
+                    && sceneHeight == canvasBoard.sceneHeight){
+                return;
+            }
+            canvasBoard.reset(shownState, sceneWidth, sceneHeight);
+        }
+        else if(!shownGrid.relayout(sceneWidth, sceneHeight)){
+            return;
+        }
+        placePlayerAndGoal();
     }
 
     // Called when the player reaches the goal. Shows the winning animation
@@ -331,10 +828,15 @@ public class GuiStreamline extends Application {
     static final double DOUBLE_MULTIPLIER = 2;
     /**
      * Creates the animation that signifies the level was passed
-     * @param none
+     * @param nextLevel the first snapshot of the next level, which the logic
+     * thread already switched to, or null if there is none, type
+     * SnapshotHandoff.Snapshot
      * @return none, it ends the game
      */
-    public void onLevelFinished() {
+    public void onLevelFinished(final SnapshotHandoff.Snapshot nextLevel) {
+        // Keys from now on are for the next level
+        levelReady = false;
+
         // Clone the goal rectangle and scale it up until it covers the screen
 
         // Clone the goal rectangle
@@ -370,18 +872,22 @@ public class GuiStreamline extends Application {
         st.setOnFinished(e1 -> {
 
                 /* TODO: check if there is no next game and if so, quit */
-                if(nextGames.isEmpty() == true){
+                if(nextLevel == null){
+                    // the logic thread already closed the journal
+                    System.out.println(inputQueue.latencyReport());
+                    saveWriter.close();
                     System.exit(0);
-                }else{
-                    game = nextGames.get(0);
-                    nextGames.remove(0);
                 }
                 /* TODO: update the instances variables game and nextGames 
                    to switch to the next level */
 
                 // Update UI to the next level, but it won't be visible yet
                 // because it's covered by the animated cloned goal
-                onLevelLoaded();
+                applySnapshot(nextLevel);
+                levelReady = true;
+                // spareGrid is free again, the logic thread may use it
+                levelNumber = nextLevel.level;
+                LockSupport.unpark(logicThread);
 
                 /* TODO: use a FadeTransition on animatedGoal, with FADE_TIME as
                    the duration. Use setOnFinished() to schedule code to
@@ -402,52 +908,162 @@ public class GuiStreamline extends Application {
      * command line arguments.
      */
     public void loadLevels() {
+        long start = Metrics.start();
+        readLevels();
+        Metrics.stop(Metrics.LOAD_LEVELS, start);
+    }
+
+    private void readLevels() {
         game = null;
-        nextGames = new ArrayList<Streamline>();
+        nextGames = null;
+        pickableGames = null;
+        if(getParameters().getRaw().contains(RESTART_FLAG)){
+            dropJournal();
+        }
+        resume = MoveJournal.read(new File(MoveJournal.DEFAULT_FILE));
 
-        List<String> args = getParameters().getRaw();
+        List<String> args = levelArgs(getParameters().getRaw());
         if (args.size() == 0) {
             System.out.println("Starting a default-sized random game...");
-            game = new Streamline();
+            game = new BitboardStreamline();
             return;
         }
 
         // at this point args.length == 1
 
+        // a stream of levels from stdin or a named pipe, parsed as they
+        // come in. Streams can't seek, so an old journal only resumes if
+        // its level happens to come first
         File file = new File(args.get(0));
+        if (args.get(0).equals(LevelStream.STDIN_ARG)
+                || (file.exists() && !file.isFile() && !file.isDirectory())) {
+            boolean stdin = args.get(0).equals(LevelStream.STDIN_ARG);
+            System.out.printf("Reading levels from %s...\n", stdin
+                    ? LevelStream.STDIN_NAME : args.get(0));
+            try {
+                nextGames = new LevelStream(stdin ? System.in
+                        : new FileInputStream(file), stdin
+                        ? LevelStream.STDIN_NAME : args.get(0),
+                        LevelLoader.DEFAULT_PREFETCH);
+            }
+            catch (IOException e) {
+                System.out.printf("Could not open %s: %s. Exiting...",
+                        args.get(0), e.getMessage());
+                return;
+            }
+            game = nextGames.next();
+            if (game == null) {
+                System.out.printf("No games found in %s. Exiting...",
+                        args.get(0));
+            }
+            return;
+        }
+
         if (!file.exists()) {
             System.out.printf("File %s does not exist. Exiting...", 
                     args.get(0));
             return;
         }
 
+        // a level pack, levels are read from it as the game gets to them
+        if (LevelPack.isPack(file)) {
+            System.out.printf("Opening level pack %s...\n", args.get(0));
+            try {
+                LevelPack pack = new LevelPack(file);
+                pickableGames = new LevelLoader(pack,
+                        LevelLoader.DEFAULT_PREFETCH, resumeIndex(pack));
+                nextGames = pickableGames;
+            }
+            catch (IOException e) {
+                System.out.printf("Could not open %s: %s. Exiting...",
+                        args.get(0), e.getMessage());
+                return;
+            }
+            game = nextGames.next();
+            if (game == null) {
+                System.out.printf("No games found in %s. Exiting...",
+                        args.get(0));
+            }
+            return;
+        }
+
         // if is not a directory, read from the file and start the game
         if (!file.isDirectory()) {
             System.out.printf("Loading single game from file %s...\n", 
                     args.get(0));
-            game = new Streamline(args.get(0));
+            game = new BitboardStreamline(args.get(0));
             return;
         }
 
-        // file is a directory, walk the directory and load from all files
-        File[] subfiles = file.listFiles();
-        Arrays.sort(subfiles);
-        for (int i=0; i<subfiles.length; i++) {
-            File subfile = subfiles[i];
+        // file is a directory, only list the files now. The levels are
+        // parsed a few at a time in the background as the game gets to them
+        DirectoryLevelSource directory = new DirectoryLevelSource(file);
+        pickableGames = new LevelLoader(directory,
+                LevelLoader.DEFAULT_PREFETCH, resumeIndex(directory));
+        nextGames = pickableGames;
 
-            // in case there's a directory in there, skip
-            if (subfile.isDirectory()) continue;
+        // Switch to the first level
+        game = nextGames.next();
+        if (game == null) {
+            System.out.printf("No games found in %s. Exiting...", 
+                    args.get(0));
+        }
+    }
 
-            // assume all files are properly formatted games, 
-            // create a new game for each file, and add it to nextGames
-            System.out.printf("Loading game %d/%d from file %s...\n",
-                    i+1, subfiles.length, subfile.toString());
-            nextGames.add(new Streamline(subfile.toString()));
+    /**
+     * Finds the level of a directory or pack an earlier session left off
+     * on. The journal only counts if the level at its index is the very
+     * level it was written for; a journal from other levels is dropped and
+     * play starts from the first level.
+     * @param source the levels being played, type LevelSource
+     * @return the level to start on, type int
+     */
+    private int resumeIndex(LevelSource source) {
+        if(resume == null){
+            return 0;
+        }
+        int index = resume.levelIndex;
+        if(index >= 0 && index < source.size()){
+            try {
+                // Hashed the way the journal was: from the level as it is
+                // played, which may be read more leniently than loadState()
+                long levelHash = source.load(index).levelHash;
+                if(levelHash == resume.levelHash){
+                    return index;
+                }
+            }
+            catch (IOException e) {
+                // can't be the level the journal was written for
+            }
         }
+        System.out.printf("%s is from other levels, starting over...\n",
+                MoveJournal.DEFAULT_FILE);
+        dropJournal();
+        return 0;
+    }
 
-        // Switch to the first level
-        game = nextGames.get(0);
-        nextGames.remove(0);
+    /**
+     * Deletes the journal of an earlier session, so nothing is resumed.
+     * @param none
+     * @return none
+     */
+    private void dropJournal() {
+        resume = null;
+        new File(MoveJournal.DEFAULT_FILE).delete();
+    }
+
+    /**
+     * Removes the options from the command line arguments.
+     * @param args the raw arguments, type List<String>
+     * @return the arguments naming levels, type List<String>
+     */
+    static List<String> levelArgs(List<String> args) {
+        List<String> levels = new ArrayList<String>(args);
+        levels.remove(CANVAS_FLAG);
+        levels.remove(RECORD_FLAG);
+        levels.remove(SELECT_FLAG);
+        levels.remove(RESTART_FLAG);
+        return levels;
     }
 
     /**
@@ -458,42 +1074,166 @@ public class GuiStreamline extends Application {
         public void start(Stage primaryStage) throws Exception {
             // Populate game and nextGames
             loadLevels();
+            if(game == null){
+                // loadLevels() said why
+                Platform.exit();
+                return;
+            }
+            journal = new MoveJournal(new File(MoveJournal.DEFAULT_FILE));
+            if(getParameters().getRaw().contains(RECORD_FLAG)){
+                recorder = new ReplayRecorder(
+                        new File(ReplayRecorder.DEFAULT_DIRECTORY));
+            }
 
             // Initialize the scene and our groups
             rootGroup = new Group();
             mainScene = new Scene(rootGroup, SCENE_WIDTH, SCENE_HEIGHT, 
                     Color.GAINSBORO);
-            levelGroup = new Group();
-            rootGroup.getChildren().add(levelGroup);
-
-            //TODO: initialize goalRect and playerRect, add them to rootGroup,
-            //      call onLevelLoaded(), and set up keyboard input handling
-            double[] goalPosition = boardIdxToScenePos(
-                    game.currentState.goalCol, game.currentState.goalRow);
-            goalRect = new RoundedSquare();
-            goalRect.setFill(GOAL_COLOR);
-            goalRect.setCenterX(goalPosition[0]);
-            goalRect.setCenterY(goalPosition[1]);
-            goalRect.setSize(getSquareSize());
-            rootGroup.getChildren().add(goalRect);
-            
-            double[] playerPosition = boardIdxToScenePos(
-                    game.currentState.playerCol,game.currentState.playerRow);
-            playerRect = new Player();
-            playerRect.setCenterX(playerPosition[0]);
-            playerRect.setCenterY(playerPosition[1]);
-            playerRect.setSize(getSquareSize());
-            rootGroup.getChildren().add(playerRect);
-            onLevelLoaded();
+            canvasMode = getParameters().getRaw().contains(CANVAS_FLAG);
+            if(canvasMode){
+                canvasBoard = new CanvasBoard();
+            }
+
             // Make the scene visible
-            primaryStage.setTitle(TITLE);
-            primaryStage.setScene(mainScene);
-            primaryStage.setResizable(false);
-            primaryStage.show();
+            showStage(primaryStage, mainScene, TITLE, this::onSceneResized);
+
+            if(getParameters().getRaw().contains(SELECT_FLAG)){
+                if(pickableGames != null){
+                    showLevelSelect();
+                    return;
+                }
+                System.out.println("Only the levels of a directory or pack " +
+                        "can be picked, starting the first level...");
+            }
+            startPlaying();
+        }
 
-            myKeyHandler = new MyKeyHandler();
-            mainScene.setOnKeyPressed(myKeyHandler);
+    /**
+     * Notes that the scene was resized, for relayout() or the level select
+     * screen.
+     * @param none
+     * @return none
+     */
+    void onSceneResized() {
+        if(levelSelect != null){
+            levelSelect.setViewSize(mainScene.getWidth(),
+                    mainScene.getHeight());
+        }
+        relayoutPending = true;
+    }
+
+    /**
+     * Shows the levels of the directory or pack as thumbnails, starting on
+     * the level play would start on. Play starts once one is picked.
+     * @param none
+     * @return none
+     */
+    void showLevelSelect() {
+        ThumbnailCache thumbnails = new ThumbnailCache(
+                ThumbnailRenderer.DEFAULT_SIZE,
+                ThumbnailCache.DEFAULT_MAX_BYTES,
+                new File(ThumbnailCache.DEFAULT_DIRECTORY),
+                ThumbnailCache.DEFAULT_MAX_DISK_BYTES);
+        levelSelect = new LevelSelectView(pickableGames.source, thumbnails,
+                currentLevelIndex(), this::onLevelPicked);
+        rootGroup.getChildren().add(levelSelect);
+        mainScene.setOnKeyPressed(e -> levelSelect.handleKeyCode(e.getCode()));
+        levelSelect.setViewSize(mainScene.getWidth(), mainScene.getHeight());
+    }
+
+    /**
+     * Closes the level select screen and starts playing from the level
+     * picked. The levels loaded ahead for the old first level are dropped.
+     * @param index the level picked, type int
+     * @return none
+     */
+    void onLevelPicked(int index) {
+        System.out.println(levelSelect.renderer.cache.describe());
+        rootGroup.getChildren().remove(levelSelect);
+        levelSelect = null;
+        if(index != currentLevelIndex()){
+            pickableGames.seek(index);
+            game = pickableGames.next();
+            if(game == null){
+                System.out.println("No games left to play. Exiting...");
+                Platform.exit();
+                return;
+            }
         }
+        startPlaying();
+    }
+
+    /**
+     * Shows the current level and starts the logic thread and the
+     * keyboard.
+     * @param none
+     * @return none
+     */
+    void startPlaying() {
+        resumeJournal();
+        shownState = new BitboardGameState(game.currentState);
+        shownVersion = game.version;
+
+        levelGroup = new Group();
+        rootGroup.getChildren().add(levelGroup);
+
+        //TODO: initialize goalRect and playerRect, add them to rootGroup,
+        //      call onLevelLoaded(), and set up keyboard input handling
+        double[] goalPosition = boardIdxToScenePos(
+                shownState.goalCol, shownState.goalRow);
+        goalRect = new RoundedSquare();
+        goalRect.setFill(GOAL_COLOR);
+        goalRect.setCenterX(goalPosition[0]);
+        goalRect.setCenterY(goalPosition[1]);
+        goalRect.setSize(getSquareSize());
+        rootGroup.getChildren().add(goalRect);
+
+        hintRect = new RoundedSquare();
+        hintRect.setFill(HINT_COLOR);
+        hintRect.setOpacity(0);
+        rootGroup.getChildren().add(hintRect);
+        
+        double[] playerPosition = boardIdxToScenePos(
+                shownState.playerCol,shownState.playerRow);
+        playerRect = new Player();
+        playerRect.setCenterX(playerPosition[0]);
+        playerRect.setCenterY(playerPosition[1]);
+        playerRect.setSize(getSquareSize());
+        rootGroup.getChildren().add(playerRect);
+        metricsOverlay = new MetricsOverlay();
+        rootGroup.getChildren().add(metricsOverlay);
+        onLevelLoaded();
+        knownSceneWidth = mainScene.getWidth();
+        knownSceneHeight = mainScene.getHeight();
+
+        // From here on only the logic thread touches game
+        logicThread = new Thread(this::runLogic, "game-logic");
+        logicThread.setDaemon(true);
+        logicThread.start();
+
+        myKeyHandler = new MyKeyHandler();
+        mainScene.setOnKeyPressed(myKeyHandler);
+        inputPump = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                metricsOverlay.onFrame(now);
+                relayout(now);
+                boolean wasReady = levelReady;
+                showSnapshot();
+                // Keys count once this frame draws their moves
+                if(levelReady){
+                    inputQueue.onFrameShown(now, levelNumber, shownVersion);
+                }
+                else if(wasReady){
+                    // The winning move was just drawn, the animation holds
+                    // the screen until the next level
+                    inputQueue.onFrameShown(now, levelNumber,
+                            Integer.MAX_VALUE);
+                }
+            }
+        };
+        inputPump.start();
+    }
 
     /** 
      * Execution begins here, but at this point we don't have a UI yet
@@ -501,7 +1241,12 @@ public class GuiStreamline extends Application {
      * start() above being called.
      */
     public static void main(String[] args) {
-        if (args.length != 0 && args.length != 1) {
+        if (args.length > 0 && args[0].equals(SPARSE_FLAG)) {
+            Application.launch(SparseGui.class,
+                    Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (levelArgs(Arrays.asList(args)).size() > 1) {
             System.out.print(USAGE);
             return;
         }
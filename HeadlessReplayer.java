@@ -0,0 +1,112 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: HeadlessReplayer.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file plays recorded replays against the engine as fast as it can,
+ on every core and without JavaFX, and checks that each one ends in the
+ same state it ended in when it was recorded. Run it against a pile of old
+ replays to check that a new engine still plays the same way.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks replay files in parallel and reports any that don't match.
+ */
+public class HeadlessReplayer {
+    static final String USAGE =
+        "Usage: \n" +
+        "> java HeadlessReplayer <file or directory>...   - to check every " +
+        "replay, directories are searched for " + Replay.EXTENSION +
+        " files\n";
+    static final double NANOS_PER_SECOND = 1e9;
+    static final int FAILURE_STATUS = 1;
+
+    final AtomicLong passed = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong damaged = new AtomicLong();
+    final AtomicLong events = new AtomicLong();
+
+    /**
+     * Finds the replay files in the given files and directories.
+     * @param paths files and directories, type String[]
+     * @return the replay files, type List<File>
+     */
+    static List<File> findReplays(String[] paths) {
+        List<File> replays = new ArrayList<File>();
+        for(String path : paths){
+            addReplays(new File(path), replays);
+        }
+        return replays;
+    }
+
+    private static void addReplays(File file, List<File> replays) {
+        if(!file.isDirectory()){
+            replays.add(file);
+            return;
+        }
+        File[] children = file.listFiles();
+        if(children == null){
+            return;
+        }
+        for(File child : children){
+            if(child.isDirectory()
+                    || child.getName().endsWith(Replay.EXTENSION)){
+                addReplays(child, replays);
+            }
+        }
+    }
+
+    /**
+     * Reads and checks one replay, counting the result.
+     * @param file type File
+     * @return none
+     */
+    void check(File file) {
+        try {
+            Replay replay = Replay.read(file);
+            events.addAndGet(replay.events.length);
+            if(replay.verify()){
+                passed.incrementAndGet();
+            }
+            else{
+                failed.incrementAndGet();
+                System.out.printf("MISMATCH %s\n", file);
+            }
+        }
+        catch (IOException e) {
+            damaged.incrementAndGet();
+            System.out.printf("DAMAGED %s: %s\n", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Checks every replay given on the command line.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.print(USAGE);
+            return;
+        }
+        List<File> replays = findReplays(args);
+        HeadlessReplayer replayer = new HeadlessReplayer();
+        long start = System.nanoTime();
+        replays.parallelStream().forEach(replayer::check);
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        System.out.printf("%d replays (%d events) in %.2f s: %d passed, " +
+                "%d mismatched, %d damaged\n", replays.size(),
+                replayer.events.get(), seconds, replayer.passed.get(),
+                replayer.failed.get(), replayer.damaged.get());
+        if (replayer.failed.get() + replayer.damaged.get() > 0) {
+            System.exit(FAILURE_STATUS);
+        }
+    }
+}
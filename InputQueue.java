@@ -0,0 +1,180 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: InputQueue.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file buffers key presses between the keyboard and the game. Keys are
+ queued as they arrive and applied to the game once per frame, each tagged
+ with the level it was pressed for, so keys pressed while the win animation
+ plays wait for the next level instead of going to the one just finished.
+ It also keeps track of how long keys wait before their move is shown.
+ */
+
+import javafx.scene.input.KeyCode;
+
+/**
+ * A bounded first in first out queue of key presses. The queue is a ring of
+ * plain arrays, so queueing a key makes no garbage.
+ */
+public class InputQueue {
+    static final int DEFAULT_CAPACITY = 1024;
+    static final double NANOS_PER_MILLI = 1e6;
+
+    // Ring buffer of queued keys, oldest at head
+    final KeyCode[] keys;
+    final int[] levels;                 // level each key was pressed for
+    final long[] queuedAt;              // System.nanoTime() when queued
+    int head;
+    int size;
+    long dropped;                       // keys that didn't fit
+    long stale;                         // keys for a level already over
+
+    long polledAt;                      // when the last key polled was queued
+    // Keys applied to the game but not shown yet, with the level and game
+    // version their move made
+    final long[] appliedAt;
+    final int[] appliedLevel;
+    final int[] appliedVersion;
+    int applied;
+
+    // Input to display latency of every key shown so far
+    long latencyCount;
+    long latencyTotal;
+    long latencyMax;
+
+    /**
+     * Constructor that creates an empty queue.
+     * @param capacity the most keys that can wait at once, type int
+     * @return none, constructor method
+     */
+    public InputQueue(int capacity) {
+        keys = new KeyCode[capacity];
+        levels = new int[capacity];
+        queuedAt = new long[capacity];
+        appliedAt = new long[capacity];
+        appliedLevel = new int[capacity];
+        appliedVersion = new int[capacity];
+    }
+
+    /**
+     * Adds a key to the end of the queue.
+     * @param key the key pressed, type KeyCode
+     * @param level the level the key is meant for, type int
+     * @return false if the queue was full and the key was dropped, type
+     * boolean
+     */
+    public synchronized boolean offer(KeyCode key, int level) {
+        if(size == keys.length){
+            dropped++;
+            return false;
+        }
+        int tail = (head + size) % keys.length;
+        keys[tail] = key;
+        levels[tail] = level;
+        queuedAt[tail] = System.nanoTime();
+        size++;
+        return true;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Getter for the level the oldest key was pressed for.
+     * @param none
+     * @return the level, type int
+     */
+    public synchronized int peekLevel() {
+        return levels[head];
+    }
+
+    /**
+     * Removes the oldest key and remembers when it was queued, for
+     * onApplied().
+     * @param none
+     * @return the key, type KeyCode
+     */
+    public synchronized KeyCode poll() {
+        KeyCode key = keys[head];
+        keys[head] = null;
+        polledAt = queuedAt[head];
+        head = (head + 1) % keys.length;
+        size--;
+        return key;
+    }
+
+    /**
+     * Removes the oldest key without applying it, because the level it was
+     * pressed for is over.
+     * @param none
+     * @return none
+     */
+    public synchronized void discard() {
+        keys[head] = null;
+        head = (head + 1) % keys.length;
+        size--;
+        stale++;
+    }
+
+    /**
+     * Notes that the key last polled has been applied to the game, so its
+     * latency is counted once a frame shows the version it made.
+     * @param level the level it was applied to, type int
+     * @param version the game version after it, type int
+     * @return none
+     */
+    public synchronized void onApplied(int level, int version) {
+        if(applied < appliedAt.length){
+            appliedAt[applied] = polledAt;
+            appliedLevel[applied] = level;
+            appliedVersion[applied] = version;
+            applied++;
+        }
+    }
+
+    /**
+     * Counts the latency of every applied key whose move a frame now
+     * shows, that is every key of an earlier level, or of this level up to
+     * the version drawn. Keys whose move isn't drawn yet keep waiting.
+     * @param now the time of this frame, in System.nanoTime() units, type
+     * long
+     * @param level the level drawn, type int
+     * @param version the game version drawn, type int
+     * @return none
+     */
+    public synchronized void onFrameShown(long now, int level, int version) {
+        int waiting = 0;
+        for(int i = 0; i < applied; i++){
+            if(appliedLevel[i] > level || (appliedLevel[i] == level
+                        && appliedVersion[i] > version)){
+                appliedAt[waiting] = appliedAt[i];
+                appliedLevel[waiting] = appliedLevel[i];
+                appliedVersion[waiting] = appliedVersion[i];
+                waiting++;
+                continue;
+            }
+            long latency = Math.max(0, now - appliedAt[i]);
+            latencyCount++;
+            latencyTotal += latency;
+            latencyMax = Math.max(latencyMax, latency);
+        }
+        applied = waiting;
+    }
+
+    /**
+     * Describes the input latency seen so far.
+     * @param none
+     * @return the description, type String
+     */
+    public synchronized String latencyReport() {
+        double average = latencyCount == 0 ? 0
+            : latencyTotal / (double) latencyCount / NANOS_PER_MILLI;
+        return String.format("Input latency: %d keys, average %.1f ms, " +
+                "max %.1f ms, %d dropped, %d stale", latencyCount, average,
+                latencyMax / NANOS_PER_MILLI, dropped, stale);
+    }
+}
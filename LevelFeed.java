@@ -0,0 +1,32 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelFeed.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file describes where the game gets its next level from, whether the
+ levels are known ahead of time, like the files of a directory, or only
+ arrive one at a time, like levels piped in from a generator.
+ */
+
+/**
+ * Levels handed out one at a time, in order.
+ */
+public interface LevelFeed {
+    /**
+     * Hands out the next level, waiting for it if it isn't ready yet.
+     * @param none
+     * @return the level, or null if there are no levels left, type
+     * BitboardStreamline
+     */
+    BitboardStreamline next();
+
+    /**
+     * Getter for the index of the level the next call to next() returns.
+     * @param none
+     * @return the index, type int
+     */
+    int nextIndex();
+}
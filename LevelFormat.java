@@ -0,0 +1,321 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelFormat.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file reads and writes levels in the same text format that
+ Streamline(String) reads and saveToFile() writes:
+   <height> <width>
+   <playerRow> <playerCol>
+   <goalRow> <goalCol>
+   followed by height lines of width board chars
+ Reading is strict: anything Streamline would choke on is reported with
+ the line it is on. A stream may hold many levels one after another,
+ optionally with blank lines between them.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Helpers for the text level format, for tools that make or check levels
+ * without going through Streamline.
+ */
+public class LevelFormat {
+    static final String LINE_SEPARATOR = "\n";
+    static final char TRAIL_CHAR = '.';
+    static final char OBSTACLE_CHAR = 'X';
+    static final char SPACE_CHAR = ' ';
+    // Bigger boards than this are taken to be a typo
+    static final long MAX_CELLS = 1L << 28;
+    // A chunked board only has to number its cells with an int
+    static final long MAX_SPARSE_CELLS = Integer.MAX_VALUE;
+    static final String WHITESPACE = "\\s+";
+    // Longest blank line allowed between the levels of a stream
+    static final int MARK_LIMIT = 8192;
+
+    /**
+     * Writes a level to a writer.
+     * @param state the level, type BitboardGameState
+     * @param out where to write it, type Writer
+     * @return none
+     * @throws IOException if writing fails
+     */
+    public static void write(BitboardGameState state, Writer out)
+            throws IOException {
+        out.write(state.height + " " + state.width + LINE_SEPARATOR);
+        out.write(state.playerRow + " " + state.playerCol + LINE_SEPARATOR);
+        out.write(state.goalRow + " " + state.goalCol + LINE_SEPARATOR);
+        char[] line = new char[state.width];
+        for(int row = 0; row < state.height; row++){
+            for(int col = 0; col < state.width; col++){
+                line[col] = state.charAt(row, col);
+            }
+            out.write(line);
+            out.write(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Writes a level to a file.
+     * @param state the level, type BitboardGameState
+     * @param file the file to write, type File
+     * @return none
+     * @throws IOException if writing fails
+     */
+    public static void write(BitboardGameState state, File file)
+            throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            write(state, out);
+        }
+    }
+
+    /**
+     * Reads a level from a file.
+     * @param file the file to read, type File
+     * @return the level, type BitboardGameState
+     * @throws IOException if the file can't be read or is not a valid
+     * level, the message says where and why
+     */
+    public static BitboardGameState read(File file) throws IOException {
+        return read(file, MAX_CELLS);
+    }
+
+    /**
+     * Reads a level from a file, refusing boards with more than maxCells
+     * cells before any memory is taken for them.
+     * @param file the file to read, type File
+     * @param maxCells the most cells the board may have, type long
+     * @return the level, type BitboardGameState
+     * @throws IOException if the file can't be read or is not a valid
+     * level, the message says where and why
+     */
+    public static BitboardGameState read(File file, long maxCells)
+            throws IOException {
+        try (Reader in = new FileReader(file)) {
+            return read(in, file.getPath(), maxCells);
+        }
+    }
+
+    /**
+     * Reads a level.
+     * @param in where to read it from, type Reader
+     * @param name what to call the level in error messages, type String
+     * @return the level, type BitboardGameState
+     * @throws IOException if reading fails or the level is not valid, the
+     * message says where and why
+     */
+    public static BitboardGameState read(Reader in, String name)
+            throws IOException {
+        return read(in, name, MAX_CELLS);
+    }
+
+    private static BitboardGameState read(Reader in, String name,
+            long maxCells) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        int[][] header = readHeader(lines, name, maxCells);
+        BitboardGameState state = new BitboardGameState(header[0][0],
+                header[0][1], header[1][0], header[1][1], header[2][0],
+                header[2][1]);
+        readBoard(lines, name, header, state);
+        return state;
+    }
+
+    /**
+     * Reads the next level of a stream of levels, leaving the stream right
+     * after its last board row. Blank lines before the level are skipped.
+     * @param lines the stream, type BufferedReader
+     * @param name what to call the level in error messages, type String
+     * @return the level, or null if the stream ended, type
+     * BitboardGameState
+     * @throws IOException if reading fails or the level is not valid, the
+     * message says where and why
+     */
+    public static BitboardGameState readNext(BufferedReader lines,
+            String name) throws IOException {
+        String line;
+        do {
+            lines.mark(MARK_LIMIT);
+            line = lines.readLine();
+            if(line == null){
+                return null;
+            }
+        } while(line.trim().isEmpty());
+        lines.reset();
+        int[][] header = readHeader(lines, name, MAX_CELLS);
+        BitboardGameState state = new BitboardGameState(header[0][0],
+                header[0][1], header[1][0], header[1][1], header[2][0],
+                header[2][1]);
+        readRows(lines, name, header, state);
+        return state;
+    }
+
+    /**
+     * Reads a level into a chunked board, for maps too big for a
+     * BitboardGameState. The board is read a line at a time, so only the
+     * chunks with something in them ever take memory.
+     * @param file the file to read, type File
+     * @return the level, type SparseStreamline
+     * @throws IOException if the file can't be read or is not a valid
+     * level, the message says where and why
+     */
+    public static SparseStreamline readSparse(File file) throws IOException {
+        try (BufferedReader lines = new BufferedReader(new FileReader(file))) {
+            String name = file.getPath();
+            int[][] header = readHeader(lines, name, MAX_SPARSE_CELLS);
+            SparseStreamline level = new SparseStreamline(header[0][0],
+                    header[0][1], header[1][0], header[1][1], header[2][0],
+                    header[2][1]);
+            readBoard(lines, name, header, level.board);
+            return level;
+        }
+    }
+
+    /**
+     * Something a board can be read into.
+     */
+    interface Cells {
+        void setObstacle(int row, int col);
+        void setTrail(int row, int col);
+        boolean isObstacle(int row, int col);
+    }
+
+    /**
+     * Reads and checks the size, player and goal lines.
+     * @param lines type BufferedReader
+     * @param name what to call the level in error messages, type String
+     * @param maxCells the most cells the board may have, type long
+     * @return the size, player and goal pairs, type int[][]
+     * @throws IOException if they are not valid
+     */
+    private static int[][] readHeader(BufferedReader lines, String name,
+            long maxCells) throws IOException {
+        int[] size = readPair(lines, name, 1);
+        int[] player = readPair(lines, name, 2);
+        int[] goal = readPair(lines, name, 3);
+        int height = size[0];
+        int width = size[1];
+        if(height <= 0 || width <= 0 || (long) height * width > maxCells){
+            throw error(name, 1, "bad board size " + height + " " + width);
+        }
+        checkInBounds(name, 2, "player", player, height, width);
+        checkInBounds(name, 3, "goal", goal, height, width);
+        return new int[][]{size, player, goal};
+    }
+
+    /**
+     * Reads the board rows after the header, and checks that nothing
+     * follows them.
+     * @param lines type BufferedReader
+     * @param name what to call the level in error messages, type String
+     * @param header what readHeader() returned, type int[][]
+     * @param cells where to put the obstacles and trails, type Cells
+     * @return none
+     * @throws IOException if the board is not valid
+     */
+    private static void readBoard(BufferedReader lines, String name,
+            int[][] header, Cells cells) throws IOException {
+        readRows(lines, name, header, cells);
+        String extra;
+        int lineNumber = header[0][0] + 4;
+        while((extra = lines.readLine()) != null){
+            if(!extra.trim().isEmpty()){
+                throw error(name, lineNumber, "unexpected line after board");
+            }
+            lineNumber++;
+        }
+    }
+
+    /**
+     * Reads the board rows after the header.
+     * @param lines type BufferedReader
+     * @param name what to call the level in error messages, type String
+     * @param header what readHeader() returned, type int[][]
+     * @param cells where to put the obstacles and trails, type Cells
+     * @return none
+     * @throws IOException if the board is not valid
+     */
+    private static void readRows(BufferedReader lines, String name,
+            int[][] header, Cells cells) throws IOException {
+        int height = header[0][0];
+        int width = header[0][1];
+        int[] player = header[1];
+        int[] goal = header[2];
+        for(int row = 0; row < height; row++){
+            int lineNumber = row + 4;
+            String line = lines.readLine();
+            if(line == null){
+                throw error(name, lineNumber, "file ends after " + row
+                        + " of " + height + " board rows");
+            }
+            if(line.length() != width){
+                throw error(name, lineNumber, "board row has "
+                        + line.length() + " chars, expected " + width);
+            }
+            for(int col = 0; col < width; col++){
+                char c = line.charAt(col);
+                if(c == OBSTACLE_CHAR){
+                    cells.setObstacle(row, col);
+                }
+                else if(c == TRAIL_CHAR){
+                    cells.setTrail(row, col);
+                }
+                else if(c != SPACE_CHAR){
+                    throw error(name, lineNumber, "unknown board char '"
+                            + c + "' in column " + col);
+                }
+            }
+        }
+        if(cells.isObstacle(player[0], player[1])){
+            throw error(name, 2, "player starts on an obstacle");
+        }
+        if(cells.isObstacle(goal[0], goal[1])){
+            throw error(name, 3, "goal is on an obstacle");
+        }
+    }
+
+    private static int[] readPair(BufferedReader lines, String name,
+            int lineNumber) throws IOException {
+        String line = lines.readLine();
+        if(line == null){
+            throw error(name, lineNumber, "file ends early");
+        }
+        String[] parts = line.trim().split(WHITESPACE);
+        if(parts.length != 2){
+            throw error(name, lineNumber, "expected two numbers, found \""
+                    + line + "\"");
+        }
+        try {
+            return new int[]{Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1])};
+        }
+        catch (NumberFormatException e) {
+            throw error(name, lineNumber, "expected two numbers, found \""
+                    + line + "\"");
+        }
+    }
+
+    private static void checkInBounds(String name, int lineNumber,
+            String what, int[] position, int height, int width)
+            throws IOException {
+        if(position[0] < 0 || position[0] >= height || position[1] < 0
+                || position[1] >= width){
+            throw error(name, lineNumber, what + " " + position[0] + " "
+                    + position[1] + " is off the board");
+        }
+    }
+
+    private static IOException error(String name, int lineNumber,
+            String problem) {
+        return new IOException(name + ":" + lineNumber + ": " + problem);
+    }
+}
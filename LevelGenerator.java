@@ -0,0 +1,271 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelGenerator.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file makes random levels of a given size and obstacle density on
+ every core, keeps only the ones the solver can finish in at least a given
+ number of moves, and writes them to a directory as they are found, in the
+ text format Streamline(String) reads. The number of moves each level takes
+ is written to a ratings file beside the directory, not in it, so the
+ directory only holds levels.
+
+ Levels are always solved breadth first, even boards too big for
+ StreamlineSolver.solve() to use BFS on, since only BFS finds the shortest
+ solution, and both the minMoves check and the ratings need it. Every
+ search is bounded by MAX_STATES, so big boards cost no more memory.
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates solvable random levels in parallel and streams them to disk.
+ * Worker threads make and solve levels; a single writer thread writes the
+ * accepted ones so the workers never wait on the disk unless it falls far
+ * behind.
+ */
+public class LevelGenerator {
+    static final String USAGE =
+        "Usage: \n" +
+        "> java LevelGenerator <directory> <count> <height> <width> " +
+        "<density> [minMoves] [seed]\n" +
+        "      - to write count solvable levels to directory, each needing" +
+        " at least minMoves moves\n";
+    // Added to the directory's name to name the ratings file
+    static final String RATINGS_SUFFIX = ".ratings.csv";
+    static final String LEVEL_NAME = "level%06d.txt";
+    static final int DEFAULT_MIN_MOVES = 1;
+    // Levels the workers can get ahead of the writer
+    static final int WRITE_QUEUE_SIZE = 1024;
+    // Solver state limit per level; levels that need more are rejected
+    static final int MAX_STATES = 1 << 16;
+    // Random levels tried per level asked for before giving up, for sizes
+    // and densities where hardly any level is solvable in minMoves
+    static final long MAX_ATTEMPTS_PER_LEVEL = 100000;
+    static final long PROGRESS_INTERVAL_MS = 1000;
+    static final double NANOS_PER_SECOND = 1e9;
+
+    final int count, height, width, minMoves;
+    final double density;
+    final long seed;
+    final long maxAttempts;
+    final ForkJoinPool pool;
+    final StreamlineSolver solver;
+
+    final AtomicInteger claimed = new AtomicInteger();  // accepted levels
+    final AtomicLong attempts = new AtomicLong();
+    final AtomicInteger working = new AtomicInteger();  // workers running
+    final BlockingQueue<Rated> toWrite =
+        new ArrayBlockingQueue<Rated>(WRITE_QUEUE_SIZE);
+
+    /**
+     * Constructor that sets up the workers without starting them.
+     * @param count how many levels to make, type int
+     * @param height,width the board size, type int
+     * @param density the chance of each cell being an obstacle, type double
+     * @param minMoves the fewest moves an accepted level may need, type int
+     * @param seed the seed of the first worker's random numbers, type long
+     * @param threads how many workers to run, type int
+     * @return none, constructor method
+     */
+    public LevelGenerator(int count, int height, int width, double density,
+            int minMoves, long seed, int threads) {
+        this.count = count;
+        this.height = height;
+        this.width = width;
+        this.density = density;
+        this.minMoves = minMoves;
+        this.seed = seed;
+        this.maxAttempts = count * MAX_ATTEMPTS_PER_LEVEL;
+        this.pool = new ForkJoinPool(threads);
+        // The workers already use every core, so the solver shares their pool
+        this.solver = new StreamlineSolver(pool, MAX_STATES);
+    }
+
+    /**
+     * Makes and solves random levels until count of them have been
+     * accepted or maxAttempts were tried, handing the accepted ones to the
+     * writer.
+     * @param random this worker's random numbers, type Random
+     * @return none
+     */
+    void work(Random random) {
+        try {
+            search(random);
+        }
+        finally {
+            working.decrementAndGet();
+        }
+    }
+
+    private void search(Random random) {
+        while(claimed.get() < count){
+            if(attempts.incrementAndGet() > maxAttempts){
+                return;
+            }
+            BitboardGameState level = BitboardGameState.random(height, width,
+                    density, random);
+            // Shortest solutions only, see the top of the file
+            StreamlineSolver.Solution solution = solver.solveBfs(level);
+            if(!solution.isSolved() || solution.length() < minMoves){
+                continue;
+            }
+            int index = claimed.getAndIncrement();
+            if(index >= count){
+                return;
+            }
+            try {
+                toWrite.put(new Rated(index, level, solution));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Names the ratings file of a directory of levels.
+     * @param directory type File
+     * @return the file beside it, type File
+     */
+    static File ratingsFile(File directory) {
+        return new File(directory.getPath() + RATINGS_SUFFIX);
+    }
+
+    /**
+     * Writes count accepted levels as they arrive, along with their ratings.
+     * Stops early if the workers give up.
+     * @param directory where to write the levels, type File
+     * @return how many levels were written, type int
+     * @throws IOException if a level can't be written
+     * @throws InterruptedException if interrupted while waiting for levels
+     */
+    int write(File directory) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long lastProgress = System.currentTimeMillis();
+        int written = 0;
+        try (PrintWriter ratings = new PrintWriter(new FileWriter(
+                        ratingsFile(directory)))) {
+            ratings.println("file,moves,states");
+            while(written < count){
+                // Checked before polling, so a level put just before the
+                // last worker stopped is still written
+                boolean stopped = working.get() == 0;
+                Rated rated = toWrite.poll(PROGRESS_INTERVAL_MS,
+                        TimeUnit.MILLISECONDS);
+                if(rated == null){
+                    if(stopped){
+                        break;
+                    }
+                    continue;
+                }
+                written++;
+                String name = String.format(LEVEL_NAME, rated.index);
+                LevelFormat.write(rated.level, new File(directory, name));
+                ratings.printf("%s,%d,%d\n", name, rated.moves, rated.states);
+                if(System.currentTimeMillis() - lastProgress
+                        >= PROGRESS_INTERVAL_MS){
+                    lastProgress = System.currentTimeMillis();
+                    System.out.printf("%d/%d levels written, %d tried\n",
+                            written, count, attempts.get());
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        if(written < count){
+            System.out.printf("Gave up after %d tries: only %d of %d " +
+                    "levels needed at least %d moves. Try a lower density " +
+                    "or minMoves.\n", Math.min(attempts.get(), maxAttempts),
+                    written, count, minMoves);
+        }
+        System.out.printf("Wrote %d levels to %s in %.1f s (%d tried, " +
+                "%.0f levels/minute), ratings in %s\n", written, directory,
+                seconds, Math.min(attempts.get(), maxAttempts),
+                written / seconds * TimeUnit.MINUTES.toSeconds(1),
+                ratingsFile(directory));
+        return written;
+    }
+
+    /**
+     * Starts a worker per thread of the pool and writes what they find.
+     * @param directory where to write the levels, type File
+     * @return how many levels were written, type int
+     * @throws IOException if a level can't be written
+     * @throws InterruptedException if interrupted while waiting for levels
+     */
+    public int run(File directory) throws IOException, InterruptedException {
+        working.set(pool.getParallelism());
+        for(int i = 0; i < pool.getParallelism(); i++){
+            final Random random = new Random(seed + i);
+            pool.execute(() -> work(random));
+        }
+        try {
+            return write(directory);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * An accepted level and how hard it is.
+     */
+    static class Rated {
+        final int index;
+        final BitboardGameState level;
+        final int moves;
+        final int states;
+
+        Rated(int index, BitboardGameState level,
+                StreamlineSolver.Solution solution) {
+            this.index = index;
+            this.level = level;
+            this.moves = solution.length();
+            this.states = solution.getStatesSeen();
+        }
+    }
+
+    /**
+     * Reads the arguments and generates the levels.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5 || args.length > 7) {
+            System.out.print(USAGE);
+            return;
+        }
+        File directory = new File(args[0]);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.printf("Could not make directory %s. Exiting...\n",
+                    args[0]);
+            return;
+        }
+        int count = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        int width = Integer.parseInt(args[3]);
+        double density = Double.parseDouble(args[4]);
+        int minMoves = args.length > 5 ? Integer.parseInt(args[5])
+            : DEFAULT_MIN_MOVES;
+        long seed = args.length > 6 ? Long.parseLong(args[6])
+            : System.nanoTime();
+        int written = new LevelGenerator(count, height, width, density,
+                minMoves, seed, Runtime.getRuntime().availableProcessors())
+            .run(directory);
+        if (written < count) {
+            System.exit(1);
+        }
+    }
+}
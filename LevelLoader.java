@@ -0,0 +1,176 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelLoader.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file hands out the levels of a LevelSource in order. Only a few
+ levels after the current one are parsed ahead of time, on background
+ threads, and a level is forgotten as soon as it is handed out, so the
+ start up time and memory use do not depend on how many levels there are.
+ */
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads the levels of a LevelSource in order, keeping a bounded window of
+ * levels parsed ahead in the background.
+ */
+public class LevelLoader implements LevelFeed {
+    static final int DEFAULT_PREFETCH = 4;   // levels parsed ahead
+    static final int LOADER_THREADS = 2;
+
+    final LevelSource source;
+    final int prefetch;
+    final ExecutorService executor;
+    // Levels being parsed, in order, starting with the next one to hand out
+    final ArrayDeque<Future<BitboardStreamline>> pending =
+        new ArrayDeque<Future<BitboardStreamline>>();
+    int nextToSchedule;                 // first level not scheduled yet
+    int nextToHandOut;                  // index of the next level to return
+
+    /**
+     * Constructor that starts parsing the first levels of the source.
+     * @param source where the levels come from, type LevelSource
+     * @param prefetch how many levels to parse ahead, type int
+     * @return none, constructor method
+     */
+    public LevelLoader(LevelSource source, int prefetch) {
+        this(source, prefetch, 0);
+    }
+
+    /**
+     * Constructor that starts parsing the source at the given level, for
+     * picking a session back up part way through a pack.
+     * @param source where the levels come from, type LevelSource
+     * @param prefetch how many levels to parse ahead, type int
+     * @param firstIndex the first level to hand out, type int
+     * @return none, constructor method
+     */
+    public LevelLoader(LevelSource source, int prefetch, int firstIndex) {
+        this.source = source;
+        this.prefetch = Math.max(prefetch, 1);
+        this.nextToSchedule = Math.max(0, Math.min(firstIndex, source.size()));
+        this.nextToHandOut = nextToSchedule;
+        this.executor = Executors.newFixedThreadPool(LOADER_THREADS,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "level-loader");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        fillWindow();
+    }
+
+    /**
+     * Whether there are levels left to hand out.
+     * @param none
+     * @return true if next() has more levels, type boolean
+     */
+    public synchronized boolean hasNext() {
+        return nextToHandOut < source.size();
+    }
+
+    /**
+     * Getter for the number of levels in the source.
+     * @param none
+     * @return the number of levels, type int
+     */
+    public int size() {
+        return source.size();
+    }
+
+    /**
+     * Getter for the index of the level the next call to next() returns.
+     * @param none
+     * @return the index, type int
+     */
+    @Override
+    public synchronized int nextIndex() {
+        return nextToHandOut;
+    }
+
+    /**
+     * Hands out the next level, waiting for it if it is still being parsed,
+     * and starts parsing another one to keep the window full. Levels that
+     * fail to load are reported and skipped.
+     * @param none
+     * @return the level, or null if there are no levels left, type
+     * BitboardStreamline
+     */
+    @Override
+    public synchronized BitboardStreamline next() {
+        while(hasNext()){
+            int index = nextToHandOut++;
+            Future<BitboardStreamline> level = pending.poll();
+            fillWindow();
+            System.out.printf("Loading game %d/%d from %s...\n", index + 1,
+                    source.size(), source.describe(index));
+            try {
+                return level.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            catch (ExecutionException e) {
+                System.out.printf("Skipping level %s: %s\n",
+                        source.describe(index), e.getCause());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Jumps to another level, so the next call to next() returns it. The
+     * levels parsed ahead for the old place are dropped, and parsing starts
+     * over from the new one.
+     * @param index the level to hand out next, type int
+     * @return none
+     */
+    public synchronized void seek(int index) {
+        index = Math.max(0, Math.min(index, source.size()));
+        if(index == nextToHandOut){
+            return;
+        }
+        for(Future<BitboardStreamline> level : pending){
+            level.cancel(true);
+        }
+        pending.clear();
+        nextToSchedule = index;
+        nextToHandOut = index;
+        fillWindow();
+    }
+
+    /**
+     * Stops the background threads. Levels being parsed are dropped.
+     * @param none
+     * @return none
+     */
+    public synchronized void close() {
+        executor.shutdownNow();
+        pending.clear();
+    }
+
+    /**
+     * Schedules levels until prefetch levels are pending or the source
+     * runs out.
+     * @param none
+     * @return none
+     */
+    private void fillWindow() {
+        while(pending.size() < prefetch && nextToSchedule < source.size()){
+            final int index = nextToSchedule++;
+            pending.add(executor.submit(() -> source.load(index)));
+        }
+    }
+}
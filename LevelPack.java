@@ -0,0 +1,233 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelPack.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file reads a level pack: many levels stored in one binary file. The
+ file starts with an index giving the offset, size and checksum of every
+ level, so any level can be read straight away through a memory mapped
+ buffer without looking at the others.
+
+ Pack layout, all numbers big endian:
+   header  magic, version, level count, reserved       (4 ints)
+   index   per level: offset (long), length, height, width, CRC32 (ints)
+   records per level: playerRow, playerCol, goalRow, goalCol, flags (ints),
+           the row major obstacle bitset as longs, and the row major trail
+           bitset as longs if flags has HAS_TRAILS
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A level pack opened for reading. Opening only maps the index, each level
+ * is mapped and checked when it is loaded, so only the pages of the levels
+ * actually played are ever read from disk.
+ */
+public class LevelPack implements LevelSource, Closeable {
+    static final int MAGIC = 0x534C504B;            // "SLPK"
+    static final int VERSION = 1;
+    static final String EXTENSION = ".slpk";
+
+    static final int HEADER_SIZE = 4 * Integer.BYTES;
+    static final int INDEX_ENTRY_SIZE = Long.BYTES + 4 * Integer.BYTES;
+    // Where each field sits inside an index entry
+    static final int ENTRY_LENGTH = Long.BYTES;
+    static final int ENTRY_HEIGHT = ENTRY_LENGTH + Integer.BYTES;
+    static final int ENTRY_WIDTH = ENTRY_HEIGHT + Integer.BYTES;
+    static final int ENTRY_CHECKSUM = ENTRY_WIDTH + Integer.BYTES;
+    static final int RECORD_HEADER_SIZE = 5 * Integer.BYTES;
+
+    static final int HAS_TRAILS = 1;                // record flag
+
+    final File file;
+    final FileChannel channel;
+    final MappedByteBuffer index;
+    final int count;
+
+    /**
+     * Constructor that opens a pack and maps its index.
+     * @param file the pack file, type File
+     * @return none, constructor method
+     * @throws IOException if the file is not a level pack
+     */
+    public LevelPack(File file) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_SIZE);
+            if(header.getInt() != MAGIC){
+                throw new IOException(file + " is not a level pack");
+            }
+            int version = header.getInt();
+            if(version != VERSION){
+                throw new IOException(file + " has unsupported version "
+                        + version);
+            }
+            this.count = header.getInt();
+            if(count < 0 || HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE
+                    > channel.size()){
+                throw new IOException(file + " is damaged: bad level count "
+                        + count);
+            }
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, (long) count * INDEX_ENTRY_SIZE);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether a file starts like a level pack.
+     * @param file type File
+     * @return true if it does, type boolean
+     */
+    public static boolean isPack(File file) {
+        if(!file.isFile() || file.length() < HEADER_SIZE){
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.readInt() == MAGIC;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public BitboardStreamline load(int level) throws IOException {
+        return new BitboardStreamline(loadState(level));
+    }
+
+    @Override
+    public String describe(int level) {
+        return file + "#" + (level + 1);
+    }
+
+    /**
+     * The level's cell count from the index, without reading the level
+     * itself. The index isn't checked here, loadState() does that.
+     * @param level which level, type int
+     * @return height times width, type long
+     */
+    public long cells(int level) {
+        int entry = level * INDEX_ENTRY_SIZE;
+        return (long) index.getInt(entry + ENTRY_HEIGHT)
+            * index.getInt(entry + ENTRY_WIDTH);
+    }
+
+    /**
+     * The level's length and checksum from the index, without reading the
+     * level itself.
+     * @param level which level, type int
+     * @return the fingerprint, type long
+     */
+    @Override
+    public long fingerprint(int level) {
+        int entry = level * INDEX_ENTRY_SIZE;
+        return ((long) index.getInt(entry + ENTRY_LENGTH) << Integer.SIZE)
+            | Integer.toUnsignedLong(index.getInt(entry + ENTRY_CHECKSUM));
+    }
+
+    /**
+     * Reads one level's starting state, checking it against the checksum in
+     * the index. Every size and position in the index and the record is
+     * checked before it is used, so a damaged or made up pack gives an
+     * IOException rather than a runtime exception.
+     * @param level which level, from 0 to size() - 1, type int
+     * @return the state, type BitboardGameState
+     * @throws IOException if the level is damaged
+     */
+    @Override
+    public BitboardGameState loadState(int level) throws IOException {
+        int entry = level * INDEX_ENTRY_SIZE;
+        long offset = index.getLong(entry);
+        int length = index.getInt(entry + ENTRY_LENGTH);
+        int height = index.getInt(entry + ENTRY_HEIGHT);
+        int width = index.getInt(entry + ENTRY_WIDTH);
+        int checksum = index.getInt(entry + ENTRY_CHECKSUM);
+        if(height <= 0 || width <= 0
+                || (long) height * width > LevelFormat.MAX_CELLS){
+            throw damaged(level, "bad size " + height + "x" + width);
+        }
+        int words = BitboardGameState.wordCount(height * width);
+        long withoutTrails = RECORD_HEADER_SIZE + (long) words * Long.BYTES;
+        long withTrails = withoutTrails + (long) words * Long.BYTES;
+        if(length != withoutTrails && length != withTrails){
+            throw damaged(level, "bad record length " + length);
+        }
+        long indexEnd = HEADER_SIZE + (long) count * INDEX_ENTRY_SIZE;
+        if(offset < indexEnd || offset > channel.size() - length){
+            throw damaged(level, "bad record offset " + offset);
+        }
+
+        MappedByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY,
+                offset, length);
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        if((int) crc.getValue() != checksum){
+            throw new IOException(describe(level) + " is damaged");
+        }
+
+        int playerRow = record.getInt();
+        int playerCol = record.getInt();
+        int goalRow = record.getInt();
+        int goalCol = record.getInt();
+        int flags = record.getInt();
+        if(length != ((flags & HAS_TRAILS) != 0 ? withTrails
+                    : withoutTrails)){
+            throw damaged(level, "record length doesn't match its flags");
+        }
+        if(!onBoard(playerRow, playerCol, height, width)
+                || !onBoard(goalRow, goalCol, height, width)){
+            throw damaged(level, "player or goal off the board");
+        }
+        long[] obstacles = new long[words];
+        long[] trails = new long[words];
+        record.asLongBuffer().get(obstacles);
+        if((flags & HAS_TRAILS) != 0){
+            record.position(record.position() + words * Long.BYTES);
+            record.asLongBuffer().get(trails);
+        }
+        // Bits past the last cell would land off the board
+        int usedBits = height * width % BitboardGameState.BITS_PER_WORD;
+        long pastEnd = usedBits == 0 ? 0
+            : BitboardGameState.ALL_BITS << usedBits;
+        if(((obstacles[words - 1] | trails[words - 1]) & pastEnd) != 0){
+            throw damaged(level, "cells past the end of the board");
+        }
+        return BitboardGameState.fromBitsets(height, width, playerRow,
+                playerCol, goalRow, goalCol, obstacles, trails);
+    }
+
+    private static boolean onBoard(int row, int col, int height,
+            int width) {
+        return row >= 0 && row < height && col >= 0 && col < width;
+    }
+
+    private IOException damaged(int level, String reason) {
+        return new IOException(describe(level) + " is damaged: " + reason);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelPackWriter.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file writes level packs in the layout described in LevelPack.java.
+ Run it on its own to convert a directory of level files into a pack,
+ optionally leaving out levels that are rotations or mirror images of
+ levels already in it.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a level pack one level at a time. The most levels it can take has
+ * to be known up front so the index can be reserved at the start of the
+ * file. If fewer are added, close() moves the records up so no index slot
+ * is left unused.
+ */
+public class LevelPackWriter implements Closeable {
+    static final String USAGE =
+        "Usage: \n" +
+        "> java LevelPackWriter [-d] <directory> <pack file>   - to " +
+        "convert a directory of level files into a level pack, -d leaves " +
+        "out duplicates, counting rotations and mirror images\n";
+    static final String DEDUPE_FLAG = "-d";
+    static final int COPY_BUFFER_SIZE = 1 << 20;
+
+    final FileChannel channel;
+    final ByteBuffer index;
+    final int count;
+    int written;
+    long nextOffset;
+
+    /**
+     * Constructor that creates the pack file and leaves room for the index.
+     * @param pack the file to write, type File
+     * @param count the most levels that will be added, type int
+     * @return none, constructor method
+     * @throws IOException if the file can't be written
+     */
+    public LevelPackWriter(File pack, int count) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(pack, "rw");
+        out.setLength(0);
+        this.channel = out.getChannel();
+        this.count = count;
+        this.index = ByteBuffer.allocate(count * LevelPack.INDEX_ENTRY_SIZE);
+        this.nextOffset = LevelPack.HEADER_SIZE
+            + (long) count * LevelPack.INDEX_ENTRY_SIZE;
+    }
+
+    /**
+     * Appends a level to the pack.
+     * @param state the level's starting state, type BitboardGameState
+     * @return none
+     * @throws IOException if the level can't be written
+     */
+    public void add(BitboardGameState state) throws IOException {
+        if(written == count){
+            throw new IOException("pack is already full");
+        }
+        boolean hasTrails = false;
+        for(long word : state.trails){
+            hasTrails |= word != 0;
+        }
+        int words = state.obstacles.length;
+        ByteBuffer record = ByteBuffer.allocate(LevelPack.RECORD_HEADER_SIZE
+                + (hasTrails ? 2 : 1) * words * Long.BYTES);
+        record.putInt(state.playerRow);
+        record.putInt(state.playerCol);
+        record.putInt(state.goalRow);
+        record.putInt(state.goalCol);
+        record.putInt(hasTrails ? LevelPack.HAS_TRAILS : 0);
+        record.asLongBuffer().put(state.obstacles);
+        if(hasTrails){
+            record.position(record.position() + words * Long.BYTES);
+            record.asLongBuffer().put(state.trails);
+        }
+        record.rewind();
+
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate());
+        index.putLong(nextOffset);
+        index.putInt(record.capacity());
+        index.putInt(state.height);
+        index.putInt(state.width);
+        index.putInt((int) crc.getValue());
+
+        while(record.hasRemaining()){
+            nextOffset += channel.write(record, nextOffset);
+        }
+        written++;
+    }
+
+    /**
+     * Writes the header and index and closes the file. If fewer than count
+     * levels were added, the records are first moved up to right after
+     * the index of the levels that were.
+     * @param none
+     * @return none
+     * @throws IOException if the pack can't be finished
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long unused = (long) (count - written)
+                * LevelPack.INDEX_ENTRY_SIZE;
+            if(unused > 0){
+                moveRecords(unused);
+            }
+            ByteBuffer header = ByteBuffer.allocate(LevelPack.HEADER_SIZE);
+            header.putInt(LevelPack.MAGIC);
+            header.putInt(LevelPack.VERSION);
+            header.putInt(written);
+            header.putInt(0);
+            header.flip();
+            channel.write(header, 0);
+            index.flip();
+            long position = LevelPack.HEADER_SIZE;
+            while(index.hasRemaining()){
+                position += channel.write(index, position);
+            }
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Moves every record towards the start of the file, over index slots
+     * no level used, fixes their offsets in the index, and cuts the file
+     * to the new end.
+     * @param distance how far to move them, in bytes, type long
+     * @return none
+     * @throws IOException if the file can't be rewritten
+     */
+    private void moveRecords(long distance) throws IOException {
+        long from = LevelPack.HEADER_SIZE
+            + (long) count * LevelPack.INDEX_ENTRY_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(
+                    COPY_BUFFER_SIZE, Math.max(nextOffset - from, 1)));
+        // Front to back, each block lands before where it was read from
+        while(from < nextOffset){
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), nextOffset - from));
+            int read = channel.read(buffer, from);
+            buffer.flip();
+            long to = from - distance;
+            while(buffer.hasRemaining()){
+                to += channel.write(buffer, to);
+            }
+            from += read;
+        }
+        nextOffset -= distance;
+        channel.truncate(nextOffset);
+        for(int level = 0; level < written; level++){
+            int entry = level * LevelPack.INDEX_ENTRY_SIZE;
+            index.putLong(entry, index.getLong(entry) - distance);
+        }
+    }
+
+    /**
+     * Converts a directory of level files into a pack, in the same sorted
+     * order the GUI plays them. Files that aren't valid levels are left
+     * out and named on the console.
+     * @param directory the level directory, type File
+     * @param pack the pack file to write, type File
+     * @param dedupe whether to leave out levels that have the same
+     * canonical hash as an earlier one, type boolean
+     * @return the number of levels written, type int
+     * @throws IOException if the pack can't be written
+     */
+    public static int convert(File directory, File pack, boolean dedupe)
+            throws IOException {
+        DirectoryLevelSource levels = new DirectoryLevelSource(directory);
+        Set<Long> seen = new HashSet<Long>();
+        try (LevelPackWriter writer =
+                new LevelPackWriter(pack, levels.size())) {
+            for(int i = 0; i < levels.size(); i++){
+                BitboardGameState state;
+                try {
+                    state = levels.loadState(i);
+                }
+                catch (IOException e) {
+                    System.out.println("Skipping " + e.getMessage());
+                    continue;
+                }
+                if(!dedupe || seen.add(LevelSymmetry.canonicalHash(state))){
+                    writer.add(state);
+                }
+            }
+            return writer.written;
+        }
+    }
+
+    /**
+     * Converts the directory given on the command line into a pack.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean dedupe = args.length > 0 && args[0].equals(DEDUPE_FLAG);
+        int first = dedupe ? 1 : 0;
+        if (args.length != first + 2
+                || !new File(args[first]).isDirectory()) {
+            System.out.print(USAGE);
+            return;
+        }
+        long start = System.nanoTime();
+        int levels = convert(new File(args[first]), new File(args[first + 1]),
+                dedupe);
+        System.out.printf("Wrote %d levels to %s in %d ms\n", levels,
+                args[first + 1], (System.nanoTime() - start) / 1000000);
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelSelectView.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file shows the levels of a directory or pack as a scrolling grid of
+ thumbnails, so any level can be picked without playing the ones before
+ it. Like ChunkViewport, only the tiles on screen have nodes, and tiles
+ that scroll off screen are reused for the ones scrolling on. Thumbnails
+ are only asked for when their tile comes on screen, plus a couple of
+ rows ahead, and are drawn by a ThumbnailRenderer in the background, so
+ a pack of thousands of levels scrolls as smoothly as a pack of ten.
+ Requests for levels that scrolled far away before they were drawn are
+ cancelled.
+ */
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.Group;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.KeyCode;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Text;
+
+/**
+ * A scrolling grid of level thumbnails to pick a level from.
+ */
+public class LevelSelectView extends Group {
+    static final double PADDING = 8;
+    static final double LABEL_HEIGHT = 16;
+    static final double SELECTED_STROKE = 3;
+    static final int PREFETCH_ROWS = 2;     // rows asked for past the view
+    static final int HALF_DIVISOR = 2;
+    static final int NONE = -1;
+    static final int COLOR_MAX = 255;
+    static final int ALPHA_SHIFT = 24, RED_SHIFT = 16, GREEN_SHIFT = 8;
+
+    static final Color BACKGROUND_COLOR = Color.GAINSBORO;
+    static final Color TILE_COLOR = Color.WHITESMOKE;
+    static final Color SELECTED_COLOR = GuiStreamline.HINT_COLOR;
+    static final Color TEXT_COLOR = Color.DARKSLATEGRAY;
+
+    final LevelSource source;
+    final ThumbnailRenderer renderer;
+    final IntConsumer onChoose;         // given the level picked
+    final int thumbnailSize;
+    final double tileWidth, tileHeight;
+
+    final Rectangle background = new Rectangle();   // catches the wheel
+    final Group tileLayer = new Group();            // moved to scroll
+    double viewWidth, viewHeight;
+    int columns = 1;
+    double scroll;                      // pixels scrolled from the top
+    int selected;
+
+    // Tiles on screen by level, and tiles that scrolled off
+    final HashMap<Integer, Tile> shown = new HashMap<Integer, Tile>();
+    final ArrayDeque<Tile> pool = new ArrayDeque<Tile>();
+    // Thumbnails asked for and not drawn yet, by level
+    final HashMap<Integer, CompletableFuture<int[]>> requested =
+        new HashMap<Integer, CompletableFuture<int[]>>();
+    // Levels that could not be loaded, never asked for again
+    final HashSet<Integer> failed = new HashSet<Integer>();
+
+    /**
+     * The nodes of one level on screen.
+     */
+    class Tile {
+        final Group group = new Group();
+        final Rectangle frame = new Rectangle();
+        final WritableImage image;
+        final ImageView view;
+        final Text label = new Text();
+        int index = NONE;
+        boolean drawn;                  // image shows level index
+
+        Tile() {
+            frame.setWidth(tileWidth - PADDING);
+            frame.setHeight(tileHeight - PADDING);
+            frame.setFill(TILE_COLOR);
+            frame.setStrokeWidth(SELECTED_STROKE);
+            image = new WritableImage(thumbnailSize, thumbnailSize);
+            view = new ImageView(image);
+            view.setLayoutX(PADDING / HALF_DIVISOR);
+            view.setLayoutY(PADDING / HALF_DIVISOR);
+            view.setSmooth(false);
+            label.setX(PADDING / HALF_DIVISOR);
+            label.setY(PADDING / HALF_DIVISOR + thumbnailSize);
+            label.setTextOrigin(VPos.TOP);
+            label.setFill(TEXT_COLOR);
+            group.getChildren().addAll(frame, view, label);
+            group.setOnMouseClicked(e -> {
+                select(index);
+                if(e.getClickCount() > 1){
+                    choose();
+                }
+            });
+        }
+    }
+
+    /**
+     * Constructor that makes an empty grid. Nothing is shown or drawn
+     * until setViewSize() is called.
+     * @param source the levels, type LevelSource
+     * @param cache where thumbnails are kept, type ThumbnailCache
+     * @param selected the level to start on, type int
+     * @param onChoose called with the level picked, type IntConsumer
+     * @return none, constructor method
+     */
+    public LevelSelectView(LevelSource source, ThumbnailCache cache,
+            int selected, IntConsumer onChoose) {
+        this.source = source;
+        this.onChoose = onChoose;
+        this.thumbnailSize = ThumbnailRenderer.DEFAULT_SIZE;
+        this.tileWidth = thumbnailSize + PADDING * HALF_DIVISOR;
+        this.tileHeight = tileWidth + LABEL_HEIGHT;
+        this.selected = Math.max(0, Math.min(selected, source.size() - 1));
+        int[] palette = new int[ThumbnailRenderer.PALETTE_SIZE];
+        palette[ThumbnailRenderer.BACKGROUND] = argb(TILE_COLOR);
+        palette[ThumbnailRenderer.BOARD] = argb(BACKGROUND_COLOR);
+        palette[ThumbnailRenderer.OBSTACLE] =
+            argb(GuiStreamline.OBSTACLE_COLOR);
+        palette[ThumbnailRenderer.TRAIL] = argb(GuiStreamline.TRAIL_COLOR);
+        palette[ThumbnailRenderer.GOAL] = argb(GuiStreamline.GOAL_COLOR);
+        palette[ThumbnailRenderer.PLAYER] = argb(Player.FILL_COLOR);
+        this.renderer = new ThumbnailRenderer(thumbnailSize, palette, cache);
+        background.setFill(BACKGROUND_COLOR);
+        setOnScroll(e -> scrollTo(scroll - e.getDeltaY()));
+        getChildren().addAll(background, tileLayer);
+    }
+
+    /**
+     * Turns a color into one ARGB int.
+     * @param color type Color
+     * @return the color, type int
+     */
+    static int argb(Color color) {
+        return (int) Math.round(color.getOpacity() * COLOR_MAX)
+            << ALPHA_SHIFT
+            | (int) Math.round(color.getRed() * COLOR_MAX) << RED_SHIFT
+            | (int) Math.round(color.getGreen() * COLOR_MAX) << GREEN_SHIFT
+            | (int) Math.round(color.getBlue() * COLOR_MAX);
+    }
+
+    /**
+     * Sets how big the view is, fitting as many columns as there is room
+     * for, and shows the selected level.
+     * @param width,height the scene size, type double
+     * @return none
+     */
+    public void setViewSize(double width, double height) {
+        viewWidth = width;
+        viewHeight = height;
+        background.setWidth(width);
+        background.setHeight(height);
+        int newColumns = Math.max(1, (int) (width / tileWidth));
+        if(newColumns != columns){
+            // Every tile moves, so they are all placed again
+            columns = newColumns;
+            for(Tile tile : shown.values()){
+                release(tile);
+            }
+            shown.clear();
+        }
+        select(selected);
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Scrolling
+    //-----------------------------------------------------------------------
+
+    private int rowCount() {
+        return (source.size() + columns - 1) / columns;
+    }
+
+    /**
+     * Scrolls the grid, as far as it goes.
+     * @param newScroll pixels from the top, type double
+     * @return none
+     */
+    void scrollTo(double newScroll) {
+        double maxScroll = Math.max(0, rowCount() * tileHeight - viewHeight);
+        scroll = Math.max(0, Math.min(newScroll, maxScroll));
+        refresh();
+    }
+
+    /**
+     * Gives tiles to the levels on screen and takes them from the ones that
+     * went off, then asks for the thumbnails that are needed.
+     * @param none
+     * @return none
+     */
+    void refresh() {
+        // Centered across, scrolled down
+        tileLayer.setTranslateX(Math.max(0,
+                    (viewWidth - columns * tileWidth) / HALF_DIVISOR));
+        tileLayer.setTranslateY(-scroll);
+        int first = (int) (scroll / tileHeight) * columns;
+        int last = Math.min(source.size() - 1,
+                ((int) ((scroll + viewHeight) / tileHeight) + 1) * columns
+                - 1);
+        Iterator<Tile> it = shown.values().iterator();
+        while(it.hasNext()){
+            Tile tile = it.next();
+            if(tile.index < first || tile.index > last){
+                release(tile);
+                it.remove();
+            }
+        }
+        for(int index = first; index <= last; index++){
+            if(!shown.containsKey(index)){
+                shown.put(index, place(index));
+            }
+        }
+
+        // Levels far off screen won't be needed soon, the threads should
+        // draw the ones coming up instead
+        int firstWanted = Math.max(0, first - PREFETCH_ROWS * columns);
+        int lastWanted = Math.min(source.size() - 1,
+                last + PREFETCH_ROWS * columns);
+        Iterator<HashMap.Entry<Integer, CompletableFuture<int[]>>> asked =
+            requested.entrySet().iterator();
+        while(asked.hasNext()){
+            HashMap.Entry<Integer, CompletableFuture<int[]>> entry =
+                asked.next();
+            if(entry.getKey() < firstWanted || entry.getKey() > lastWanted){
+                entry.getValue().cancel(false);
+                asked.remove();
+            }
+        }
+        // On screen first, then ahead in both directions
+        for(int index = first; index <= last; index++){
+            if(!shown.get(index).drawn){
+                request(index);
+            }
+        }
+        for(int index = last + 1; index <= lastWanted; index++){
+            request(index);
+        }
+        for(int index = first - 1; index >= firstWanted; index--){
+            request(index);
+        }
+    }
+
+    /**
+     * Puts a tile, from the pool if there is one, where a level goes.
+     * @param index the level, type int
+     * @return the tile, type Tile
+     */
+    private Tile place(int index) {
+        Tile tile = pool.isEmpty() ? new Tile() : pool.pop();
+        tile.index = index;
+        tile.drawn = false;
+        tile.view.setVisible(false);
+        tile.label.setText(String.valueOf(index + 1));
+        tile.frame.setStroke(index == selected ? SELECTED_COLOR : null);
+        tile.group.setLayoutX(index % columns * tileWidth
+                + PADDING / HALF_DIVISOR);
+        tile.group.setLayoutY(index / columns * tileHeight
+                + PADDING / HALF_DIVISOR);
+        tileLayer.getChildren().add(tile.group);
+        return tile;
+    }
+
+    private void release(Tile tile) {
+        tileLayer.getChildren().remove(tile.group);
+        tile.index = NONE;
+        pool.push(tile);
+    }
+
+    //-----------------------------------------------------------------------
+    //                             Thumbnails
+    //-----------------------------------------------------------------------
+
+    /**
+     * Asks for a level's thumbnail unless it was already asked for. It is
+     * shown on the FX thread once drawn, if its tile is still on screen.
+     * @param index type int
+     * @return none
+     */
+    private void request(final int index) {
+        if(requested.containsKey(index) || failed.contains(index)){
+            return;
+        }
+        final CompletableFuture<int[]> future =
+            renderer.request(source, index);
+        requested.put(index, future);
+        future.whenComplete((pixels, error) -> Platform.runLater(
+                    () -> onDrawn(index, future, pixels, error)));
+    }
+
+    /**
+     * Shows a thumbnail that was just drawn. Runs on the FX thread.
+     * @param index the level, type int
+     * @param future what was asked for, type CompletableFuture<int[]>
+     * @param pixels the thumbnail, or null if it failed, type int[]
+     * @param error why it failed, or null, type Throwable
+     * @return none
+     */
+    private void onDrawn(int index, CompletableFuture<int[]> future,
+            int[] pixels, Throwable error) {
+        if(requested.get(index) == future){
+            requested.remove(index);
+        }
+        if(error != null){
+            if(!(error instanceof CancellationException)){
+                failed.add(index);
+                System.out.printf("No thumbnail for level %s: %s\n",
+                        source.describe(index), error.getMessage());
+            }
+            return;
+        }
+        Tile tile = shown.get(index);
+        if(tile == null || tile.drawn){
+            return;
+        }
+        tile.image.getPixelWriter().setPixels(0, 0, thumbnailSize,
+                thumbnailSize, PixelFormat.getIntArgbInstance(), pixels, 0,
+                thumbnailSize);
+        tile.view.setVisible(true);
+        tile.drawn = true;
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Choosing
+    //-----------------------------------------------------------------------
+
+    /**
+     * Moves the selection to a level and scrolls until it is on screen.
+     * @param index type int
+     * @return none
+     */
+    void select(int index) {
+        index = Math.max(0, Math.min(index, source.size() - 1));
+        Tile old = shown.get(selected);
+        if(old != null){
+            old.frame.setStroke(null);
+        }
+        selected = index;
+        Tile tile = shown.get(selected);
+        if(tile != null){
+            tile.frame.setStroke(SELECTED_COLOR);
+        }
+        double top = selected / columns * tileHeight;
+        if(top < scroll){
+            scrollTo(top);
+        }
+        else if(top + tileHeight > scroll + viewHeight){
+            scrollTo(top + tileHeight - viewHeight);
+        }
+        else{
+            refresh();
+        }
+    }
+
+    /**
+     * Picks the selected level, stopping any thumbnails still being drawn.
+     * @param none
+     * @return none
+     */
+    void choose() {
+        close();
+        onChoose.accept(selected);
+    }
+
+    /**
+     * Stops drawing thumbnails. The thumbnails already drawn stay cached.
+     * @param none
+     * @return none
+     */
+    public void close() {
+        for(CompletableFuture<int[]> future : requested.values()){
+            future.cancel(false);
+        }
+        requested.clear();
+        renderer.close();
+    }
+
+    /**
+     * Moves the selection or picks a level for a key.
+     * @param keyCode type KeyCode
+     * @return none
+     */
+    public void handleKeyCode(KeyCode keyCode) {
+        int page = Math.max(1, (int) (viewHeight / tileHeight)) * columns;
+        switch (keyCode) {
+            case UP:
+            case W:
+                select(selected - columns);
+                break;
+            case DOWN:
+            case S:
+                select(selected + columns);
+                break;
+            case LEFT:
+            case A:
+                select(selected - 1);
+                break;
+            case RIGHT:
+            case D:
+                select(selected + 1);
+                break;
+            case PAGE_UP:
+                select(selected - page);
+                break;
+            case PAGE_DOWN:
+                select(selected + page);
+                break;
+            case HOME:
+                select(0);
+                break;
+            case END:
+                select(source.size() - 1);
+                break;
+            case ENTER:
+            case SPACE:
+                choose();
+                break;
+            case Q:
+                close();
+                Platform.exit();
+                break;
+            default:
+                System.out.println("Possible commands:\n arrows or wasd - " +
+                        "move\n page up/down - move a page\n home/end - " +
+                        "first/last level\n enter - play\n q - quit");
+                break;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelSource.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file describes a numbered list of levels that can each be loaded on
+ their own, like the files of a level directory.
+ */
+
+import java.io.IOException;
+
+/**
+ * A list of levels that can be loaded one at a time, in any order. Loading
+ * may be called from several threads at once.
+ */
+public interface LevelSource {
+    /**
+     * Getter for the number of levels.
+     * @param none
+     * @return the number of levels, type int
+     */
+    int size();
+
+    /**
+     * Loads one level.
+     * @param index which level, from 0 to size() - 1, type int
+     * @return the level, type BitboardStreamline
+     * @throws IOException if the level could not be read
+     */
+    BitboardStreamline load(int index) throws IOException;
+
+    /**
+     * Loads only the starting state of one level, without anything needed
+     * to play it, for when the level is only looked at.
+     * @param index which level, from 0 to size() - 1, type int
+     * @return the state, type BitboardGameState
+     * @throws IOException if the level could not be read
+     */
+    BitboardGameState loadState(int index) throws IOException;
+
+    /**
+     * Describes where a level comes from, for messages.
+     * @param index which level, type int
+     * @return the description, type String
+     */
+    String describe(int index);
+
+    /**
+     * A number that changes whenever a level does, so anything kept about
+     * the level between runs, like its thumbnail, can tell it is stale.
+     * @param index which level, type int
+     * @return the fingerprint, type long
+     */
+    long fingerprint(int index);
+}
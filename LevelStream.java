@@ -0,0 +1,139 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelStream.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file reads levels from a stream as they arrive, like stdin or a named
+ pipe fed by a level generator, so the levels never have to be written to
+ disk. A background thread parses them into a small bounded queue. When
+ the queue is full the thread stops reading, the pipe fills up, and the
+ program writing the levels blocks until the player catches up, so an
+ endless stream of levels takes the same memory as a short one.
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Levels parsed from a stream in the background, a few at a time.
+ */
+public class LevelStream implements LevelFeed {
+    static final String STDIN_ARG = "-";
+    static final String STDIN_NAME = "stdin";
+    // Put in the queue after the last level
+    static final BitboardStreamline END = new BitboardStreamline(
+            new BitboardGameState(1, 1, 0, 0, 0, 0));
+
+    final BufferedReader lines;
+    final String name;                  // for messages
+    final ArrayBlockingQueue<BitboardStreamline> queue;
+    final Thread reader;
+    int nextToHandOut;                  // index of the next level to return
+    boolean ended;                      // END was taken
+
+    /**
+     * Constructor that starts reading levels from a stream.
+     * @param in the stream, type InputStream
+     * @param name what to call the stream in messages, type String
+     * @param capacity the most parsed levels waiting at once, type int
+     * @return none, constructor method
+     */
+    public LevelStream(InputStream in, String name, int capacity) {
+        this.lines = new BufferedReader(new InputStreamReader(in));
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<BitboardStreamline>(
+                Math.max(capacity, 1));
+        this.reader = new Thread(this::readLevels, "level-stream");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Parses levels until the stream ends, waiting whenever the queue is
+     * full. A level that can't be parsed ends the stream, since there is
+     * no telling where the next one starts.
+     * @param none
+     * @return none
+     */
+    private void readLevels() {
+        try {
+            int index = 0;
+            BitboardGameState state;
+            while((state = LevelFormat.readNext(lines,
+                            name + " level " + (index + 1))) != null){
+                index++;
+                System.out.printf("Loading game %d from %s...\n", index,
+                        name);
+                queue.put(new BitboardStreamline(state));
+            }
+        }
+        catch (IOException e) {
+            System.out.printf("Stopped reading %s: %s\n", name,
+                    e.getMessage());
+        }
+        catch (InterruptedException e) {
+            // closed
+            return;
+        }
+        try {
+            queue.put(END);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands out the next level, waiting for it to arrive if it hasn't.
+     * @param none
+     * @return the level, or null once the stream has ended, type
+     * BitboardStreamline
+     */
+    @Override
+    public synchronized BitboardStreamline next() {
+        if(ended){
+            return null;
+        }
+        BitboardStreamline level;
+        try {
+            level = queue.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if(level == END){
+            ended = true;
+            return null;
+        }
+        nextToHandOut++;
+        return level;
+    }
+
+    @Override
+    public synchronized int nextIndex() {
+        return nextToHandOut;
+    }
+
+    /**
+     * Stops reading. Levels already parsed are dropped.
+     * @param none
+     * @return none
+     */
+    public void close() {
+        reader.interrupt();
+        queue.clear();
+        try {
+            lines.close();
+        }
+        catch (IOException e) {
+            // nothing more to read anyway
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelSymmetry.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file turns levels by the 8 symmetries of a grid: the 4 rotations,
+ and each of them mirrored. A level and its rotations and mirror images
+ play the same way, so they share one canonical hash: the smallest hash of
+ the 8 ways the level can be turned. Moves can be turned the same way, so
+ a solution found for one of them solves all of them.
+ */
+
+import java.util.Arrays;
+
+/**
+ * Symmetries of a level. Symmetry s maps cell (row, col) of an h by w
+ * board to:
+ *   0 (row, col)                 identity
+ *   1 (col, h - 1 - row)         rotated a quarter turn clockwise
+ *   2 (h - 1 - row, w - 1 - col) rotated a half turn
+ *   3 (w - 1 - col, row)         rotated a quarter turn counterclockwise
+ *   4 (row, w - 1 - col)         mirrored left to right
+ *   5 (h - 1 - row, col)         mirrored top to bottom
+ *   6 (col, row)                 mirrored along the main diagonal
+ *   7 (w - 1 - col, h - 1 - row) mirrored along the other diagonal
+ * Symmetries 1, 3, 6 and 7 swap the height and width.
+ */
+public class LevelSymmetry {
+    static final int IDENTITY = 0;
+    static final int SYMMETRIES = 8;
+    static final int QUARTER_TURN = 1;
+    static final int THREE_QUARTER_TURN = 3;
+
+    // How each symmetry moves a (row, col) offset: row and col signs, and
+    // whether row and col swap
+    static final int[] ROW_SIGN = {1, 1, -1, -1, 1, -1, 1, -1};
+    static final int[] COL_SIGN = {1, -1, -1, 1, -1, 1, 1, -1};
+    static final boolean[] SWAPS =
+        {false, true, false, true, false, false, true, true};
+
+    /**
+     * Where a cell goes under a symmetry.
+     * @param symmetry type int
+     * @param height,width the board size before turning, type int
+     * @param row,col the cell, type int
+     * @return the new cell as row * newWidth + col, type int
+     */
+    static int mapCell(int symmetry, int height, int width, int row,
+            int col) {
+        int newRow = SWAPS[symmetry] ? col : row;
+        int newCol = SWAPS[symmetry] ? row : col;
+        int newHeight = SWAPS[symmetry] ? width : height;
+        int newWidth = SWAPS[symmetry] ? height : width;
+        if(ROW_SIGN[symmetry] < 0){
+            newRow = newHeight - 1 - newRow;
+        }
+        if(COL_SIGN[symmetry] < 0){
+            newCol = newWidth - 1 - newCol;
+        }
+        return newRow * newWidth + newCol;
+    }
+
+    /**
+     * The symmetry that undoes another.
+     * @param symmetry type int
+     * @return the inverse, type int
+     */
+    static int inverse(int symmetry) {
+        if(symmetry == QUARTER_TURN){
+            return THREE_QUARTER_TURN;
+        }
+        if(symmetry == THREE_QUARTER_TURN){
+            return QUARTER_TURN;
+        }
+        return symmetry;
+    }
+
+    /**
+     * Which way a move goes once the level is turned.
+     * @param symmetry type int
+     * @param direction type Direction
+     * @return the turned direction, type Direction
+     */
+    static Direction mapDirection(int symmetry, Direction direction) {
+        int rowStep = direction == Direction.UP ? -1
+            : direction == Direction.DOWN ? 1 : 0;
+        int colStep = direction == Direction.LEFT ? -1
+            : direction == Direction.RIGHT ? 1 : 0;
+        if(SWAPS[symmetry]){
+            int swap = rowStep;
+            rowStep = colStep;
+            colStep = swap;
+        }
+        rowStep *= ROW_SIGN[symmetry];
+        colStep *= COL_SIGN[symmetry];
+        return rowStep < 0 ? Direction.UP : rowStep > 0 ? Direction.DOWN
+            : colStep < 0 ? Direction.LEFT : Direction.RIGHT;
+    }
+
+    /**
+     * Turns a level.
+     * @param state type BitboardGameState
+     * @param symmetry type int
+     * @return a new turned copy, type BitboardGameState
+     */
+    static BitboardGameState transform(BitboardGameState state,
+            int symmetry) {
+        int words = BitboardGameState.wordCount(state.height * state.width);
+        long[] obstacles = new long[words];
+        long[] trails = new long[words];
+        mapBits(state, symmetry, state.obstacles, obstacles);
+        mapBits(state, symmetry, state.trails, trails);
+        int player = mapCell(symmetry, state.height, state.width,
+                state.playerRow, state.playerCol);
+        int goal = mapCell(symmetry, state.height, state.width,
+                state.goalRow, state.goalCol);
+        int height = SWAPS[symmetry] ? state.width : state.height;
+        int width = SWAPS[symmetry] ? state.height : state.width;
+        return BitboardGameState.fromBitsets(height, width, player / width,
+                player % width, goal / width, goal % width, obstacles,
+                trails);
+    }
+
+    /**
+     * Turns a row major bitset of a level into another, which must be all
+     * zeros.
+     * @param state the level the bits belong to, type BitboardGameState
+     * @param symmetry type int
+     * @param from,to type long[]
+     * @return none
+     */
+    private static void mapBits(BitboardGameState state, int symmetry,
+            long[] from, long[] to) {
+        int width = state.width;
+        for(int word = 0; word < from.length; word++){
+            long bits = from[word];
+            while(bits != 0){
+                int index = (word << BitboardGameState.WORD_SHIFT)
+                    + Long.numberOfTrailingZeros(bits);
+                BitboardGameState.setBit(to, mapCell(symmetry, state.height,
+                            width, index / width, index % width));
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Hashes a level as it would be after a symmetry, without making the
+     * turned level. Uses scratch as space for the turned bitsets.
+     * @param state type BitboardGameState
+     * @param symmetry type int
+     * @param scratch at least wordCount(height * width) longs, type long[]
+     * @return the hash, type long
+     */
+    static long hash(BitboardGameState state, int symmetry, long[] scratch) {
+        int words = BitboardGameState.wordCount(state.height * state.width);
+        int height = SWAPS[symmetry] ? state.width : state.height;
+        int width = SWAPS[symmetry] ? state.height : state.width;
+        long result = BitboardGameState.mix(0, height);
+        result = BitboardGameState.mix(result, width);
+        result = BitboardGameState.mix(result, mapCell(symmetry,
+                    state.height, state.width, state.playerRow,
+                    state.playerCol));
+        result = BitboardGameState.mix(result, mapCell(symmetry,
+                    state.height, state.width, state.goalRow,
+                    state.goalCol));
+        Arrays.fill(scratch, 0, words, 0);
+        mapBits(state, symmetry, state.obstacles, scratch);
+        for(int word = 0; word < words; word++){
+            result = BitboardGameState.mix(result, scratch[word]);
+        }
+        Arrays.fill(scratch, 0, words, 0);
+        mapBits(state, symmetry, state.trails, scratch);
+        for(int word = 0; word < words; word++){
+            result = BitboardGameState.mix(result, scratch[word]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the symmetry that turns a level into its canonical form, the
+     * one with the smallest hash.
+     * @param state type BitboardGameState
+     * @return the symmetry, type int
+     */
+    static int canonicalSymmetry(BitboardGameState state) {
+        long[] scratch = new long[
+            BitboardGameState.wordCount(state.height * state.width)];
+        int best = IDENTITY;
+        long bestHash = hash(state, IDENTITY, scratch);
+        for(int symmetry = IDENTITY + 1; symmetry < SYMMETRIES; symmetry++){
+            long hash = hash(state, symmetry, scratch);
+            if(hash < bestHash){
+                best = symmetry;
+                bestHash = hash;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A hash that is the same for a level and all its rotations and
+     * mirror images.
+     * @param state type BitboardGameState
+     * @return the hash, type long
+     */
+    static long canonicalHash(BitboardGameState state) {
+        long[] scratch = new long[
+            BitboardGameState.wordCount(state.height * state.width)];
+        return hash(state, canonicalSymmetry(state), scratch);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: LevelValidator.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file checks every level under a directory, and every level in any
+ level pack found there, without playing them. Each level is checked for
+ format errors, a player starting on the goal, a goal that can't be
+ reached from any side, and whether the solver can finish it. Files are
+ checked on every core as the directory tree is walked, so the levels are
+ never all in memory at once. With a solution cache, levels that were
+ solved in an earlier run, or are rotations or mirror images of ones that
+ were, are not solved again.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Checks levels in parallel and prints any problems, then a summary.
+ */
+public class LevelValidator {
+    static final String USAGE =
+        "Usage: \n" +
+        "> java LevelValidator [-v] [-c <cache file>] <file or directory>" +
+        "...   - to check every level, -v prints every level instead of " +
+        "only bad ones, -c keeps solver results between runs\n";
+    static final String VERBOSE_FLAG = "-v";
+    static final String CACHE_FLAG = "-c";
+    static final int SLOWEST_SHOWN = 5;
+    // Solver state limit per level; levels that need more are reported
+    static final int MAX_STATES = 1 << 20;
+    static final double NANOS_PER_MILLI = 1e6;
+    static final double NANOS_PER_SECOND = 1e9;
+    static final int FAILURE_STATUS = 1;
+
+    // What can be wrong with a level
+    static final int OK = 0;
+    static final int FORMAT_ERROR = 1;
+    static final int PLAYER_ON_GOAL = 2;
+    static final int GOAL_WALLED_IN = 3;
+    static final int UNSOLVABLE = 4;
+    static final int TOO_HARD = 5;
+    static final String[] OUTCOMES = {
+        "ok", "format error", "player on goal", "goal walled in",
+        "unsolvable", "too hard to check"
+    };
+
+    final boolean verbose;
+    final SolutionCache cache;          // null if results aren't kept
+    final StreamlineSolver solver =
+        new StreamlineSolver(ForkJoinPool.commonPool(), MAX_STATES);
+    final AtomicLong[] outcomes = new AtomicLong[OUTCOMES.length];
+    final AtomicLong checkNanos = new AtomicLong();
+    // The slowest levels so far, fastest of them first
+    final PriorityQueue<Result> slowest = new PriorityQueue<Result>(
+            (a, b) -> Long.compare(a.nanos, b.nanos));
+
+    /**
+     * Constructor that sets up the counters.
+     * @param verbose whether to print levels that are fine, type boolean
+     * @param cache solver results to reuse, or null, type SolutionCache
+     * @return none, constructor method
+     */
+    public LevelValidator(boolean verbose, SolutionCache cache) {
+        this.verbose = verbose;
+        this.cache = cache;
+        for(int i = 0; i < outcomes.length; i++){
+            outcomes[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * What was found out about one level.
+     */
+    static class Result {
+        final String name;
+        final int outcome;
+        final String detail;
+        final long nanos;
+
+        Result(String name, int outcome, String detail, long nanos) {
+            this.name = name;
+            this.outcome = outcome;
+            this.detail = detail;
+            this.nanos = nanos;
+        }
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Checks
+    //-----------------------------------------------------------------------
+
+    /**
+     * Checks every level in a file, which is either a text level or a
+     * level pack.
+     * @param path the file, type Path
+     * @return none, reports the results
+     */
+    void checkFile(Path path) {
+        File file = path.toFile();
+        if(!LevelPack.isPack(file)){
+            long start = System.nanoTime();
+            BitboardGameState state;
+            try {
+                state = LevelFormat.read(file);
+            }
+            catch (IOException e) {
+                report(new Result(file.getPath(), FORMAT_ERROR,
+                            problem(file.getPath(), e),
+                            System.nanoTime() - start));
+                return;
+            }
+            report(check(file.getPath(), state, start));
+            return;
+        }
+        // The levels of a pack are checked in parallel too
+        try (LevelPack pack = new LevelPack(file)) {
+            IntStream.range(0, pack.size()).parallel().forEach(level -> {
+                long start = System.nanoTime();
+                BitboardGameState state;
+                try {
+                    state = pack.loadState(level);
+                }
+                catch (IOException e) {
+                    report(new Result(pack.describe(level), FORMAT_ERROR,
+                                e.getMessage(), System.nanoTime() - start));
+                    return;
+                }
+                report(check(pack.describe(level), state, start));
+            });
+        }
+        catch (IOException e) {
+            report(new Result(file.getPath(), FORMAT_ERROR, e.getMessage(),
+                        0));
+        }
+    }
+
+    // LevelFormat's messages start with the file name, which is already
+    // printed
+    private static String problem(String name, IOException e) {
+        String message = e.getMessage();
+        return message.startsWith(name + ":")
+            ? "line " + message.substring(name.length() + 1) : message;
+    }
+
+    /**
+     * Checks a level that was read without errors.
+     * @param name the level's name, type String
+     * @param state the level, type BitboardGameState
+     * @param start when checking it began, type long
+     * @return the result, type Result
+     */
+    Result check(String name, BitboardGameState state, long start) {
+        if(state.playerRow == state.goalRow
+                && state.playerCol == state.goalCol){
+            return new Result(name, PLAYER_ON_GOAL, null,
+                    System.nanoTime() - start);
+        }
+        if(isWalledIn(state)){
+            return new Result(name, GOAL_WALLED_IN, null,
+                    System.nanoTime() - start);
+        }
+        StreamlineSolver.Solution solution = cache == null
+            ? solver.solve(state) : cache.solve(state, solver);
+        long nanos = System.nanoTime() - start;
+        if(solution.isSolved()){
+            return new Result(name, OK, solution.length() + " moves", nanos);
+        }
+        if(solution.isUnsolvable()){
+            return new Result(name, UNSOLVABLE, null, nanos);
+        }
+        return new Result(name, TOO_HARD, solution.getStatesSeen()
+                + " states searched", nanos);
+    }
+
+    /**
+     * Whether every cell next to the goal is an obstacle or off the
+     * board, so no slide can ever end on it.
+     * @param state type BitboardGameState
+     * @return true if the goal can't be reached, type boolean
+     */
+    static boolean isWalledIn(BitboardGameState state) {
+        int[][] sides = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+        for(int[] side : sides){
+            int row = state.goalRow + side[0];
+            int col = state.goalCol + side[1];
+            if(row >= 0 && row < state.height && col >= 0
+                    && col < state.width && !state.isObstacle(row, col)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a result and prints it if it is a problem or verbose is on.
+     * @param result type Result
+     * @return none
+     */
+    void report(Result result) {
+        outcomes[result.outcome].incrementAndGet();
+        checkNanos.addAndGet(result.nanos);
+        if(result.outcome != OK || verbose){
+            System.out.printf("%-18s %8.3f ms  %s%s\n",
+                    OUTCOMES[result.outcome].toUpperCase(),
+                    result.nanos / NANOS_PER_MILLI, result.name,
+                    result.detail == null ? "" : ": " + result.detail);
+        }
+        synchronized (slowest) {
+            slowest.add(result);
+            if(slowest.size() > SLOWEST_SHOWN){
+                slowest.poll();
+            }
+        }
+    }
+
+    /**
+     * Describes everything checked so far.
+     * @param seconds how long checking took, type double
+     * @return the summary, type String
+     */
+    String summary(double seconds) {
+        long total = 0;
+        for(AtomicLong count : outcomes){
+            total += count.get();
+        }
+        StringBuilder summary = new StringBuilder(String.format(
+                    "\nChecked %d levels in %.2f s (%.1f s of checking on " +
+                    "all cores)\n", total, seconds,
+                    checkNanos.get() / NANOS_PER_SECOND));
+        for(int i = 0; i < OUTCOMES.length; i++){
+            summary.append(String.format("  %-18s %d\n", OUTCOMES[i],
+                        outcomes[i].get()));
+        }
+        List<Result> slow = new ArrayList<Result>(slowest);
+        slow.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        summary.append("Slowest levels:\n");
+        for(Result result : slow){
+            summary.append(String.format("  %8.3f ms  %s\n",
+                        result.nanos / NANOS_PER_MILLI, result.name));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Whether every level checked so far is fine.
+     * @param none
+     * @return true if nothing was wrong, type boolean
+     */
+    boolean allOk() {
+        for(int i = 0; i < outcomes.length; i++){
+            if(i != OK && outcomes[i].get() > 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Walks the given files and directories, checking files as they are
+     * found.
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> paths = new ArrayList<String>();
+        boolean verbose = false;
+        File cacheFile = null;
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals(VERBOSE_FLAG)){
+                verbose = true;
+            }
+            else if(args[i].equals(CACHE_FLAG) && i + 1 < args.length){
+                cacheFile = new File(args[++i]);
+            }
+            else{
+                paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty()) {
+            System.out.print(USAGE);
+            return;
+        }
+        SolutionCache cache = null;
+        if(cacheFile != null){
+            cache = new SolutionCache();
+            if(cacheFile.exists()){
+                try {
+                    cache.load(cacheFile);
+                }
+                catch (IOException e) {
+                    System.err.println("Starting with an empty cache: "
+                            + e.getMessage());
+                }
+            }
+        }
+        LevelValidator validator = new LevelValidator(verbose, cache);
+        long start = System.nanoTime();
+        for(String path : paths){
+            try (Stream<Path> files = Files.walk(new File(path).toPath())) {
+                files.parallel()
+                    .filter(Files::isRegularFile)
+                    .forEach(validator::checkFile);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+        System.out.print(validator.summary(seconds));
+        if(cache != null){
+            System.out.println("Solution cache: " + cache.describe());
+            cache.save(cacheFile);
+        }
+        if (!validator.allOk()) {
+            System.exit(FAILURE_STATUS);
+        }
+    }
+}
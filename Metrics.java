@@ -0,0 +1,193 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: Metrics.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file times the hot paths of the game: key handling, moves, undos,
+ redrawing trails and grids, loading levels and saving. Each timing goes
+ into a histogram with one bucket per power of two nanoseconds and, when
+ Flight Recorder is recording, into a JFR event. A summary is printed when
+ the program exits.
+
+ Metrics are off unless the program is started with
+ -Dstreamline.metrics=true. ENABLED is a static final, so when it is false
+ the JIT removes the timing calls entirely.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Low overhead latency histograms. Usage:
+ *     long start = Metrics.start();
+ *     ... the work ...
+ *     Metrics.stop(Metrics.RECORD_AND_MOVE, start);
+ */
+public class Metrics {
+    static final String ENABLED_PROPERTY = "streamline.metrics";
+    static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    // What can be timed
+    static final int HANDLE_KEY = 0;
+    static final int RECORD_AND_MOVE = 1;
+    static final int UNDO = 2;
+    static final int UPDATE_TRAIL_COLORS = 3;
+    static final int UPDATE_CHANGED_TRAILS = 4;
+    static final int RESET_GRID = 5;
+    static final int LOAD_LEVELS = 6;
+    static final int SAVE_TO_FILE = 7;
+    static final String[] NAMES = {
+        "handleKeyCode", "recordAndMove", "undo", "updateTrailColors",
+        "updateChangedTrails", "resetGrid", "loadLevels", "saveToFile"
+    };
+
+    static final int BUCKETS = Long.SIZE;
+    static final double NANOS_PER_MILLI = 1e6;
+    static final double MEDIAN = 0.5;
+    static final double TAIL = 0.99;
+
+    // Bucket b of metric m counts timings t with 63 - nlz(t) == b, i.e.
+    // 2^b <= t < 2^(b+1) nanoseconds
+    static final AtomicLongArray counts =
+        new AtomicLongArray(NAMES.length * BUCKETS);
+    static final AtomicLongArray totals = new AtomicLongArray(NAMES.length);
+    static final AtomicLongArray maxes = new AtomicLongArray(NAMES.length);
+
+    static {
+        if(ENABLED){
+            Runtime.getRuntime().addShutdownHook(new Thread(
+                        () -> System.out.print(summary()), "metrics-summary"));
+        }
+    }
+
+    /**
+     * Starts timing.
+     * @param none
+     * @return the start time to pass to stop(), type long
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing and records how long it took.
+     * @param metric what was timed, e.g. RECORD_AND_MOVE, type int
+     * @param start what start() returned, type long
+     * @return none
+     */
+    static void stop(int metric, long start) {
+        if(!ENABLED){
+            return;
+        }
+        long nanos = Math.max(1, System.nanoTime() - start);
+        int bucket = BUCKETS - 1 - Long.numberOfLeadingZeros(nanos);
+        counts.incrementAndGet(metric * BUCKETS + bucket);
+        totals.addAndGet(metric, nanos);
+        long max;
+        while(nanos > (max = maxes.get(metric))
+                && !maxes.compareAndSet(metric, max, nanos)){
+            // another thread raised the max, try again
+        }
+        OperationEvent event = new OperationEvent();
+        if(event.isEnabled()){
+            event.operation = NAMES[metric];
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Getter for the number of timings of a metric.
+     * @param metric type int
+     * @return the count, type long
+     */
+    static long count(int metric) {
+        long count = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            count += counts.get(metric * BUCKETS + bucket);
+        }
+        return count;
+    }
+
+    /**
+     * Estimates a percentile of a metric from its histogram, as the top of
+     * the bucket the percentile falls in, so it is at most 2x too high.
+     * @param metric type int
+     * @param fraction the percentile as a fraction, e.g. 0.99, type double
+     * @return the estimate in nanoseconds, or 0 if nothing was timed, type
+     * long
+     */
+    static long percentile(int metric, double fraction) {
+        long count = count(metric);
+        if(count == 0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS - 1; bucket++){
+            seen += counts.get(metric * BUCKETS + bucket);
+            if(seen >= rank){
+                return Math.min((1L << (bucket + 1)) - 1, maxes.get(metric));
+            }
+        }
+        return maxes.get(metric);
+    }
+
+    /**
+     * Describes one metric in a line.
+     * @param metric type int
+     * @return the description, type String
+     */
+    static String describe(int metric) {
+        long count = count(metric);
+        double mean = count == 0 ? 0 : totals.get(metric) / (double) count;
+        return String.format("%-20s %8d calls  mean %8.3f ms  p50 %8.3f ms" +
+                "  p99 %8.3f ms  max %8.3f ms", NAMES[metric], count,
+                mean / NANOS_PER_MILLI,
+                percentile(metric, MEDIAN) / NANOS_PER_MILLI,
+                percentile(metric, TAIL) / NANOS_PER_MILLI,
+                maxes.get(metric) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Describes every metric that was timed at least once.
+     * @param none
+     * @return the summary, type String
+     */
+    static String summary() {
+        StringBuilder summary = new StringBuilder("Timings:\n");
+        for(int metric = 0; metric < NAMES.length; metric++){
+            if(count(metric) > 0){
+                summary.append(describe(metric)).append('\n');
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * A JFR event for one timed operation.
+     */
+    @Name("streamline.Operation")
+    @Label("Streamline Operation")
+    @Category("Streamline")
+    @Description("A timed hot path of the game")
+    @StackTrace(false)
+    static class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: MetricsOverlay.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file shows the frame rate, the slowest recent frame and, when
+ Metrics are enabled, key handling and move latencies in the corner of the
+ window. It is hidden until toggled, and while hidden it only counts
+ frames.
+ */
+
+import javafx.geometry.VPos;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
+
+/**
+ * A Text node that describes how fast the game is running.
+ */
+public class MetricsOverlay extends Text {
+    static final double MARGIN = 4;
+    static final Color TEXT_COLOR = Color.DARKSLATEGRAY;
+    // How often the text is rewritten, in nanoseconds
+    static final long REFRESH_NANOS = 500000000L;
+    static final double NANOS_PER_SECOND = 1e9;
+    static final double NANOS_PER_MILLI = 1e6;
+
+    long windowStart;                   // when the current window began
+    long lastFrame;
+    int frames;                         // frames in the current window
+    long slowestFrame;                  // longest frame in the window
+
+    /**
+     * Constructor that makes a hidden overlay in the top left corner.
+     * @param none
+     * @return none, constructor method
+     */
+    public MetricsOverlay() {
+        setX(MARGIN);
+        setY(MARGIN);
+        setTextOrigin(VPos.TOP);
+        setFill(TEXT_COLOR);
+        setMouseTransparent(true);
+        setVisible(false);
+    }
+
+    /**
+     * Shows the overlay if it is hidden, hides it otherwise.
+     * @param none
+     * @return none
+     */
+    public void toggle() {
+        setVisible(!isVisible());
+    }
+
+    /**
+     * Counts a frame, and rewrites the text every REFRESH_NANOS while
+     * the overlay is showing.
+     * @param now the time of the frame, type long
+     * @return none
+     */
+    public void onFrame(long now) {
+        if(lastFrame != 0){
+            slowestFrame = Math.max(slowestFrame, now - lastFrame);
+        }
+        lastFrame = now;
+        frames++;
+        if(now - windowStart < REFRESH_NANOS){
+            return;
+        }
+        if(isVisible() && windowStart != 0){
+            double fps = frames * NANOS_PER_SECOND / (now - windowStart);
+            StringBuilder text = new StringBuilder(String.format(
+                        "%.0f fps, slowest frame %.1f ms", fps,
+                        slowestFrame / NANOS_PER_MILLI));
+            if(Metrics.ENABLED){
+                appendLatency(text, Metrics.HANDLE_KEY);
+                appendLatency(text, Metrics.RECORD_AND_MOVE);
+                appendLatency(text, Metrics.UPDATE_CHANGED_TRAILS);
+            }
+            setText(text.toString());
+        }
+        windowStart = now;
+        frames = 0;
+        slowestFrame = 0;
+    }
+
+    private static void appendLatency(StringBuilder text, int metric) {
+        text.append(String.format("\n%s p50 %.3f ms, p99 %.3f ms",
+                    Metrics.NAMES[metric],
+                    Metrics.percentile(metric, Metrics.MEDIAN)
+                    / NANOS_PER_MILLI,
+                    Metrics.percentile(metric, Metrics.TAIL)
+                    / NANOS_PER_MILLI));
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: MoveHistory.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file remembers the moves made in a level so they can be undone and
+ redone. Each move is packed into a single long (direction, start cell,
+ number of trail cells added), with an occasional full checkpoint of the
+ trails so the game can jump far back without undoing move by move. When
+ the history grows past its memory cap the oldest moves are forgotten.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Undo and redo history for a BitboardStreamline. Moves are counted from
+ * the start of the level; moves older than getOldestMove() have been
+ * forgotten to stay under the memory cap.
+ */
+public class MoveHistory {
+    // Layout of a packed move, from the lowest bit up
+    static final int DIRECTION_BITS = 2;
+    static final long DIRECTION_MASK = (1L << DIRECTION_BITS) - 1;
+    static final long START_TRAIL_FLAG = 1L << DIRECTION_BITS;
+    static final int LENGTH_SHIFT = DIRECTION_BITS + 1;
+    static final long LENGTH_MASK = (1L << (Integer.SIZE - LENGTH_SHIFT)) - 1;
+    static final int CELL_SHIFT = Integer.SIZE;
+    static final long NO_MOVE = -1L;    // packed moves are never negative
+
+    static final long DEFAULT_MEMORY_CAP = 16L << 20;     // 16 MB
+    static final int INITIAL_CAPACITY = 16;
+    // Never take checkpoints more often than this many moves apart
+    static final int MIN_CHECKPOINT_INTERVAL = 64;
+    // Rough size of an object header plus a few fields
+    static final int OBJECT_OVERHEAD = 64;
+
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    final long memoryCap;
+
+    // Ring buffer of packed moves, oldest kept move at head
+    long[] moves = new long[INITIAL_CAPACITY];
+    int head;
+    int undoable;                       // moves that can be undone
+    int redoable;                       // undone moves that can be redone
+    long oldestMove;                    // move number of the move at head
+
+    final ArrayDeque<Checkpoint> checkpoints = new ArrayDeque<Checkpoint>();
+    long checkpointBytes;
+
+    /**
+     * Constructor that creates an empty history with the default cap.
+     * @param none
+     * @return none, constructor method
+     */
+    public MoveHistory() {
+        this(DEFAULT_MEMORY_CAP);
+    }
+
+    /**
+     * Constructor that creates an empty history.
+     * @param memoryCap roughly how many bytes the history may use, type long
+     * @return none, constructor method
+     */
+    public MoveHistory(long memoryCap) {
+        this.memoryCap = memoryCap;
+    }
+
+    //-----------------------------------------------------------------------
+    //                        Packing single moves
+    //-----------------------------------------------------------------------
+
+    static long pack(Direction direction, int startCell, int length,
+            boolean startHadTrail) {
+        return ((long) startCell << CELL_SHIFT)
+            | ((length & LENGTH_MASK) << LENGTH_SHIFT)
+            | (startHadTrail ? START_TRAIL_FLAG : 0)
+            | direction.ordinal();
+    }
+
+    static Direction direction(long move) {
+        return DIRECTIONS[(int) (move & DIRECTION_MASK)];
+    }
+
+    static int startCell(long move) {
+        return (int) (move >>> CELL_SHIFT);
+    }
+
+    static int length(long move) {
+        return (int) ((move >>> LENGTH_SHIFT) & LENGTH_MASK);
+    }
+
+    static boolean startHadTrail(long move) {
+        return (move & START_TRAIL_FLAG) != 0;
+    }
+
+    //-----------------------------------------------------------------------
+    //                          Undo and redo
+    //-----------------------------------------------------------------------
+
+    /**
+     * Getter for the number of the move that would be made next, counting
+     * from the start of the level.
+     * @param none
+     * @return the move number, type long
+     */
+    public long position() {
+        return oldestMove + undoable;
+    }
+
+    /**
+     * Getter for the number of the oldest move that is still remembered.
+     * @param none
+     * @return the move number, type long
+     */
+    public long getOldestMove() {
+        return oldestMove;
+    }
+
+    public boolean canUndo() {
+        return undoable > 0;
+    }
+
+    public boolean canRedo() {
+        return redoable > 0;
+    }
+
+    /**
+     * Whether a checkpoint should be taken before the next move is made.
+     * Checkpoints are spaced so they take about as much memory as the
+     * moves between them.
+     * @param state the state before the next move, type BitboardGameState
+     * @return true if checkpointBefore would take one, type boolean
+     */
+    public boolean checkpointDue(BitboardGameState state) {
+        long interval = Math.max(MIN_CHECKPOINT_INTERVAL,
+                checkpointSize(state) / Long.BYTES);
+        Checkpoint last = checkpointAtOrBefore(position());
+        return last == null || position() - last.move >= interval;
+    }
+
+    /**
+     * Copies the full trails of a state as they are before the next move,
+     * if a checkpoint is due. The copy is only kept once it is handed to
+     * record() along with the move, so a move that turns out to be blocked
+     * never leaves a checkpoint behind.
+     * @param state the state before the next move, type BitboardGameState
+     * @return the checkpoint, or null if none is due, type Checkpoint
+     */
+    public Checkpoint checkpointBefore(BitboardGameState state) {
+        return checkpointDue(state) ? new Checkpoint(position(), state)
+            : null;
+    }
+
+    /**
+     * Adds a move. Any moves that could have been redone are forgotten.
+     * @param move the packed move, type long
+     * @return none
+     */
+    public void record(long move) {
+        record(move, null);
+    }
+
+    /**
+     * Adds a move along with a checkpoint of the state before it. Any moves
+     * that could have been redone, and their checkpoints, are forgotten
+     * first, so the new checkpoint is always the latest one.
+     * @param move the packed move, type long
+     * @param before from checkpointBefore(), or null, type Checkpoint
+     * @return none
+     */
+    public void record(long move, Checkpoint before) {
+        dropRedo();
+        if(before != null){
+            checkpoints.addLast(before);
+            checkpointBytes += before.bytes;
+        }
+        if(undoable == moves.length){
+            if(memoryUsed() + (long) moves.length * Long.BYTES <= memoryCap){
+                grow();
+            }
+            else{
+                dropOldest();
+            }
+        }
+        moves[(head + undoable) & (moves.length - 1)] = move;
+        undoable++;
+        trimToCap();
+    }
+
+    /**
+     * Steps back one move.
+     * @param none
+     * @return the packed move to undo, or NO_MOVE if there is none, type
+     * long
+     */
+    public long undo() {
+        if(undoable == 0){
+            return NO_MOVE;
+        }
+        undoable--;
+        redoable++;
+        return moves[(head + undoable) & (moves.length - 1)];
+    }
+
+    /**
+     * Steps forward over a move that was undone.
+     * @param none
+     * @return the packed move to make again, or NO_MOVE if there is none,
+     * type long
+     */
+    public long redo() {
+        if(redoable == 0){
+            return NO_MOVE;
+        }
+        long move = moves[(head + undoable) & (moves.length - 1)];
+        undoable++;
+        redoable--;
+        return move;
+    }
+
+    /**
+     * Finds the latest checkpoint taken at or before the given move.
+     * @param move the move number, type long
+     * @return the checkpoint, or null if there is none, type Checkpoint
+     */
+    public Checkpoint checkpointAtOrBefore(long move) {
+        Iterator<Checkpoint> it = checkpoints.descendingIterator();
+        while(it.hasNext()){
+            Checkpoint checkpoint = it.next();
+            if(checkpoint.move <= move){
+                return checkpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the undo position straight to a checkpoint, turning the moves
+     * after it into redoable moves. The caller restores the state.
+     * @param checkpoint a checkpoint of this history, type Checkpoint
+     * @return none
+     */
+    public void seek(Checkpoint checkpoint) {
+        int back = (int) (position() - checkpoint.move);
+        undoable -= back;
+        redoable += back;
+    }
+
+    /**
+     * Getter for roughly how many bytes the history is using.
+     * @param none
+     * @return the number of bytes, type long
+     */
+    public long memoryUsed() {
+        return (long) moves.length * Long.BYTES + checkpointBytes;
+    }
+
+    //-----------------------------------------------------------------------
+    //                         Keeping under the cap
+    //-----------------------------------------------------------------------
+
+    private void grow() {
+        long[] bigger = new long[moves.length * 2];
+        for(int i = 0; i < undoable + redoable; i++){
+            bigger[i] = moves[(head + i) & (moves.length - 1)];
+        }
+        moves = bigger;
+        head = 0;
+    }
+
+    private void dropRedo() {
+        redoable = 0;
+        while(!checkpoints.isEmpty()
+                && checkpoints.peekLast().move > position()){
+            checkpointBytes -= checkpoints.pollLast().bytes;
+        }
+    }
+
+    private void dropOldest() {
+        head = (head + 1) & (moves.length - 1);
+        undoable--;
+        oldestMove++;
+        while(!checkpoints.isEmpty()
+                && checkpoints.peekFirst().move < oldestMove){
+            checkpointBytes -= checkpoints.pollFirst().bytes;
+        }
+    }
+
+    private void trimToCap() {
+        while(memoryUsed() > memoryCap && checkpoints.size() > 1){
+            // Forget everything before the second oldest checkpoint
+            checkpointBytes -= checkpoints.pollFirst().bytes;
+            while(oldestMove < checkpoints.peekFirst().move && undoable > 0){
+                dropOldest();
+            }
+        }
+    }
+
+    static long checkpointSize(BitboardGameState state) {
+        return 2L * state.trails.length * Long.BYTES + OBJECT_OVERHEAD;
+    }
+
+    /**
+     * A full copy of the trails and player position as they were before a
+     * given move.
+     */
+    static class Checkpoint {
+        final long move;
+        final int playerRow, playerCol;
+        final boolean levelPassed;
+        final long[] trails, trailsT;
+        final long bytes;
+
+        Checkpoint(long move, BitboardGameState state) {
+            this.move = move;
+            this.playerRow = state.playerRow;
+            this.playerCol = state.playerCol;
+            this.levelPassed = state.levelPassed;
+            this.trails = state.trails.clone();
+            this.trailsT = state.trailsT.clone();
+            this.bytes = checkpointSize(state);
+        }
+    }
+}
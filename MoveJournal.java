@@ -0,0 +1,297 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: MoveJournal.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file keeps an append only journal of the moves made in the current
+ level so a session can be picked up again after a crash. Moves are
+ buffered in memory and written, then forced to disk, in batches by a
+ background thread, so making a move never waits for the disk.
+
+ Journal layout, numbers big endian:
+   header  magic (int), level index (int), level hash (long)
+   events  one byte per event: a Direction ordinal, UNDO or REDO
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crash safe journal of the current level's moves. startLevel() begins a
+ * new journal, append() adds an event; both only touch memory.
+ */
+public class MoveJournal implements Closeable {
+    static final String DEFAULT_FILE = "streamline.journal";
+    static final int MAGIC = 0x534C4A4E;            // "SLJN"
+    static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+    // Events other than moves, which use their Direction ordinal
+    static final byte UNDO = 4;
+    static final byte REDO = 5;
+    static final byte NO_EVENT = -1;
+
+    static final long FLUSH_INTERVAL_MS = 200;
+    static final int BATCH_SIZE = 256;              // flush early when full
+    static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    final File file;
+    final ScheduledExecutorService writer;
+    FileChannel channel;                // only used by the writer thread
+    boolean hasHeader;                  // only used by the writer thread
+
+    // Guarded by this: events not written yet, and the header of a level
+    // started since the last flush
+    byte[] buffer = new byte[BATCH_SIZE];
+    byte[] spare = new byte[BATCH_SIZE];
+    int buffered;
+    ByteBuffer pendingHeader;
+
+    /**
+     * Constructor that starts the background writer. Nothing is written
+     * until startLevel() is called.
+     * @param file the journal file, type File
+     * @return none, constructor method
+     */
+    public MoveJournal(File file) {
+        this.file = file;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "move-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS,
+                FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts journaling a new level. The old journal is replaced on the
+     * next flush.
+     * @param levelIndex which level of the pack or directory, type int
+     * @param levelHash BitboardStreamline.levelHash of the level, type long
+     * @return none
+     */
+    public synchronized void startLevel(int levelIndex, long levelHash) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(levelIndex);
+        header.putLong(levelHash);
+        header.flip();
+        pendingHeader = header;
+        buffered = 0;
+    }
+
+    /**
+     * Adds an event to the journal.
+     * @param event a Direction ordinal, UNDO or REDO, type byte
+     * @return none
+     */
+    public void append(byte event) {
+        boolean full;
+        synchronized (this) {
+            if(buffered == buffer.length){
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[buffered++] = event;
+            full = buffered == BATCH_SIZE;
+        }
+        if(full){
+            writer.execute(this::flush);
+        }
+    }
+
+    /**
+     * Writes everything buffered so far and forces it to disk. Runs on the
+     * writer thread.
+     * @param none
+     * @return none
+     */
+    private void flush() {
+        ByteBuffer header;
+        byte[] events;
+        int count;
+        synchronized (this) {
+            header = pendingHeader;
+            pendingHeader = null;
+            if(header == null && buffered == 0){
+                return;
+            }
+            events = buffer;
+            count = buffered;
+            buffer = spare.length >= BATCH_SIZE ? spare : new byte[BATCH_SIZE];
+            buffered = 0;
+        }
+        try {
+            if(channel == null){
+                channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            if(header != null){
+                channel.truncate(0);
+                channel.position(0);
+                while(header.hasRemaining()){
+                    channel.write(header);
+                }
+                hasHeader = true;
+            }
+            // Events from before the first level started have nowhere to go
+            if(hasHeader){
+                ByteBuffer out = ByteBuffer.wrap(events, 0, count);
+                while(out.hasRemaining()){
+                    channel.write(out);
+                }
+            }
+            channel.force(false);
+        }
+        catch (IOException e) {
+            System.out.printf("Could not write journal %s: %s\n", file,
+                    e.getMessage());
+        }
+        synchronized (this) {
+            spare = events;
+        }
+    }
+
+    /**
+     * Writes whatever is still buffered and stops the writer thread.
+     * @param none
+     * @return none
+     */
+    @Override
+    public void close() {
+        writer.execute(this::flush);
+        stopWriter();
+    }
+
+    /**
+     * Drops the journal entirely, for when there is nothing left to resume.
+     * @param none
+     * @return none
+     */
+    public void discard() {
+        synchronized (this) {
+            pendingHeader = null;
+            buffered = 0;
+        }
+        writer.execute(() -> {
+            closeChannel();
+            file.delete();
+        });
+        stopWriter();
+    }
+
+    private void stopWriter() {
+        writer.execute(this::closeChannel);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeChannel() {
+        if(channel != null){
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                // nothing left to save
+            }
+            channel = null;
+        }
+    }
+
+    //-----------------------------------------------------------------------
+    //                             Resuming
+    //-----------------------------------------------------------------------
+
+    /**
+     * Reads a journal left behind by an earlier session.
+     * @param file the journal file, type File
+     * @return what was in it, or null if there is no usable journal, type
+     * Resume
+     */
+    public static Resume read(File file) {
+        if(!file.isFile() || file.length() < HEADER_SIZE){
+            return null;
+        }
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if(in.getInt() != MAGIC){
+                return null;
+            }
+            int levelIndex = in.getInt();
+            long levelHash = in.getLong();
+            byte[] events = new byte[in.remaining()];
+            in.get(events);
+            return new Resume(levelIndex, levelHash, events);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Applies one journal event to a game.
+     * @param game type BitboardStreamline
+     * @param event a Direction ordinal, UNDO or REDO, type byte
+     * @return none
+     */
+    static void apply(BitboardStreamline game, byte event) {
+        if(event == UNDO){
+            game.undo();
+        }
+        else if(event == REDO){
+            game.redo();
+        }
+        else if(event >= 0 && event < DIRECTIONS.length){
+            game.recordAndMove(DIRECTIONS[event]);
+        }
+    }
+
+    /**
+     * The contents of a journal from an earlier session.
+     */
+    public static class Resume {
+        final int levelIndex;
+        final long levelHash;
+        final byte[] events;
+
+        Resume(int levelIndex, long levelHash, byte[] events) {
+            this.levelIndex = levelIndex;
+            this.levelHash = levelHash;
+            this.events = events;
+        }
+
+        /**
+         * Replays the journal onto a freshly loaded level, if it is the
+         * level the journal was written for.
+         * @param game the level, type BitboardStreamline
+         * @return true if the events were replayed, type boolean
+         */
+        public boolean replayOnto(BitboardStreamline game) {
+            if(game.levelHash != levelHash){
+                return false;
+            }
+            for(byte event : events){
+                apply(game, event);
+            }
+            return true;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import javafx.scene.shape.StrokeType;
 public class Player extends RoundedSquare {
     // Size of the stroke when Player is drawn
     final static double STROKE_FRACTION = 0.1;
+    final static Color FILL_COLOR = Color.RED;
     
     /**
      * Constructor method that creates a Player object that has a set color,
@@ -33,7 +34,7 @@ public class Player extends RoundedSquare {
     public Player() {
         //set a fill color, a stroke color, and set the stroke type to
         //centered
-        setFill(Color.RED);
+        setFill(FILL_COLOR);
         setStroke(Color.ORANGE);
         setStrokeType(StrokeType.CENTERED);
     }
@@ -0,0 +1,258 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: Replay.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file reads and writes replays: a level's starting state, every move
+ and undo made in it with the time it was made, and a hash of the state it
+ ended in. Playing the events back on the starting state has to end in a
+ state with the same hash, which lets old sessions check new engines.
+
+ Replay layout, numbers big endian:
+   header  magic (int), version (int), level hash (long), seed (long),
+           final hash (long), event count (int)
+   level   height, width, playerRow, playerCol, goalRow, goalCol, flags
+           (ints), the row major obstacle bitset (longs), then the trail
+           bitset if flags has HAS_TRAILS
+   events  one varint per event: the milliseconds since the previous event
+           shifted up by EVENT_BITS, or'd with the event, which is a
+           Direction ordinal, MoveJournal.UNDO or MoveJournal.REDO
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * A recorded session of one level.
+ */
+public class Replay {
+    static final int MAGIC = 0x534C5250;            // "SLRP"
+    static final int VERSION = 1;
+    static final String EXTENSION = ".slrp";
+    static final long NO_SEED = 0;                  // level came from a file
+    static final int HAS_TRAILS = 1;                // level flag
+
+    static final int EVENT_BITS = 3;
+    static final int EVENT_MASK = (1 << EVENT_BITS) - 1;
+    // Varints hold 7 bits per byte, the top bit says more bytes follow
+    static final int VARINT_BITS = 7;
+    static final int VARINT_MASK = (1 << VARINT_BITS) - 1;
+    static final int VARINT_MORE = 1 << VARINT_BITS;
+
+    final long levelHash;
+    final long seed;
+    final long finalHash;
+    final BitboardGameState start;
+    final byte[] events;
+    final long[] eventTimes;            // milliseconds since the level began
+
+    /**
+     * Constructor for a finished replay.
+     * @param seed the seed the level was made from, or NO_SEED, type long
+     * @param finalHash contentHash() of the state the session ended in,
+     * type long
+     * @param start the level's starting state, type BitboardGameState
+     * @param events the events in order, type byte[]
+     * @param eventTimes when each event happened, type long[]
+     * @return none, constructor method
+     */
+    public Replay(long seed, long finalHash, BitboardGameState start,
+            byte[] events, long[] eventTimes) {
+        this.levelHash = start.contentHash();
+        this.seed = seed;
+        this.finalHash = finalHash;
+        this.start = start;
+        this.events = events;
+        this.eventTimes = eventTimes;
+    }
+
+    /**
+     * Plays the events on a fresh copy of the starting state.
+     * @param none
+     * @return the game after the last event, type BitboardStreamline
+     */
+    public BitboardStreamline play() {
+        BitboardStreamline game =
+            new BitboardStreamline(new BitboardGameState(start));
+        for(byte event : events){
+            MoveJournal.apply(game, event);
+        }
+        return game;
+    }
+
+    /**
+     * Whether playing the events ends in the recorded state.
+     * @param none
+     * @return true if the final hashes match, type boolean
+     */
+    public boolean verify() {
+        return play().currentState.contentHash() == finalHash;
+    }
+
+    //-----------------------------------------------------------------------
+    //                         Reading and writing
+    //-----------------------------------------------------------------------
+
+    /**
+     * Encodes the replay.
+     * @param none
+     * @return the replay's bytes, type byte[]
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(levelHash);
+            out.writeLong(seed);
+            out.writeLong(finalHash);
+            out.writeInt(events.length);
+            out.writeInt(start.height);
+            out.writeInt(start.width);
+            out.writeInt(start.playerRow);
+            out.writeInt(start.playerCol);
+            out.writeInt(start.goalRow);
+            out.writeInt(start.goalCol);
+            boolean hasTrails = hasTrails(start);
+            out.writeInt(hasTrails ? HAS_TRAILS : 0);
+            for(long word : start.obstacles){
+                out.writeLong(word);
+            }
+            if(hasTrails){
+                for(long word : start.trails){
+                    out.writeLong(word);
+                }
+            }
+            long previous = 0;
+            for(int i = 0; i < events.length; i++){
+                long delay = Math.max(0, eventTimes[i] - previous);
+                previous = eventTimes[i];
+                writeVarint(out, (delay << EVENT_BITS) | events[i]);
+            }
+        }
+        catch (IOException e) {
+            // can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeVarint(DataOutputStream out, long value)
+            throws IOException {
+        while((value & ~VARINT_MASK) != 0){
+            out.writeByte((int) (value & VARINT_MASK) | VARINT_MORE);
+            value >>>= VARINT_BITS;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get();
+            value |= (long) (b & VARINT_MASK) << shift;
+            shift += VARINT_BITS;
+        } while((b & VARINT_MORE) != 0);
+        return value;
+    }
+
+    /**
+     * Decodes a replay.
+     * @param bytes type byte[]
+     * @return the replay, type Replay
+     * @throws IOException if the bytes are not a replay or are damaged
+     */
+    public static Replay fromBytes(byte[] bytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        try {
+            if(in.getInt() != MAGIC || in.getInt() != VERSION){
+                throw new IOException("not a replay");
+            }
+            long levelHash = in.getLong();
+            long seed = in.getLong();
+            long finalHash = in.getLong();
+            int count = in.getInt();
+            int height = in.getInt();
+            int width = in.getInt();
+            int playerRow = in.getInt();
+            int playerCol = in.getInt();
+            int goalRow = in.getInt();
+            int goalCol = in.getInt();
+            int flags = in.getInt();
+            int words = BitboardGameState.wordCount(height * width);
+            long[] obstacles = new long[words];
+            long[] trails = new long[words];
+            in.asLongBuffer().get(obstacles);
+            in.position(in.position() + words * Long.BYTES);
+            if((flags & HAS_TRAILS) != 0){
+                in.asLongBuffer().get(trails);
+                in.position(in.position() + words * Long.BYTES);
+            }
+            BitboardGameState start = BitboardGameState.fromBitsets(height,
+                    width, playerRow, playerCol, goalRow, goalCol, obstacles,
+                    trails);
+
+            // every event takes at least a byte
+            if(count < 0 || count > in.remaining()){
+                throw new IOException("replay is damaged: bad event count");
+            }
+            byte[] events = new byte[count];
+            long[] eventTimes = new long[count];
+            long time = 0;
+            for(int i = 0; i < count; i++){
+                long value = readVarint(in);
+                events[i] = (byte) (value & EVENT_MASK);
+                time += value >>> EVENT_BITS;
+                eventTimes[i] = time;
+            }
+            Replay replay = new Replay(seed, finalHash, start, events,
+                    eventTimes);
+            if(replay.levelHash != levelHash){
+                throw new IOException("level does not match its hash");
+            }
+            return replay;
+        }
+        catch (RuntimeException e) {
+            // cut short, or sizes that make no sense
+            throw new IOException("replay is damaged: " + e);
+        }
+    }
+
+    private static boolean hasTrails(BitboardGameState state) {
+        for(long word : state.trails){
+            if(word != 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a replay file.
+     * @param file type File
+     * @return the replay, type Replay
+     * @throws IOException if the file can't be read or is not a replay
+     */
+    public static Replay read(File file) throws IOException {
+        return fromBytes(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Writes the replay to a file.
+     * @param file type File
+     * @return none
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        Files.write(file.toPath(), toBytes());
+    }
+}
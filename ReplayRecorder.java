@@ -0,0 +1,134 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: ReplayRecorder.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file records the moves, undos and redos made in each level, and when
+ they were made, and saves them as a Replay once the level is left. Events
+ are kept in plain arrays, and replays are written by a background thread.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records one level at a time. startLevel() begins a recording, record()
+ * adds an event and finishLevel() saves it.
+ */
+public class ReplayRecorder {
+    static final String DEFAULT_DIRECTORY = "replays";
+    static final String REPLAY_NAME = "level%d-%d" + Replay.EXTENSION;
+    static final int INITIAL_CAPACITY = 64;
+    static final long CLOSE_TIMEOUT_SECONDS = 5;
+    static final long NANOS_PER_MILLI = 1000000;
+
+    final File directory;
+    final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "replay-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The recording in progress, start is null if there is none
+    BitboardGameState start;
+    int levelIndex;
+    long seed;
+    long startNanos;
+    byte[] events = new byte[INITIAL_CAPACITY];
+    long[] eventTimes = new long[INITIAL_CAPACITY];
+    int count;
+
+    /**
+     * Constructor that saves replays into the given directory.
+     * @param directory type File
+     * @return none, constructor method
+     */
+    public ReplayRecorder(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts recording a level from its current state.
+     * @param game the level, type BitboardStreamline
+     * @param levelIndex which level of the pack or directory, type int
+     * @param seed the seed the level was made from, or Replay.NO_SEED,
+     * type long
+     * @return none
+     */
+    public void startLevel(BitboardStreamline game, int levelIndex,
+            long seed) {
+        this.start = new BitboardGameState(game.currentState);
+        this.levelIndex = levelIndex;
+        this.seed = seed;
+        this.startNanos = System.nanoTime();
+        this.count = 0;
+    }
+
+    /**
+     * Adds an event to the recording.
+     * @param event a Direction ordinal, MoveJournal.UNDO or
+     * MoveJournal.REDO, type byte
+     * @return none
+     */
+    public void record(byte event) {
+        if(start == null || event == MoveJournal.NO_EVENT){
+            return;
+        }
+        if(count == events.length){
+            events = Arrays.copyOf(events, count * 2);
+            eventTimes = Arrays.copyOf(eventTimes, count * 2);
+        }
+        events[count] = event;
+        eventTimes[count] = (System.nanoTime() - startNanos) / NANOS_PER_MILLI;
+        count++;
+    }
+
+    /**
+     * Ends the recording and saves it in the background.
+     * @param game the level as it ended, type BitboardStreamline
+     * @return none
+     */
+    public void finishLevel(BitboardStreamline game) {
+        if(start == null){
+            return;
+        }
+        final Replay replay = new Replay(seed,
+                game.currentState.contentHash(), start,
+                Arrays.copyOf(events, count), Arrays.copyOf(eventTimes, count));
+        final File file = new File(directory, String.format(REPLAY_NAME,
+                    levelIndex, System.currentTimeMillis()));
+        start = null;
+        writer.execute(() -> {
+            try {
+                directory.mkdirs();
+                replay.write(file);
+            }
+            catch (IOException e) {
+                System.out.printf("Could not save replay %s: %s\n", file,
+                        e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Waits for replays still being written and stops the writer thread.
+     * @param none
+     * @return none
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
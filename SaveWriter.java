@@ -0,0 +1,84 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SaveWriter.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file saves games on a background thread so the GUI never waits for
+ the disk. If saves are asked for faster than they can be written, only
+ the latest one is written.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Write behind saver. requestSave() only copies the state and returns;
+ * the file is written later by a single background thread.
+ */
+public class SaveWriter {
+    static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "save-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The newest save that has not been written yet, or null
+    final AtomicReference<SaveRequest> pending =
+        new AtomicReference<SaveRequest>();
+
+    /**
+     * Asks for the game to be saved as it is right now. Returns right away.
+     * @param game the game to save, type BitboardStreamline
+     * @return none
+     */
+    public void requestSave(BitboardStreamline game) {
+        SaveRequest request = new SaveRequest(game,
+                new BitboardGameState(game.currentState));
+        // Only schedule a write if none is waiting, a waiting one will
+        // pick up this newer request instead
+        if(pending.getAndSet(request) == null){
+            writer.execute(this::writePending);
+        }
+    }
+
+    /**
+     * Waits for any waiting save to be written and stops the thread.
+     * @param none
+     * @return none
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writePending() {
+        SaveRequest request = pending.getAndSet(null);
+        if(request != null){
+            request.game.saveSnapshot(request.state);
+        }
+    }
+
+    /**
+     * A game and a copy of its state to write.
+     */
+    static class SaveRequest {
+        final BitboardStreamline game;
+        final BitboardGameState state;
+
+        SaveRequest(BitboardStreamline game, BitboardGameState state) {
+            this.game = game;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SessionStore.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file keeps the games of every session StreamlineServer is hosting.
+ The games are split across many shards, each with its own lock, so
+ connections on different cores almost never wait for each other to find
+ their game.
+ */
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Games by session id, in shards that are locked separately.
+ */
+public class SessionStore {
+    // Shards per core, so two busy connections rarely share a shard
+    static final int SHARDS_PER_CORE = 8;
+
+    final HashMap<Long, BitboardStreamline>[] shards;
+    final int shardMask;
+    final AtomicLong nextId = new AtomicLong(1);
+    final AtomicLong size = new AtomicLong();
+
+    /**
+     * Constructor that makes enough shards for the cores of this machine.
+     * @param none
+     * @return none, constructor method
+     */
+    public SessionStore() {
+        this(Runtime.getRuntime().availableProcessors() * SHARDS_PER_CORE);
+    }
+
+    /**
+     * Constructor that makes at least the given number of shards.
+     * @param minShards type int
+     * @return none, constructor method
+     */
+    @SuppressWarnings("unchecked")
+    public SessionStore(int minShards) {
+        int count = Integer.highestOneBit(Math.max(1, minShards - 1)) << 1;
+        shards = (HashMap<Long, BitboardStreamline>[]) new HashMap<?, ?>[count];
+        for(int i = 0; i < count; i++){
+            shards[i] = new HashMap<Long, BitboardStreamline>();
+        }
+        shardMask = count - 1;
+    }
+
+    // Ids are handed out in order, so they are mixed to spread out shards
+    private HashMap<Long, BitboardStreamline> shard(long id) {
+        return shards[(int) BitboardGameState.mix(0, id) & shardMask];
+    }
+
+    /**
+     * Adds a game as a new session.
+     * @param game type BitboardStreamline
+     * @return the new session's id, type long
+     */
+    public long add(BitboardStreamline game) {
+        long id = nextId.getAndIncrement();
+        HashMap<Long, BitboardStreamline> shard = shard(id);
+        synchronized (shard) {
+            shard.put(id, game);
+        }
+        size.incrementAndGet();
+        return id;
+    }
+
+    /**
+     * Finds the game of a session.
+     * @param id the session id, type long
+     * @return the game, or null if there is no such session, type
+     * BitboardStreamline
+     */
+    public BitboardStreamline get(long id) {
+        HashMap<Long, BitboardStreamline> shard = shard(id);
+        synchronized (shard) {
+            return shard.get(id);
+        }
+    }
+
+    /**
+     * Ends a session.
+     * @param id the session id, type long
+     * @return true if there was such a session, type boolean
+     */
+    public boolean remove(long id) {
+        HashMap<Long, BitboardStreamline> shard = shard(id);
+        boolean removed;
+        synchronized (shard) {
+            removed = shard.remove(id) != null;
+        }
+        if(removed){
+            size.decrementAndGet();
+        }
+        return removed;
+    }
+
+    /**
+     * Getter for the number of open sessions.
+     * @param none
+     * @return the count, type long
+     */
+    public long size() {
+        return size.get();
+    }
+}
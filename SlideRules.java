@@ -0,0 +1,134 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SlideRules.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file holds the rules of a slide, so every engine moves the player
+ the same way. A slide goes along one line, a row or a column, until the
+ cell before an obstacle or trail, the edge, or the goal, and leaves a
+ trail on every cell it leaves. Which cells of the line are blocked is up
+ to the engine; these helpers take the first blocked cell it found, or
+ scan for it themselves on a bitset laid out line by line, and work out
+ where the player stops and which run of cells gets the trail.
+ */
+
+/**
+ * Static helpers for sliding along a row or a column. Positions are
+ * counted along the line: the column for a row, the row for a column.
+ */
+public class SlideRules {
+    // Returned, and passed as hit or goal, when there is nothing there
+    static final int NOT_FOUND = -1;
+
+    /**
+     * Where a slide along a line stops, given the first blocked cell on
+     * the way.
+     * @param from where the player is, type int
+     * @param limit the farthest cell the slide could reach, the edge of the
+     * board in the direction of the slide, type int
+     * @param hit the first obstacle or trail between from and limit, or
+     * NOT_FOUND, type int
+     * @param goal the goal if it is on this line, or NOT_FOUND, type int
+     * @return where the player stops, from if it can't move, type int
+     */
+    static int stop(int from, int limit, int hit, int goal) {
+        if(limit == from){
+            return from;
+        }
+        boolean forward = limit > from;
+        int stop = hit == NOT_FOUND ? limit : hit + (forward ? -1 : 1);
+        // The player stops on the goal if it passes over it
+        if(goal != NOT_FOUND && (forward ? goal > from && goal < stop
+                    : goal < from && goal > stop)){
+            stop = goal;
+        }
+        return stop;
+    }
+
+    /**
+     * Where a slide along a line stops, scanning the line's bits for the
+     * first blocked cell.
+     * @param obstacles the obstacles, or null if limit already stops before
+     * them, type long[]
+     * @param trails the trails, laid out like obstacles, type long[]
+     * @param lineStart the bit of the line's cell 0, type int
+     * @param from,limit,goal as in stop(int, int, int, int), type int
+     * @return where the player stops, from if it can't move, type int
+     */
+    static int stop(long[] obstacles, long[] trails, int lineStart,
+            int from, int limit, int goal) {
+        if(limit == from){
+            return from;
+        }
+        int low = lineStart + Math.min(from + 1, limit);
+        int high = lineStart + Math.max(from - 1, limit);
+        int hit;
+        if(limit > from){
+            hit = obstacles == null
+                ? BitboardGameState.nextSetBit(trails, low, high)
+                : BitboardGameState.nextSetBit(obstacles, trails, low, high);
+        }
+        else{
+            hit = obstacles == null
+                ? BitboardGameState.prevSetBit(trails, low, high)
+                : BitboardGameState.prevSetBit(obstacles, trails, low, high);
+        }
+        return stop(from, limit, hit < 0 ? NOT_FOUND : hit - lineStart, goal);
+    }
+
+    /**
+     * The first cell of the trail a slide from one cell to another leaves.
+     * Works for undoing the slide too.
+     * @param from,stop where the slide started and ended, type int
+     * @return the lower end of the run, type int
+     */
+    static int runFirst(int from, int stop) {
+        return Math.min(from, stop + 1);
+    }
+
+    /**
+     * The last cell of the trail a slide from one cell to another leaves.
+     * @param from,stop where the slide started and ended, type int
+     * @return the higher end of the run, both ends included, type int
+     */
+    static int runLast(int from, int stop) {
+        return Math.max(from, stop - 1);
+    }
+
+    /**
+     * Sets or clears the trail on a run of a line, in the bitset laid out
+     * along the line and in the one laid out across it.
+     * @param line the trails laid out line by line, type long[]
+     * @param cross the same trails laid out the other way, type long[]
+     * @param lineStart the bit of the line's cell 0 in line, type int
+     * @param crossStart,crossStride the bit of the line's cell 0 in cross,
+     * and how far apart its cells are there, type int
+     * @param first,last the run, both included, type int
+     * @param set true to lay the trail, false to take it away, type boolean
+     * @return none
+     */
+    static void layTrail(long[] line, long[] cross, int lineStart,
+            int crossStart, int crossStride, int first, int last,
+            boolean set) {
+        if(set){
+            BitboardGameState.setRange(line, lineStart + first,
+                    lineStart + last);
+        }
+        else{
+            BitboardGameState.clearRange(line, lineStart + first,
+                    lineStart + last);
+        }
+        for(int cell = first; cell <= last; cell++){
+            int index = crossStart + cell * crossStride;
+            if(set){
+                BitboardGameState.setBit(cross, index);
+            }
+            else{
+                BitboardGameState.clearBit(cross, index);
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SlideTable.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file precomputes, for every cell and direction, where a slide would
+ stop if the board had no trails: before the next obstacle, on the goal,
+ or at the edge. Obstacles and the goal never move, so the table is built
+ once per level and shared by every copy of its states. A move then only
+ has to look for a trail between the player and that stop, one bitset
+ instead of two, never past it.
+
+ Only the solver uses it, where every node of a search and every solve of
+ the same level share one table out of a small cache. A single game moves
+ too rarely for the table to be worth its memory.
+
+ Trails are left out on purpose. A trail laid across a row changes the
+ stops of every open cell above and below it, so keeping them in the
+ table would cost more per move than it saves.
+
+ The table also keeps its own Zobrist keys and running xors of them along
+ every row and column, so the hash of a whole slide is two lookups instead
+ of one per cell.
+ */
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Per level table of obstacle stops and trail key runs. Never changes once
+ * built.
+ */
+public class SlideTable {
+    static final int DIRECTIONS = Direction.values().length;
+    // Bigger levels scan instead, the table takes 40 bytes a cell with its
+    // keys and runs
+    static final int MAX_CELLS = 1 << 20;
+    // Stops are kept as chars, so no row or column may be longer than this
+    static final int MAX_SIDE = Character.MAX_VALUE + 1;
+    // Cells of all the cached tables together, so about 80 MB at most
+    static final long MAX_CACHED_CELLS = 2L * MAX_CELLS;
+
+    // Tables of recently solved levels by levelHash(), least recently used
+    // first
+    private static final LinkedHashMap<Long, SlideTable> cache =
+        new LinkedHashMap<Long, SlideTable>(16, 0.75f, true);
+    private static long cachedCells;
+
+    final int height, width;
+    final int goalRow, goalCol;
+    // The level's obstacles, row major, shared with its states
+    final long[] obstacles;
+    // stops[cell * DIRECTIONS + direction.ordinal()], cell in row major
+    // order, is the row (UP, DOWN) or column (LEFT, RIGHT) a slide stops
+    // at, ignoring trails
+    final char[] stops;
+    // The keys the runs were made from, every state using the table has to
+    // be hashed with them
+    final ZobristKeys keys;
+    // xor of the trail keys from the start of a row up to each cell, row
+    // major, and from the top of a column down to each cell, column major
+    final long[] rowKeys;
+    final long[] colKeys;
+
+    /**
+     * Gets the table of a level from the cache, building it if the level
+     * wasn't solved recently.
+     * @param state any state of the level, type BitboardGameState
+     * @return the table, or null if the level is too big for one, type
+     * SlideTable
+     */
+    static SlideTable forLevel(BitboardGameState state) {
+        if(!fits(state)){
+            return null;
+        }
+        long levelHash = levelHash(state);
+        synchronized (cache) {
+            SlideTable table = cache.get(levelHash);
+            if(table != null && table.isFor(state)){
+                return table;
+            }
+        }
+        // Built outside the lock, two solves of a new level may both build
+        // one but only the last is kept
+        SlideTable table = new SlideTable(state,
+                new ZobristKeys(state.height * state.width));
+        synchronized (cache) {
+            SlideTable old = cache.put(levelHash, table);
+            if(old != null){
+                cachedCells -= old.stops.length / DIRECTIONS;
+            }
+            cachedCells += table.stops.length / DIRECTIONS;
+            Iterator<SlideTable> eldest = cache.values().iterator();
+            while(cachedCells > MAX_CACHED_CELLS){
+                cachedCells -= eldest.next().stops.length / DIRECTIONS;
+                eldest.remove();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Whether a level is small enough to get a table.
+     * @param state type BitboardGameState
+     * @return true if it is, type boolean
+     */
+    static boolean fits(BitboardGameState state) {
+        return (long) state.height * state.width <= MAX_CELLS
+            && state.height <= MAX_SIDE && state.width <= MAX_SIDE;
+    }
+
+    /**
+     * Hashes what the table is made from: the size, the goal and the
+     * obstacles, but not the player or the trails.
+     * @param state type BitboardGameState
+     * @return the hash, type long
+     */
+    static long levelHash(BitboardGameState state) {
+        long result = BitboardGameState.mix(0, state.height);
+        result = BitboardGameState.mix(result, state.width);
+        result = BitboardGameState.mix(result,
+                state.goalRow * state.width + state.goalCol);
+        for(long word : state.obstacles){
+            result = BitboardGameState.mix(result, word);
+        }
+        return result;
+    }
+
+    /**
+     * Whether this table was built for the level of a state, in case two
+     * levels have the same levelHash().
+     * @param state type BitboardGameState
+     * @return true if it was, type boolean
+     */
+    boolean isFor(BitboardGameState state) {
+        return height == state.height && width == state.width
+            && goalRow == state.goalRow && goalCol == state.goalCol
+            && (obstacles == state.obstacles
+                || Arrays.equals(obstacles, state.obstacles));
+    }
+
+    /**
+     * Constructor that builds the table for a level.
+     * @param state any state of the level, type BitboardGameState
+     * @param keys the keys to make the runs from, type ZobristKeys
+     * @return none, constructor method
+     */
+    SlideTable(BitboardGameState state, ZobristKeys keys) {
+        this.height = state.height;
+        this.width = state.width;
+        this.goalRow = state.goalRow;
+        this.goalCol = state.goalCol;
+        this.obstacles = state.obstacles;
+        this.stops = new char[height * width * DIRECTIONS];
+        this.keys = keys;
+        for(int row = 0; row < height; row++){
+            buildRow(state, row);
+        }
+        for(int col = 0; col < width; col++){
+            buildCol(state, col);
+        }
+        rowKeys = new long[height * width];
+        colKeys = new long[height * width];
+        for(int row = 0; row < height; row++){
+            long run = 0;
+            for(int col = 0; col < width; col++){
+                run ^= keys.trailKeys[row * width + col];
+                rowKeys[row * width + col] = run;
+            }
+        }
+        for(int col = 0; col < width; col++){
+            long run = 0;
+            for(int row = 0; row < height; row++){
+                run ^= keys.trailKeys[row * width + col];
+                colKeys[col * height + row] = run;
+            }
+        }
+    }
+
+    /**
+     * Fills in the LEFT and RIGHT stops of a row with one sweep each way.
+     * @param state type BitboardGameState
+     * @param row type int
+     * @return none
+     */
+    private void buildRow(BitboardGameState state, int row) {
+        int right = Direction.RIGHT.ordinal();
+        int left = Direction.LEFT.ordinal();
+        // Where a slide from the cell being looked at would stop
+        int limit = width - 1;
+        for(int col = width - 1; col >= 0; col--){
+            stops[(row * width + col) * DIRECTIONS + right] = (char) limit;
+            if(state.isObstacle(row, col)){
+                limit = col - 1;
+            }
+            else if(row == state.goalRow && col == state.goalCol){
+                limit = col;
+            }
+        }
+        limit = 0;
+        for(int col = 0; col < width; col++){
+            stops[(row * width + col) * DIRECTIONS + left] = (char) limit;
+            if(state.isObstacle(row, col)){
+                limit = col + 1;
+            }
+            else if(row == state.goalRow && col == state.goalCol){
+                limit = col;
+            }
+        }
+    }
+
+    /**
+     * Fills in the UP and DOWN stops of a column with one sweep each way.
+     * @param state type BitboardGameState
+     * @param col type int
+     * @return none
+     */
+    private void buildCol(BitboardGameState state, int col) {
+        int down = Direction.DOWN.ordinal();
+        int up = Direction.UP.ordinal();
+        int limit = height - 1;
+        for(int row = height - 1; row >= 0; row--){
+            stops[(row * width + col) * DIRECTIONS + down] = (char) limit;
+            if(state.isObstacle(row, col)){
+                limit = row - 1;
+            }
+            else if(row == state.goalRow && col == state.goalCol){
+                limit = row;
+            }
+        }
+        limit = 0;
+        for(int row = 0; row < height; row++){
+            stops[(row * width + col) * DIRECTIONS + up] = (char) limit;
+            if(state.isObstacle(row, col)){
+                limit = row + 1;
+            }
+            else if(row == state.goalRow && col == state.goalCol){
+                limit = row;
+            }
+        }
+    }
+
+    /**
+     * Where a slide stops if no trail is in the way.
+     * @param row,col where the slide starts, type int
+     * @param direction type Direction
+     * @return the row for UP and DOWN, the column for LEFT and RIGHT, type
+     * int
+     */
+    int stop(int row, int col, Direction direction) {
+        return stops[(row * width + col) * DIRECTIONS + direction.ordinal()];
+    }
+
+    /**
+     * The xor of the trail keys of a run of cells in a row.
+     * @param row type int
+     * @param first,last the columns, both included, type int
+     * @return the xor, type long
+     */
+    long rowRunKey(int row, int first, int last) {
+        long before = first == 0 ? 0 : rowKeys[row * width + first - 1];
+        return rowKeys[row * width + last] ^ before;
+    }
+
+    /**
+     * The xor of the trail keys of a run of cells in a column.
+     * @param col type int
+     * @param first,last the rows, both included, type int
+     * @return the xor, type long
+     */
+    long colRunKey(int col, int first, int last) {
+        long before = first == 0 ? 0 : colKeys[col * height + first - 1];
+        return colKeys[col * height + last] ^ before;
+    }
+}
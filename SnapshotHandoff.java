@@ -0,0 +1,135 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SnapshotHandoff.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file hands the game from the logic thread to the JavaFX thread. After
+ every change the logic thread publishes a snapshot of what changed, and
+ the FX thread takes whatever is waiting once per pulse. Neither side ever
+ waits for the other: the handoff is one AtomicReference, and a snapshot
+ the FX thread didn't get to yet is merged into the next one, so a slow
+ frame sees every change since the last frame at once.
+ */
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock free handoff of game snapshots from one writer thread to one
+ * reader thread.
+ */
+public class SnapshotHandoff {
+    static final int[] NO_CELLS = new int[0];
+    static final boolean[] NO_TRAILS = new boolean[0];
+
+    // The newest snapshot the reader has not taken yet, or null
+    final AtomicReference<Snapshot> pending = new AtomicReference<Snapshot>();
+
+    /**
+     * What changed in the game since the last snapshot that was taken.
+     * Never changed once published.
+     */
+    static class Snapshot {
+        final int level;                // levels won before this one
+        final int version;              // BitboardStreamline.version
+        final int playerRow, playerCol;
+        final boolean levelPassed;
+        final boolean lastLevel;        // passed, and no level comes next
+        // The whole state to show first, a copy only this snapshot has, or
+        // null if cells are changes to what is on screen already
+        final BitboardGameState start;
+        final GridBuffer grid;          // shapes already built for start
+        final int[] cells;              // cells whose trail changed
+        final boolean[] trails;         // whether each of them is a trail
+
+        Snapshot(int level, BitboardStreamline game, boolean lastLevel,
+                BitboardGameState start, GridBuffer grid, int[] cells,
+                boolean[] trails) {
+            this.level = level;
+            this.version = game.version;
+            this.playerRow = game.currentState.playerRow;
+            this.playerCol = game.currentState.playerCol;
+            this.levelPassed = game.currentState.levelPassed;
+            this.lastLevel = lastLevel;
+            this.start = start;
+            this.grid = grid;
+            this.cells = cells;
+            this.trails = trails;
+        }
+    }
+
+    /**
+     * Publishes the game as it is after its last move or undo. Only to be
+     * called by the writer thread.
+     * @param level levels won before this one, type int
+     * @param game the game, which only the writer thread changes, type
+     * BitboardStreamline
+     * @param lastLevel true if the level is passed and no level comes
+     * next, type boolean
+     * @return none
+     */
+    public void publish(int level, BitboardStreamline game,
+            boolean lastLevel) {
+        Snapshot previous = pending.getAndSet(null);
+        int count = game.getChangedCount();
+        if(count == BitboardStreamline.ALL_CELLS_CHANGED){
+            publishWhole(level, game, lastLevel, null);
+            return;
+        }
+        int previousCount = previous == null ? 0 : previous.cells.length;
+        // Past this many cells it is cheaper to send the whole state
+        if(previousCount + count > game.currentState.height
+                * game.currentState.width){
+            publishWhole(level, game, lastLevel, null);
+            return;
+        }
+        int[] cells = new int[previousCount + count];
+        boolean[] trails = new boolean[cells.length];
+        if(previous != null){
+            System.arraycopy(previous.cells, 0, cells, 0, previousCount);
+        }
+        for(int i = 0; i < count; i++){
+            cells[previousCount + i] = game.getChangedCell(i);
+        }
+        // Every cell gets its trail as it is now, older changes included
+        int width = game.currentState.width;
+        for(int i = 0; i < cells.length; i++){
+            trails[i] = game.currentState.isTrail(cells[i] / width,
+                    cells[i] % width);
+        }
+        pending.set(new Snapshot(level, game, lastLevel,
+                    previous == null ? null : previous.start,
+                    previous == null ? null : previous.grid, cells, trails));
+    }
+
+    /**
+     * Publishes the whole state of the game, dropping any snapshot not
+     * taken yet. Used for a new level, and when too much changed to list.
+     * Only to be called by the writer thread.
+     * @param level levels won before this one, type int
+     * @param game type BitboardStreamline
+     * @param lastLevel true if the level is passed and no level comes
+     * next, type boolean
+     * @param grid shapes built for the game as it is now, or null, type
+     * GridBuffer
+     * @return none
+     */
+    public void publishWhole(int level, BitboardStreamline game,
+            boolean lastLevel, GridBuffer grid) {
+        pending.set(new Snapshot(level, game, lastLevel,
+                    new BitboardGameState(game.currentState), grid, NO_CELLS,
+                    NO_TRAILS));
+    }
+
+    /**
+     * Takes the waiting snapshot, if there is one. Only to be called by
+     * the reader thread.
+     * @param none
+     * @return the snapshot, or null if nothing changed, type Snapshot
+     */
+    public Snapshot take() {
+        return pending.getAndSet(null);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SolutionCache.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file remembers what the solver found out about levels, keyed by
+ their canonical hash, so a level that was solved before, or any rotation
+ or mirror image of it, is never solved again. Solutions are kept turned
+ to the canonical form of their level and turned back for whichever
+ version of the level asks. The least recently used results are dropped
+ once the cache goes over its memory limit, and the cache can be saved to
+ a file and loaded again in a later run.
+
+ File layout, all big endian:
+   header  magic, version, entry count                  (3 ints)
+   entries key (long), outcome (byte), states seen, move count (ints),
+           one Direction ordinal per move (bytes)
+ Entries are written least recently used first, so loading keeps their
+ order.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An LRU cache of solver results shared by all symmetric copies of a
+ * level. All methods may be called from any thread.
+ */
+public class SolutionCache {
+    static final int MAGIC = 0x534C5343;            // "SLSC"
+    static final int VERSION = 1;
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+    // Rough memory used by an entry besides its moves
+    static final int ENTRY_OVERHEAD = 96;
+    static final String TEMP_SUFFIX = ".tmp";
+
+    static final byte SOLVED = 0;
+    static final byte UNSOLVABLE = 1;
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    final long maxBytes;
+    long bytes;                         // memory used by entries
+    long hits, misses;
+    // In access order, least recently used first
+    final LinkedHashMap<Long, Entry> entries =
+        new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+
+    /**
+     * What the solver found out about one canonical level.
+     */
+    static class Entry {
+        final byte outcome;
+        final int statesSeen;
+        final byte[] moves;             // Direction ordinals, canonical
+
+        Entry(byte outcome, int statesSeen, byte[] moves) {
+            this.outcome = outcome;
+            this.statesSeen = statesSeen;
+            this.moves = moves;
+        }
+
+        long size() {
+            return ENTRY_OVERHEAD + moves.length;
+        }
+    }
+
+    /**
+     * Constructor that makes an empty cache with the default memory limit.
+     * @param none
+     * @return none, constructor method
+     */
+    public SolutionCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructor that makes an empty cache.
+     * @param maxBytes about how much memory entries may use, type long
+     * @return none, constructor method
+     */
+    public SolutionCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Solves a level, or any rotation or mirror image of it, only if it
+     * isn't already in the cache. Searches that gave up are not cached,
+     * since a solver with a higher limit might finish them.
+     * @param state type BitboardGameState
+     * @param solver used on a miss, type StreamlineSolver
+     * @return the solution for state as it is turned, type
+     * StreamlineSolver.Solution
+     */
+    public StreamlineSolver.Solution solve(BitboardGameState state,
+            StreamlineSolver solver) {
+        int symmetry = LevelSymmetry.canonicalSymmetry(state);
+        long key = LevelSymmetry.hash(state, symmetry, new long[
+                BitboardGameState.wordCount(state.height * state.width)]);
+        Entry entry = get(key);
+        if(entry != null){
+            return toSolution(entry, symmetry);
+        }
+        StreamlineSolver.Solution solution = solver.solve(state);
+        if(solution.isSolved()){
+            Direction[] moves = solution.getMoves();
+            byte[] canonical = new byte[moves.length];
+            for(int i = 0; i < moves.length; i++){
+                canonical[i] = (byte) LevelSymmetry.mapDirection(symmetry,
+                        moves[i]).ordinal();
+            }
+            put(key, new Entry(SOLVED, solution.getStatesSeen(), canonical));
+        }
+        else if(solution.isUnsolvable()){
+            put(key, new Entry(UNSOLVABLE, solution.getStatesSeen(),
+                        new byte[0]));
+        }
+        return solution;
+    }
+
+    private static StreamlineSolver.Solution toSolution(Entry entry,
+            int symmetry) {
+        if(entry.outcome == UNSOLVABLE){
+            return StreamlineSolver.Solution.unsolvable(entry.statesSeen);
+        }
+        int back = LevelSymmetry.inverse(symmetry);
+        Direction[] moves = new Direction[entry.moves.length];
+        for(int i = 0; i < moves.length; i++){
+            moves[i] = LevelSymmetry.mapDirection(back,
+                    DIRECTIONS[entry.moves[i]]);
+        }
+        return new StreamlineSolver.Solution(moves, true, entry.statesSeen);
+    }
+
+    /**
+     * Finds an entry and marks it as just used.
+     * @param key a canonical hash, type long
+     * @return the entry, or null if there is none, type Entry
+     */
+    synchronized Entry get(long key) {
+        Entry entry = entries.get(key);
+        if(entry == null){
+            misses++;
+        }
+        else{
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Adds an entry, dropping the least recently used ones if the cache
+     * goes over its memory limit.
+     * @param key a canonical hash, type long
+     * @param entry type Entry
+     * @return none
+     */
+    synchronized void put(long key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if(old != null){
+            bytes -= old.size();
+        }
+        bytes += entry.size();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while(bytes > maxBytes && eldest.hasNext()){
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Getter for the number of cached levels.
+     * @param none
+     * @return the count, type int
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Describes how well the cache is doing.
+     * @param none
+     * @return the description, type String
+     */
+    public synchronized String describe() {
+        return String.format("%d hits, %d misses, %d levels cached in " +
+                "about %d KB", hits, misses, entries.size(), bytes >> 10);
+    }
+
+    //-----------------------------------------------------------------------
+    //                            Persistence
+    //-----------------------------------------------------------------------
+
+    /**
+     * Adds the entries of a saved cache, as least recently used.
+     * @param file type File
+     * @return none
+     * @throws IOException if the file is not a solution cache or is
+     * damaged
+     */
+    public void load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC){
+                throw new IOException(file + " is not a solution cache");
+            }
+            int version = in.readInt();
+            if(version != VERSION){
+                throw new IOException(file + " has unsupported version "
+                        + version);
+            }
+            int count = in.readInt();
+            for(int i = 0; i < count; i++){
+                long key = in.readLong();
+                byte outcome = in.readByte();
+                int statesSeen = in.readInt();
+                int length = in.readInt();
+                if(length < 0 || (outcome != SOLVED && outcome != UNSOLVABLE)){
+                    throw new IOException(file + " is damaged");
+                }
+                byte[] moves = new byte[length];
+                in.readFully(moves);
+                for(byte move : moves){
+                    if(move < 0 || move >= DIRECTIONS.length){
+                        throw new IOException(file + " is damaged");
+                    }
+                }
+                put(key, new Entry(outcome, statesSeen, moves));
+            }
+        }
+    }
+
+    /**
+     * Saves the cache. It is written to a temporary file first, so a crash
+     * never leaves a half written cache behind.
+     * @param file type File
+     * @return none
+     * @throws IOException if the file can't be written
+     */
+    public synchronized void save(File file) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for(Map.Entry<Long, Entry> entry : entries.entrySet()){
+                out.writeLong(entry.getKey());
+                out.writeByte(entry.getValue().outcome);
+                out.writeInt(entry.getValue().statesSeen);
+                out.writeInt(entry.getValue().moves.length);
+                out.write(entry.getValue().moves);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SparseGui.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file plays one very large level in a window that scrolls with the
+ player. The level is kept in a SparseStreamline and drawn by a
+ ChunkViewport, so neither the game nor the window needs memory for the
+ whole board. It is started by GuiStreamline --sparse, and takes its keys
+ and window setup from there.
+ */
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.event.EventHandler;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+
+/**
+ * A window for one huge level that follows the player.
+ */
+public class SparseGui extends Application {
+    static final double SCENE_WIDTH = 800;
+    static final double SCENE_HEIGHT = 600;
+    static final double SQUARE_SIZE = 24;
+    static final String TITLE = "CSE 8b Streamline GUI - large map";
+    static final String USAGE =
+        "Usage: \n" +
+        "> java GuiStreamline --sparse <filename>   - to play a very large " +
+        "level from a file\n" +
+        "> java GuiStreamline --sparse <height> <width> <density> [seed]\n" +
+        "                                           - to play a very large " +
+        "random level\n";
+    static final int FILE_ARGS = 1;
+    static final int RANDOM_ARGS = 3;
+    static final int SEED_INDEX = 3;
+
+    SparseStreamline game;
+    ChunkViewport viewport;
+
+    /**
+     * Makes the level from the command line arguments.
+     * @param args everything after --sparse, type List<String>
+     * @return the level, type SparseStreamline
+     * @throws Exception if the level can't be read or the arguments are
+     * wrong
+     */
+    static SparseStreamline loadLevel(List<String> args) throws Exception {
+        if(args.size() == FILE_ARGS){
+            return LevelFormat.readSparse(new File(args.get(0)));
+        }
+        if(args.size() == RANDOM_ARGS || args.size() == RANDOM_ARGS + 1){
+            Random random = args.size() > SEED_INDEX
+                ? new Random(Long.parseLong(args.get(SEED_INDEX)))
+                : new Random();
+            return SparseStreamline.random(Integer.parseInt(args.get(0)),
+                    Integer.parseInt(args.get(1)),
+                    Double.parseDouble(args.get(2)), random);
+        }
+        throw new IllegalArgumentException(USAGE);
+    }
+
+    /**
+     * Moves, undoes or redoes for a key, with the same keys as
+     * GuiStreamline. Hints, saves and stats need a whole board, so a large
+     * map has none.
+     * @param keyCode type KeyCode
+     * @return none
+     */
+    void handleKeyCode(KeyCode keyCode) {
+        Direction direction = GuiStreamline.directionOf(keyCode);
+        if(direction != null){
+            game.recordAndMove(direction);
+        }
+        else if(keyCode == KeyCode.U){
+            game.undo();
+        }
+        else if(keyCode == KeyCode.R){
+            game.redo();
+        }
+        else if(keyCode == KeyCode.Q){
+            Platform.exit();
+            return;
+        }
+        else{
+            System.out.println("Possible commands:\n w - up\n " +
+                    "a - left\n s - down\n d - right\n u - undo\n " +
+                    "r - redo\n q - quit");
+            return;
+        }
+        viewport.onMoved();
+        if(game.levelPassed){
+            System.out.println("Level passed!");
+        }
+    }
+
+    /**
+     * Handles key presses
+     */
+    class MyKeyHandler implements EventHandler<KeyEvent> {
+        @Override
+        public void handle(KeyEvent e) {
+            handleKeyCode(e.getCode());
+        }
+    }
+
+    /**
+     * Loads the level and shows the window.
+     * @param primaryStage type Stage
+     * @return none
+     */
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        game = loadLevel(getParameters().getRaw());
+        viewport = new ChunkViewport(game, SQUARE_SIZE);
+        Scene scene = new Scene(new Group(viewport), SCENE_WIDTH,
+                SCENE_HEIGHT, Color.GAINSBORO);
+        scene.setOnKeyPressed(new MyKeyHandler());
+        viewport.setViewSize(SCENE_WIDTH, SCENE_HEIGHT);
+        GuiStreamline.showStage(primaryStage, scene, TITLE,
+                () -> viewport.setViewSize(scene.getWidth(),
+                    scene.getHeight()));
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: SparseStreamline.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file runs a level of Streamline on a ChunkedBoard, for maps far too
+ big for a char[][] or a BitboardGameState. Moves slide and leave trails
+ the same way, and the history remembers each slide as a packed move, so
+ nothing here grows with the area of the board.
+ */
+
+import java.util.Random;
+
+/**
+ * A Streamline level on a chunked sparse board.
+ */
+public class SparseStreamline {
+    final int height, width;
+    final ChunkedBoard board;
+    int playerRow, playerCol;
+    final int goalRow, goalCol;
+    boolean levelPassed;
+
+    MoveHistory history = new MoveHistory();  // for undo
+
+    // The run of cells whose trail the last move or undo changed, both
+    // ends included, if changed is true
+    int changedFromRow, changedFromCol, changedToRow, changedToCol;
+    boolean changed;
+
+    /**
+     * Constructor that makes a level with nothing on the board yet.
+     * @param height,width the board size, type int
+     * @param playerRow,playerCol,goalRow,goalCol type int
+     * @return none, constructor method
+     */
+    public SparseStreamline(int height, int width, int playerRow,
+            int playerCol, int goalRow, int goalCol) {
+        if((long) height * width > LevelFormat.MAX_SPARSE_CELLS){
+            throw new IllegalArgumentException("board of " + height + "x"
+                    + width + " is too big");
+        }
+        this.height = height;
+        this.width = width;
+        this.board = new ChunkedBoard(height, width);
+        this.playerRow = playerRow;
+        this.playerCol = playerCol;
+        this.goalRow = goalRow;
+        this.goalCol = goalCol;
+        this.levelPassed = playerRow == goalRow && playerCol == goalCol;
+    }
+
+    /**
+     * Makes a random level with the player and goal on different cells by
+     * dropping obstacles on random cells, so it takes time for the
+     * obstacles, not for every cell of the board.
+     * @param height,width the board size, type int
+     * @param density about what fraction of cells are obstacles, type double
+     * @param random type Random
+     * @return the level, type SparseStreamline
+     */
+    public static SparseStreamline random(int height, int width,
+            double density, Random random) {
+        int playerRow = random.nextInt(height);
+        int playerCol = random.nextInt(width);
+        int goalRow = playerRow;
+        int goalCol = playerCol;
+        while(goalRow == playerRow && goalCol == playerCol
+                && (long) height * width > 1){
+            goalRow = random.nextInt(height);
+            goalCol = random.nextInt(width);
+        }
+        SparseStreamline level = new SparseStreamline(height, width,
+                playerRow, playerCol, goalRow, goalCol);
+        long obstacles = Math.round((double) height * width * density);
+        for(long i = 0; i < obstacles; i++){
+            int row = random.nextInt(height);
+            int col = random.nextInt(width);
+            if((row != level.playerRow || col != level.playerCol)
+                    && (row != level.goalRow || col != level.goalCol)){
+                level.board.setObstacle(row, col);
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Moves the player and remembers the move so it can be undone.
+     * @param direction type Direction
+     * @return none
+     */
+    void recordAndMove(Direction direction) {
+        changed = false;
+        if(levelPassed){
+            return;
+        }
+        int fromRow = playerRow;
+        int fromCol = playerCol;
+        boolean startHadTrail = board.isTrail(fromRow, fromCol);
+        if(!slide(direction)){
+            return;
+        }
+        int length = Math.abs(playerRow - fromRow)
+            + Math.abs(playerCol - fromCol);
+        history.record(MoveHistory.pack(direction, fromRow * width + fromCol,
+                    length, startHadTrail));
+    }
+
+    /**
+     * Slides like BitboardGameState.move(): until an obstacle, a trail or
+     * the edge, or onto the goal, trailing every cell left behind.
+     * @param direction type Direction
+     * @return true if the player moved, type boolean
+     */
+    private boolean slide(Direction direction) {
+        int stopRow = playerRow;
+        int stopCol = playerCol;
+        switch (direction) {
+            case RIGHT:
+                stopCol = rowStop(width - 1);
+                break;
+            case LEFT:
+                stopCol = rowStop(0);
+                break;
+            case DOWN:
+                stopRow = colStop(height - 1);
+                break;
+            case UP:
+                stopRow = colStop(0);
+                break;
+            default:
+                return false;
+        }
+        if(stopRow == playerRow && stopCol == playerCol){
+            return false;
+        }
+        // Trail every cell from the start up to, but not including, the stop
+        setChanged(playerRow, playerCol, stopRow, stopCol);
+        board.setTrails(changedFromRow, changedFromCol, changedToRow,
+                changedToCol, true);
+        playerRow = stopRow;
+        playerCol = stopCol;
+        levelPassed = playerRow == goalRow && playerCol == goalCol;
+        return true;
+    }
+
+    /**
+     * Where a slide along the player's row stops.
+     * @param edge the last column that way, type int
+     * @return the column, type int
+     */
+    private int rowStop(int edge) {
+        int hit = SlideRules.NOT_FOUND;
+        if(edge > playerCol){
+            hit = board.nextBlockedCol(playerRow, playerCol + 1, edge);
+        }
+        else if(edge < playerCol){
+            hit = board.prevBlockedCol(playerRow, edge, playerCol - 1);
+        }
+        return SlideRules.stop(playerCol, edge, hit,
+                goalRow == playerRow ? goalCol : SlideRules.NOT_FOUND);
+    }
+
+    /**
+     * Where a slide along the player's column stops.
+     * @param edge the last row that way, type int
+     * @return the row, type int
+     */
+    private int colStop(int edge) {
+        int hit = SlideRules.NOT_FOUND;
+        if(edge > playerRow){
+            hit = board.nextBlockedRow(playerCol, playerRow + 1, edge);
+        }
+        else if(edge < playerRow){
+            hit = board.prevBlockedRow(playerCol, edge, playerRow - 1);
+        }
+        return SlideRules.stop(playerRow, edge, hit,
+                goalCol == playerCol ? goalRow : SlideRules.NOT_FOUND);
+    }
+
+    /**
+     * Reverts the last recorded move, if there is one.
+     * @param none
+     * @return none
+     */
+    void undo() {
+        changed = false;
+        long move = history.undo();
+        if(move == MoveHistory.NO_MOVE){
+            return;
+        }
+        int startCell = MoveHistory.startCell(move);
+        int startRow = startCell / width;
+        int startCol = startCell % width;
+        setChanged(startRow, startCol, playerRow, playerCol);
+        board.setTrails(changedFromRow, changedFromCol, changedToRow,
+                changedToCol, false);
+        if(MoveHistory.startHadTrail(move)){
+            board.setTrail(startRow, startCol);
+        }
+        playerRow = startRow;
+        playerCol = startCol;
+        levelPassed = false;
+    }
+
+    /**
+     * Makes the last undone move again, if there is one.
+     * @param none
+     * @return none
+     */
+    void redo() {
+        changed = false;
+        long move = history.redo();
+        if(move != MoveHistory.NO_MOVE){
+            slide(MoveHistory.direction(move));
+        }
+    }
+
+    /**
+     * Remembers the cells of a slide as changed: from its start up to, but
+     * not including, where it ended.
+     * @param fromRow,fromCol where the slide started, type int
+     * @param toRow,toCol where the slide ended, type int
+     * @return none
+     */
+    private void setChanged(int fromRow, int fromCol, int toRow,
+            int toCol) {
+        changedFromRow = fromRow;
+        changedFromCol = fromCol;
+        changedToRow = toRow;
+        changedToCol = toCol;
+        if(fromRow == toRow){
+            changedFromCol = SlideRules.runFirst(fromCol, toCol);
+            changedToCol = SlideRules.runLast(fromCol, toCol);
+        }
+        else{
+            changedFromRow = SlideRules.runFirst(fromRow, toRow);
+            changedToRow = SlideRules.runLast(fromRow, toRow);
+        }
+        changed = true;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: StreamlineBenchmark.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file times the hot paths of the game without opening a window:
+ moving and undoing in the engine, laying out a level's shapes the way
+ resetGrid() and a window resize do, placing a cell with BoardLayout, and
+ loading levels from text files and packs. The real game classes are
+ called; nothing they do is copied in here.
+ Every benchmark runs over several board sizes and both sparse and dense
+ obstacle layouts, and the results are written as JSON so runs from
+ different builds can be compared.
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A small self contained benchmark harness. Each benchmark is warmed up,
+ * then timed over several fixed length iterations, and reported as the
+ * average time per operation.
+ */
+public class StreamlineBenchmark {
+    static final String USAGE =
+        "Usage: \n" +
+        "> java StreamlineBenchmark [output.json] [quick]   - to run all " +
+        "benchmarks and write the results as JSON\n";
+    static final String DEFAULT_OUTPUT = "benchmark-results.json";
+    static final String QUICK = "quick";
+
+    static final int[][] SIZES = {{6, 5}, {30, 30}, {100, 100}, {500, 500}};
+    static final String[] LAYOUTS = {"random", "dense"};
+    static final double[] DENSITIES = {0.1, 0.35};
+
+    static final int WARMUP_ITERATIONS = 3;
+    static final int MEASURE_ITERATIONS = 5;
+    static final long ITERATION_NANOS = 200000000L;         // 200 ms
+    static final long QUICK_ITERATION_NANOS = 20000000L;    // 20 ms
+    static final int BATCH = 64;        // operations between clock reads
+    static final long SEED = 8;
+    static final double SCENE_WIDTH = GuiStreamline.SCENE_WIDTH;
+    static final double SCENE_HEIGHT = GuiStreamline.SCENE_HEIGHT;
+    // The other scene width the relayout benchmark switches to
+    static final double RESIZED_WIDTH = SCENE_WIDTH * 1.5;
+    static final int LEVELS_ON_DISK = 16;
+
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    // Results are added here so the JIT can't throw the work away
+    static volatile long sink;
+
+    final long iterationNanos;
+    final List<String> results = new ArrayList<String>();
+
+    StreamlineBenchmark(long iterationNanos) {
+        this.iterationNanos = iterationNanos;
+    }
+
+    /**
+     * One operation of a benchmark. setup() runs before every batch of
+     * operations, outside the timing, so a benchmark can put its state
+     * back or pick its inputs without that work being counted.
+     */
+    abstract static class Operation {
+        void setup() {
+        }
+
+        abstract long run();
+    }
+
+    //-----------------------------------------------------------------------
+    //                           The benchmarks
+    //-----------------------------------------------------------------------
+
+    /**
+     * Runs every benchmark for one board size and layout.
+     * @param height,width the board size, type int
+     * @param layout name of the layout, type String
+     * @param density obstacle density of the layout, type double
+     * @return none, adds to results
+     * @throws IOException if the level files can't be written
+     */
+    void runAll(int height, int width, String layout, double density)
+            throws IOException {
+        final BitboardGameState level = BitboardGameState.random(height,
+                width, density, new Random(SEED));
+        final Random random = new Random(SEED);
+
+        // Random moves from the start of the level. The directions are
+        // picked, and the engine rewound, before each batch is timed
+        final BitboardStreamline moving =
+            new BitboardStreamline(new BitboardGameState(level));
+        final Direction[] moves = new Direction[BATCH];
+        measure("recordAndMove", height, width, layout, new Operation() {
+            int next;
+            void setup() {
+                planMoves(moving, random, moves);
+                next = 0;
+            }
+            long run() {
+                moving.recordAndMove(moves[next++]);
+                return moving.currentState.playerCol;
+            }
+        });
+
+        // A move followed by undoing it, so the board stays the same
+        final BitboardStreamline undoing =
+            new BitboardStreamline(new BitboardGameState(level));
+        final Direction[] undone = new Direction[BATCH];
+        measure("recordAndMove+undo", height, width, layout, new Operation() {
+            int next;
+            void setup() {
+                for(int i = 0; i < undone.length; i++){
+                    undone[i] = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+                }
+                next = 0;
+            }
+            long run() {
+                undoing.recordAndMove(undone[next++]);
+                undoing.undo();
+                return undoing.currentState.playerRow;
+            }
+        });
+
+        // What resetGrid() does when a level starts: laying out the pooled
+        // shapes of a GridBuffer for the whole board
+        final GridBuffer grid = new GridBuffer();
+        measure("GridBuffer.build", height, width, layout, new Operation() {
+            long run() {
+                grid.build(level, SCENE_WIDTH, SCENE_HEIGHT);
+                return grid.group.getChildren().size();
+            }
+        });
+
+        // What a window resize does: moving every shape, switching between
+        // two scene sizes so the layout really changes each time
+        measure("GridBuffer.relayout", height, width, layout, new Operation() {
+            boolean wide;
+            long run() {
+                wide = !wide;
+                grid.relayout(wide ? RESIZED_WIDTH : SCENE_WIDTH,
+                        SCENE_HEIGHT);
+                return grid.group.getChildren().size();
+            }
+        });
+
+        // Where a cell is in the scene, the way the player, goal and hint
+        // are placed, from the cells of random positions
+        final BoardLayout board = new BoardLayout();
+        board.update(width, height, SCENE_WIDTH, SCENE_HEIGHT);
+        final int[] cols = new int[BATCH];
+        final int[] rows = new int[BATCH];
+        Operation position = new Operation() {
+            int next;
+            void setup() {
+                for(int i = 0; i < BATCH; i++){
+                    cols[i] = random.nextInt(width);
+                    rows[i] = random.nextInt(height);
+                }
+                next = 0;
+            }
+            long run() {
+                double x = board.x(cols[next]);
+                double y = board.y(rows[next++]);
+                return (long) (x + y);
+            }
+        };
+        measure("BoardLayout.position", height, width, layout, position);
+
+        // Loading the same levels from text files and from a pack
+        File directory =
+            Files.createTempDirectory("streamline-bench").toFile();
+        final DirectoryLevelSource files = writeLevels(directory, level);
+        File packFile = new File(directory, "levels" + LevelPack.EXTENSION);
+        try (LevelPackWriter writer =
+                new LevelPackWriter(packFile, LEVELS_ON_DISK)) {
+            for(int i = 0; i < LEVELS_ON_DISK; i++){
+                writer.add(level);
+            }
+        }
+        final LevelPack pack = new LevelPack(packFile);
+        try {
+            measure("loadLevels.text", height, width, layout, new Operation() {
+                int next;
+                long run() {
+                    next = (next + 1) % files.size();
+                    return new BitboardStreamline(files.describe(next))
+                        .currentState.playerRow;
+                }
+            });
+            measure("loadLevels.pack", height, width, layout, new Operation() {
+                int next;
+                long run() {
+                    next = (next + 1) % pack.size();
+                    try {
+                        return pack.loadState(next).playerRow;
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        finally {
+            pack.close();
+            for(File file : directory.listFiles()){
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Rewinds an engine to the start of its level and picks the moves the
+     * next batch makes, skipping any move that would pass the level, so
+     * every timed move really slides. The engine is left at the start.
+     * @param engine type BitboardStreamline
+     * @param random type Random
+     * @param moves filled with the moves, type Direction[]
+     * @return none
+     */
+    static void planMoves(BitboardStreamline engine, Random random,
+            Direction[] moves) {
+        engine.rewind(Integer.MAX_VALUE);
+        for(int i = 0; i < moves.length; i++){
+            int first = random.nextInt(DIRECTIONS.length);
+            // Only one direction can reach the goal, so another one works
+            for(int tried = 0; tried < DIRECTIONS.length; tried++){
+                moves[i] = DIRECTIONS[(first + tried) % DIRECTIONS.length];
+                engine.recordAndMove(moves[i]);
+                if(!engine.currentState.levelPassed){
+                    break;
+                }
+                engine.undo();
+            }
+        }
+        engine.rewind(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Writes copies of a level as text files.
+     * @param directory where to write them, type File
+     * @param level the level, type BitboardGameState
+     * @return the files as a level source, type DirectoryLevelSource
+     * @throws IOException if the files can't be written
+     */
+    static DirectoryLevelSource writeLevels(File directory,
+            BitboardGameState level) throws IOException {
+        for(int i = 0; i < LEVELS_ON_DISK; i++){
+            LevelFormat.write(level,
+                    new File(directory, String.format("level%03d.txt", i)));
+        }
+        return new DirectoryLevelSource(directory);
+    }
+
+    //-----------------------------------------------------------------------
+    //                             Harness
+    //-----------------------------------------------------------------------
+
+    /**
+     * Warms up and times one benchmark, adding its JSON result.
+     * @param name,height,width,layout what is being timed, type String,
+     * int, int, String
+     * @param operation the operation to time, type Operation
+     * @return none
+     */
+    void measure(String name, int height, int width, String layout,
+            Operation operation) {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++){
+            iteration(operation);
+        }
+        double[] scores = new double[MEASURE_ITERATIONS];
+        for(int i = 0; i < MEASURE_ITERATIONS; i++){
+            scores[i] = iteration(operation);
+        }
+        double mean = 0;
+        for(double score : scores){
+            mean += score / scores.length;
+        }
+        double variance = 0;
+        for(double score : scores){
+            variance += (score - mean) * (score - mean)
+                / Math.max(1, scores.length - 1);
+        }
+        double error = Math.sqrt(variance / scores.length);
+
+        StringBuilder raw = new StringBuilder();
+        for(int i = 0; i < scores.length; i++){
+            raw.append(i == 0 ? "" : ", ")
+                .append(String.format(Locale.ROOT, "%.3f", scores[i]));
+        }
+        results.add(String.format(Locale.ROOT,
+                    "  {\"benchmark\": \"%s\", \"params\": {\"size\": " +
+                    "\"%dx%d\", \"layout\": \"%s\"}, \"mode\": \"avgt\", " +
+                    "\"unit\": \"ns/op\", \"score\": %.3f, " +
+                    "\"scoreError\": %.3f, \"iterations\": [%s]}",
+                    name, width, height, layout, mean, error, raw));
+        System.out.printf(Locale.ROOT,
+                "%-20s %9s %-7s %14.1f ns/op (+- %.1f)\n", name,
+                width + "x" + height, layout, mean, error);
+    }
+
+    /**
+     * Runs the operation in batches for one iteration's worth of time.
+     * Only the batches are timed, not the setup before each one.
+     * @param operation type Operation
+     * @return the average nanoseconds per operation, type double
+     */
+    double iteration(Operation operation) {
+        long operations = 0;
+        long sum = 0;
+        long elapsed = 0;
+        do {
+            operation.setup();
+            long start = System.nanoTime();
+            for(int i = 0; i < BATCH; i++){
+                sum += operation.run();
+            }
+            elapsed += System.nanoTime() - start;
+            operations += BATCH;
+        } while(elapsed < iterationNanos);
+        sink += sum;
+        return (double) elapsed / operations;
+    }
+
+    /**
+     * Writes all results as a JSON array.
+     * @param file where to write, type File
+     * @return none
+     * @throws IOException if the file can't be written
+     */
+    void writeJson(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("[");
+            for(int i = 0; i < results.size(); i++){
+                out.print(results.get(i));
+                out.println(i + 1 < results.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    /**
+     * Runs every benchmark. Never starts JavaFX, so it works without a
+     * display.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 2) {
+            System.out.print(USAGE);
+            return;
+        }
+        File output = new File(args.length > 0 ? args[0] : DEFAULT_OUTPUT);
+        boolean quick = args.length > 1 && QUICK.equals(args[1]);
+        StreamlineBenchmark benchmark = new StreamlineBenchmark(
+                quick ? QUICK_ITERATION_NANOS : ITERATION_NANOS);
+        for(int[] size : SIZES){
+            for(int i = 0; i < LAYOUTS.length; i++){
+                benchmark.runAll(size[0], size[1], LAYOUTS[i], DENSITIES[i]);
+            }
+        }
+        benchmark.writeJson(output);
+        System.out.printf("Wrote %d results to %s\n",
+                benchmark.results.size(), output);
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: StreamlineServer.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file hosts many games of Streamline at once for bots and tests,
+ without JavaFX. Clients connect over TCP on the loopback address and send
+ one command per line; every command gets a reply line starting with OK or
+ ERR. Each connection has its own thread, and the games live in a
+ SessionStore, so connections on different cores don't wait on each
+ other. Replies are only flushed once a client has no more commands
+ waiting, so a client that sends many commands at once gets its replies in
+ few packets.
+
+ Commands (ids are session ids, directions are up, down, left or right):
+   LOAD <file> [level]              a text level, or a level of a pack
+   RANDOM <height> <width> <density> [seed]
+   MOVE <id> <direction>            reply: OK <row> <col> <WON|PLAYING>
+   UNDO <id> [count]                reply: OK <row> <col> <WON|PLAYING>
+   STATE <id>                       reply: OK <height> <width> <row> <col>
+                                      <goalRow> <goalCol> <moves>
+                                      <WON|PLAYING>
+   BOARD <id>                       reply: OK <height>, then the rows
+   CLOSE <id>
+   STATS                            reply: OK <sessions> <commands>
+   QUIT
+ LOAD and RANDOM reply OK <id>. A connection can only use the sessions it
+ made, and they are closed when it disconnects. RANDOM boards are kept
+ small enough that a BOARD reply stays a reasonable size. Only the packs
+ loaded from most recently are kept open.
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A headless server of independent Streamline sessions.
+ */
+public class StreamlineServer {
+    static final int DEFAULT_PORT = 7878;
+    static final String USAGE =
+        "Usage: \n" +
+        "> java StreamlineServer [port]   - to host games on the loopback " +
+        "address, port " + DEFAULT_PORT + " by default\n";
+    static final int BACKLOG = 1024;    // connections waiting to be accepted
+    static final String OK = "OK";
+    static final String ERROR = "ERR";
+    static final String WON = "WON";
+    static final String PLAYING = "PLAYING";
+    static final String SEPARATOR = " ";
+    static final String LINE_SEPARATOR = "\n";
+    static final int NO_LEVEL = -1;
+    // Largest RANDOM or LOAD board, 512 x 512, so a BOARD reply is at most
+    // a quarter of a megabyte
+    static final int MAX_RANDOM_CELLS = 1 << 18;
+    static final int MAX_OPEN_PACKS = 16;
+
+    final SessionStore sessions = new SessionStore();
+    final AtomicLong commands = new AtomicLong();
+    // Packs loaded from recently, least recently used first
+    final LinkedHashMap<String, OpenPack> packs =
+        new LinkedHashMap<String, OpenPack>(16, 0.75f, true);
+    final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "streamline-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Accepts connections until the program is stopped.
+     * @param port the port to listen on, type int
+     * @return none
+     * @throws IOException if the port can't be opened
+     */
+    void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, BACKLOG,
+                    InetAddress.getLoopbackAddress())) {
+            System.out.println("Serving Streamline on "
+                    + server.getLocalSocketAddress());
+            while(true){
+                Socket socket = server.accept();
+                connections.execute(() -> handle(socket));
+            }
+        }
+        finally {
+            closePacks();
+        }
+    }
+
+    /**
+     * Runs one connection's commands until it quits or disconnects.
+     * @param socket type Socket
+     * @return none
+     */
+    void handle(Socket socket) {
+        Set<Long> owned = new HashSet<Long>();
+        try (Socket client = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        client.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                        client.getOutputStream(), StandardCharsets.UTF_8))) {
+            client.setTcpNoDelay(true);
+            String line;
+            while((line = in.readLine()) != null){
+                String[] words = line.trim().split("\\s+");
+                if(words[0].equalsIgnoreCase("QUIT")){
+                    break;
+                }
+                out.write(execute(words, owned));
+                out.write(LINE_SEPARATOR);
+                // Replies to commands already sent go out together
+                if(!in.ready()){
+                    out.flush();
+                }
+            }
+            out.flush();
+        }
+        catch (IOException e) {
+            // The client went away, its sessions are closed below
+        }
+        finally {
+            for(long id : owned){
+                sessions.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Runs one command.
+     * @param words the command and its arguments, type String[]
+     * @param owned sessions this connection made, the only ones it may
+     * use, type Set<Long>
+     * @return the reply, without the line separator, type String
+     */
+    String execute(String[] words, Set<Long> owned) {
+        commands.incrementAndGet();
+        try {
+            switch (words[0].toUpperCase(Locale.ROOT)) {
+                case "LOAD":
+                    return open(load(words), owned);
+                case "RANDOM":
+                    return open(random(words), owned);
+                case "MOVE":
+                    return move(words, owned);
+                case "UNDO":
+                    return undo(words, owned);
+                case "STATE":
+                    return state(words, owned);
+                case "BOARD":
+                    return board(words, owned);
+                case "CLOSE":
+                    long id = parseId(words);
+                    // Someone else's session looks the same as none
+                    return owned.remove(id) && sessions.remove(id)
+                        ? OK : error("no session " + id);
+                case "STATS":
+                    return OK + SEPARATOR + sessions.size() + SEPARATOR
+                        + commands.get();
+                default:
+                    return error("unknown command " + words[0]);
+            }
+        }
+        catch (IOException | NoSuchElementException e) {
+            return error(e.getMessage());
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return error("bad arguments to " + words[0]);
+        }
+    }
+
+    private String open(BitboardStreamline game, Set<Long> owned) {
+        long id = sessions.add(game);
+        owned.add(id);
+        return OK + SEPARATOR + id;
+    }
+
+    private static String error(String message) {
+        return ERROR + SEPARATOR + message;
+    }
+
+    //-----------------------------------------------------------------------
+    //                              Commands
+    //-----------------------------------------------------------------------
+
+    /**
+     * LOAD: reads a text level, or a level of a level pack. Levels bigger
+     * than RANDOM allows are refused before they are read.
+     * @param words type String[]
+     * @return the new game, type BitboardStreamline
+     * @throws IOException if the level can't be read or is too big
+     */
+    BitboardStreamline load(String[] words) throws IOException {
+        File file = new File(words[1]);
+        int level = words.length > 2 ? Integer.parseInt(words[2]) - 1
+            : NO_LEVEL;
+        if(level == NO_LEVEL && !LevelPack.isPack(file)){
+            return new BitboardStreamline(LevelFormat.read(file,
+                        MAX_RANDOM_CELLS));
+        }
+        OpenPack open = openPack(file);
+        try {
+            level = Math.max(level, 0);
+            if(level >= open.pack.size()){
+                throw new IOException(file + " has only " + open.pack.size()
+                        + " levels");
+            }
+            if(open.pack.cells(level) > MAX_RANDOM_CELLS){
+                throw new IOException(open.pack.describe(level)
+                        + " has more than " + MAX_RANDOM_CELLS + " cells");
+            }
+            return open.pack.load(level);
+        }
+        finally {
+            releasePack(open);
+        }
+    }
+
+    /**
+     * A pack kept open between LOADs, and how many LOADs are reading it.
+     */
+    static class OpenPack {
+        final LevelPack pack;
+        int users;
+        boolean dropped;                // pushed out of packs
+
+        OpenPack(LevelPack pack) {
+            this.pack = pack;
+        }
+    }
+
+    /**
+     * Finds a pack in packs, or opens it, pushing out the least recently
+     * used pack if too many are open. A pack pushed out is closed once no
+     * LOAD is reading it. Every call must be matched by releasePack().
+     * @param file type File
+     * @return the pack, type OpenPack
+     * @throws IOException if the pack can't be opened
+     */
+    OpenPack openPack(File file) throws IOException {
+        synchronized (packs) {
+            String path = file.getAbsolutePath();
+            OpenPack open = packs.get(path);
+            if(open == null){
+                open = new OpenPack(new LevelPack(file));
+                packs.put(path, open);
+                Iterator<OpenPack> eldest = packs.values().iterator();
+                while(packs.size() > MAX_OPEN_PACKS){
+                    OpenPack old = eldest.next();
+                    eldest.remove();
+                    old.dropped = true;
+                    closeIfUnused(old);
+                }
+            }
+            open.users++;
+            return open;
+        }
+    }
+
+    /**
+     * Says a LOAD is done with a pack from openPack().
+     * @param open type OpenPack
+     * @return none
+     */
+    void releasePack(OpenPack open) {
+        synchronized (packs) {
+            open.users--;
+            closeIfUnused(open);
+        }
+    }
+
+    private static void closeIfUnused(OpenPack open) {
+        if(open.dropped && open.users == 0){
+            try {
+                open.pack.close();
+            }
+            catch (IOException e) {
+                // nothing was written, there is nothing to lose
+            }
+        }
+    }
+
+    /**
+     * Closes every open pack.
+     * @param none
+     * @return none
+     */
+    void closePacks() {
+        synchronized (packs) {
+            for(OpenPack open : packs.values()){
+                open.dropped = true;
+                closeIfUnused(open);
+            }
+            packs.clear();
+        }
+    }
+
+    /**
+     * RANDOM: makes a random level.
+     * @param words type String[]
+     * @return the new game, type BitboardStreamline
+     */
+    BitboardStreamline random(String[] words) {
+        int height = Integer.parseInt(words[1]);
+        int width = Integer.parseInt(words[2]);
+        double density = Double.parseDouble(words[3]);
+        if(height <= 0 || width <= 0
+                || (long) height * width > MAX_RANDOM_CELLS){
+            throw new IllegalArgumentException();
+        }
+        Random random = words.length > 4
+            ? new Random(Long.parseLong(words[4])) : new Random();
+        return new BitboardStreamline(
+                BitboardGameState.random(height, width, density, random));
+    }
+
+    /**
+     * MOVE: slides the player of a session.
+     * @param words type String[]
+     * @param owned sessions the connection made, type Set<Long>
+     * @return the reply, type String
+     */
+    String move(String[] words, Set<Long> owned) {
+        BitboardStreamline game = session(words, owned);
+        Direction direction =
+            Direction.valueOf(words[2].toUpperCase(Locale.ROOT));
+        synchronized (game) {
+            game.recordAndMove(direction);
+            return position(game);
+        }
+    }
+
+    /**
+     * UNDO: takes back one or more moves of a session.
+     * @param words type String[]
+     * @param owned sessions the connection made, type Set<Long>
+     * @return the reply, type String
+     */
+    String undo(String[] words, Set<Long> owned) {
+        BitboardStreamline game = session(words, owned);
+        int count = words.length > 2 ? Integer.parseInt(words[2]) : 1;
+        if(count <= 0){
+            throw new IllegalArgumentException();
+        }
+        synchronized (game) {
+            if(count == 1){
+                game.undo();
+            }
+            else{
+                game.rewind(count);
+            }
+            return position(game);
+        }
+    }
+
+    /**
+     * STATE: describes a session's level in one line.
+     * @param words type String[]
+     * @param owned sessions the connection made, type Set<Long>
+     * @return the reply, type String
+     */
+    String state(String[] words, Set<Long> owned) {
+        BitboardStreamline game = session(words, owned);
+        synchronized (game) {
+            BitboardGameState state = game.currentState;
+            return OK + SEPARATOR + state.height + SEPARATOR + state.width
+                + SEPARATOR + state.playerRow + SEPARATOR + state.playerCol
+                + SEPARATOR + state.goalRow + SEPARATOR + state.goalCol
+                + SEPARATOR + game.history.position() + SEPARATOR
+                + status(state);
+        }
+    }
+
+    /**
+     * BOARD: the rows of a session's board, as in a level file.
+     * @param words type String[]
+     * @param owned sessions the connection made, type Set<Long>
+     * @return the reply, type String
+     */
+    String board(String[] words, Set<Long> owned) {
+        BitboardStreamline game = session(words, owned);
+        synchronized (game) {
+            BitboardGameState state = game.currentState;
+            StringBuilder reply = new StringBuilder(
+                    (state.width + 1) * (state.height + 1));
+            reply.append(OK).append(SEPARATOR).append(state.height);
+            for(int row = 0; row < state.height; row++){
+                reply.append(LINE_SEPARATOR);
+                for(int col = 0; col < state.width; col++){
+                    reply.append(state.charAt(row, col));
+                }
+            }
+            return reply.toString();
+        }
+    }
+
+    /**
+     * Finds the game of a session the connection made.
+     * @param words the command, with the session id second, type String[]
+     * @param owned sessions the connection made, type Set<Long>
+     * @return the game, type BitboardStreamline
+     * @throws NoSuchElementException if the connection has no such
+     * session
+     */
+    private BitboardStreamline session(String[] words, Set<Long> owned) {
+        long id = parseId(words);
+        BitboardStreamline game = owned.contains(id) ? sessions.get(id)
+            : null;
+        if(game == null){
+            throw new NoSuchElementException("no session " + id);
+        }
+        return game;
+    }
+
+    private static long parseId(String[] words) {
+        return Long.parseLong(words[1]);
+    }
+
+    private static String position(BitboardStreamline game) {
+        BitboardGameState state = game.currentState;
+        return OK + SEPARATOR + state.playerRow + SEPARATOR + state.playerCol
+            + SEPARATOR + status(state);
+    }
+
+    private static String status(BitboardGameState state) {
+        return state.levelPassed ? WON : PLAYING;
+    }
+
+    /**
+     * Starts the server.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length > 1){
+            System.out.print(USAGE);
+            return;
+        }
+        int port = args.length == 1 ? Integer.parseInt(args[0])
+            : DEFAULT_PORT;
+        new StreamlineServer().serve(port);
+    }
+}
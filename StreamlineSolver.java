@@ -0,0 +1,371 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: StreamlineSolver.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file searches for a way to get the player to the goal. Small boards
+ are searched breadth first, one layer at a time, with every layer split
+ across a fork join pool. Large boards are searched with A*. Both searches
+ skip states they have already seen by looking up the state's Zobrist hash
+ in a TranspositionTable.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Headless solver for Streamline levels. It never changes the state it is
+ * given, it always works on copies.
+ */
+public class StreamlineSolver {
+    // Boards with more cells than this are searched with A* instead of BFS
+    static final int BFS_MAX_CELLS = 30 * 30;
+    // The search gives up after seeing this many states
+    static final int DEFAULT_MAX_STATES = 1 << 20;
+    // Layers smaller than this are expanded on the calling thread
+    static final int PARALLEL_THRESHOLD = 256;
+    // Number of nodes each fork join task expands without splitting
+    static final int TASK_CHUNK = 64;
+    // Lowest number of moves left when the player shares a row or column
+    // with the goal, and when it does not
+    static final int ALIGNED_MOVES = 1;
+    static final int UNALIGNED_MOVES = 2;
+
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    final ForkJoinPool pool;
+    final int maxStates;
+
+    /**
+     * Constructor that creates a solver running on the common pool.
+     * @param none
+     * @return none, constructor method
+     */
+    public StreamlineSolver() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * Constructor that creates a solver running on the given pool.
+     * @param pool the pool to search on, type ForkJoinPool
+     * @param maxStates give up after seeing this many states, type int
+     * @return none, constructor method
+     */
+    public StreamlineSolver(ForkJoinPool pool, int maxStates) {
+        this.pool = pool;
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Solves on the solver's pool without blocking the calling thread. The
+     * state is copied right away, so the caller can keep changing it.
+     * @param start the state to solve from, type BitboardGameState
+     * @return the future solution, type CompletableFuture
+     */
+    public CompletableFuture<Solution> solveAsync(BitboardGameState start) {
+        BitboardGameState copy = new BitboardGameState(start);
+        return CompletableFuture.supplyAsync(() -> solve(copy), pool);
+    }
+
+    /**
+     * Solves with BFS on small boards and A* on large ones.
+     * @param start the state to solve from, type BitboardGameState
+     * @return the solution, type Solution
+     */
+    public Solution solve(BitboardGameState start) {
+        if(start.height * start.width <= BFS_MAX_CELLS){
+            return solveBfs(start);
+        }
+        return solveAStar(start);
+    }
+
+    /**
+     * Breadth first search. Each layer of the search is expanded in
+     * parallel, so the first layer that reaches the goal gives a shortest
+     * solution. A layer stops being expanded as soon as maxStates states
+     * have been seen, so one huge layer can't run far past the limit.
+     * @param start the state to solve from, type BitboardGameState
+     * @return the solution, type Solution
+     */
+    public Solution solveBfs(BitboardGameState start) {
+        SearchNode root = new SearchNode(hashedCopy(start), null, null, 0);
+        if(root.state.levelPassed){
+            return Solution.found(root, 1);
+        }
+        TranspositionTable seen = new TranspositionTable();
+        seen.add(root.state.hash);
+
+        List<SearchNode> frontier = Collections.singletonList(root);
+        while(!frontier.isEmpty()){
+            // The layer stops at maxStates, so more room is never needed
+            seen.ensureCapacity(Math.min(frontier.size(), maxStates)
+                    * DIRECTIONS.length);
+            List<SearchNode> next;
+            if(frontier.size() < PARALLEL_THRESHOLD){
+                next = expand(frontier, 0, frontier.size(), seen, maxStates);
+            }
+            else{
+                next = pool.invoke(new ExpandTask(frontier, 0,
+                            frontier.size(), seen, maxStates));
+            }
+            // Earlier layers were expanded in full, so any goal found is
+            // still a shortest solution
+            for(SearchNode node : next){
+                if(node.state.levelPassed){
+                    return Solution.found(node, seen.size());
+                }
+            }
+            if(seen.size() > maxStates){
+                return Solution.gaveUp(seen.size());
+            }
+            frontier = next;
+        }
+        return Solution.unsolvable(seen.size());
+    }
+
+    /**
+     * A* search. The heuristic only looks at whether the player shares a
+     * row or column with the goal, so it never overestimates; states are
+     * dropped the first time they are generated, which keeps memory low on
+     * big boards at the cost of solutions that are short but, unlike BFS,
+     * not always the shortest.
+     * @param start the state to solve from, type BitboardGameState
+     * @return the solution, type Solution
+     */
+    public Solution solveAStar(BitboardGameState start) {
+        SearchNode root = new SearchNode(hashedCopy(start), null, null, 0);
+        TranspositionTable seen = new TranspositionTable();
+        seen.add(root.state.hash);
+        PriorityQueue<SearchNode> open =
+            new PriorityQueue<SearchNode>(SearchNode.BY_ESTIMATE);
+        root.estimate = estimateMovesLeft(root.state);
+        open.add(root);
+
+        SearchNode node;
+        while((node = open.poll()) != null){
+            if(node.state.levelPassed){
+                return Solution.found(node, seen.size());
+            }
+            if(seen.size() > maxStates){
+                return Solution.gaveUp(seen.size());
+            }
+            seen.ensureCapacity(DIRECTIONS.length);
+            for(Direction direction : DIRECTIONS){
+                BitboardGameState child = new BitboardGameState(node.state);
+                if(child.move(direction) && seen.add(child.hash)){
+                    SearchNode next = new SearchNode(child, node, direction,
+                            node.depth + 1);
+                    next.estimate = next.depth + estimateMovesLeft(child);
+                    open.add(next);
+                }
+            }
+            // Its children have their own copies now
+            node.state = null;
+        }
+        return Solution.unsolvable(seen.size());
+    }
+
+    /**
+     * Lower bound on the number of moves still needed to reach the goal.
+     * @param state type BitboardGameState
+     * @return the number of moves, type int
+     */
+    static int estimateMovesLeft(BitboardGameState state) {
+        if(state.levelPassed){
+            return 0;
+        }
+        if(state.playerRow == state.goalRow
+                || state.playerCol == state.goalCol){
+            return ALIGNED_MOVES;
+        }
+        return UNALIGNED_MOVES;
+    }
+
+    /**
+     * Copies the state and turns on hashing for the copy.
+     * @param start type BitboardGameState
+     * @return the copy, type BitboardGameState
+     */
+    static BitboardGameState hashedCopy(BitboardGameState start) {
+        BitboardGameState copy = new BitboardGameState(start);
+        // Every node of the search, and every solve of the same level,
+        // share the table and its keys
+        copy.enableSlideTable();
+        if(copy.zobrist == null){
+            copy.enableHashing(new ZobristKeys(copy.height * copy.width));
+        }
+        return copy;
+    }
+
+    /**
+     * Expands part of a BFS layer on the current thread, keeping only the
+     * children that were never seen before. Stops early once more than
+     * maxStates states have been seen.
+     * @param frontier,from,to the nodes to expand, type List, int, int
+     * @param seen the states seen so far, type TranspositionTable
+     * @param maxStates the most states to see, type int
+     * @return the new children, type List
+     */
+    static List<SearchNode> expand(List<SearchNode> frontier, int from, int to,
+            TranspositionTable seen, int maxStates) {
+        List<SearchNode> children = new ArrayList<SearchNode>();
+        for(int i = from; i < to && seen.size() <= maxStates; i++){
+            SearchNode node = frontier.get(i);
+            for(Direction direction : DIRECTIONS){
+                BitboardGameState child = new BitboardGameState(node.state);
+                if(child.move(direction) && seen.add(child.hash)){
+                    children.add(new SearchNode(child, node, direction,
+                                node.depth + 1));
+                }
+            }
+            // Only the path back to the root is needed from here on
+            node.state = null;
+        }
+        return children;
+    }
+
+    /**
+     * Fork join task that expands a range of a BFS layer, splitting it in
+     * half until the pieces are small.
+     */
+    static class ExpandTask extends RecursiveTask<List<SearchNode>> {
+        private static final long serialVersionUID = 1L;
+
+        final List<SearchNode> frontier;
+        final int from, to;
+        final TranspositionTable seen;
+        final int maxStates;
+
+        ExpandTask(List<SearchNode> frontier, int from, int to,
+                TranspositionTable seen, int maxStates) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.seen = seen;
+            this.maxStates = maxStates;
+        }
+
+        @Override
+        protected List<SearchNode> compute() {
+            if(to - from <= TASK_CHUNK){
+                return expand(frontier, from, to, seen, maxStates);
+            }
+            int middle = (from + to) >>> 1;
+            ExpandTask left = new ExpandTask(frontier, from, middle, seen,
+                    maxStates);
+            left.fork();
+            List<SearchNode> right = new ExpandTask(frontier, middle, to,
+                    seen, maxStates).compute();
+            List<SearchNode> children = left.join();
+            children.addAll(right);
+            return children;
+        }
+    }
+
+    /**
+     * A state in the search along with how it was reached.
+     */
+    static class SearchNode {
+        static final Comparator<SearchNode> BY_ESTIMATE =
+            new Comparator<SearchNode>() {
+                @Override
+                public int compare(SearchNode a, SearchNode b) {
+                    if(a.estimate != b.estimate){
+                        return Integer.compare(a.estimate, b.estimate);
+                    }
+                    // Prefer the deeper node, it is closer to a solution
+                    return Integer.compare(b.depth, a.depth);
+                }
+            };
+
+        BitboardGameState state;        // null once the node is expanded
+        final SearchNode parent;
+        final Direction move;           // the move from parent to here
+        final int depth;
+        int estimate;                   // depth plus moves left, for A*
+
+        SearchNode(BitboardGameState state, SearchNode parent, Direction move,
+                int depth) {
+            this.state = state;
+            this.parent = parent;
+            this.move = move;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The result of a search.
+     */
+    public static class Solution {
+        final Direction[] moves;        // null if no solution was found
+        final boolean searchComplete;   // false if the search gave up
+        final int statesSeen;
+
+        Solution(Direction[] moves, boolean searchComplete, int statesSeen) {
+            this.moves = moves;
+            this.searchComplete = searchComplete;
+            this.statesSeen = statesSeen;
+        }
+
+        static Solution found(SearchNode goal, int statesSeen) {
+            Direction[] moves = new Direction[goal.depth];
+            for(SearchNode node = goal; node.parent != null;
+                    node = node.parent){
+                moves[node.depth - 1] = node.move;
+            }
+            return new Solution(moves, true, statesSeen);
+        }
+
+        static Solution unsolvable(int statesSeen) {
+            return new Solution(null, true, statesSeen);
+        }
+
+        static Solution gaveUp(int statesSeen) {
+            return new Solution(null, false, statesSeen);
+        }
+
+        public boolean isSolved() {
+            return moves != null;
+        }
+
+        /**
+         * Whether the level was proven to have no solution, as opposed to
+         * the search giving up.
+         * @param none
+         * @return true if unsolvable, type boolean
+         */
+        public boolean isUnsolvable() {
+            return moves == null && searchComplete;
+        }
+
+        /**
+         * Getter for the first move of the solution.
+         * @param none
+         * @return the move, or null if there is none, type Direction
+         */
+        public Direction firstMove() {
+            return moves == null || moves.length == 0 ? null : moves[0];
+        }
+
+        public int length() {
+            return moves == null ? -1 : moves.length;
+        }
+
+        public Direction[] getMoves() {
+            return moves;
+        }
+
+        public int getStatesSeen() {
+            return statesSeen;
+        }
+    }
+}
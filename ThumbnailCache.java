@@ -0,0 +1,345 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: ThumbnailCache.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file keeps the level thumbnails drawn by ThumbnailRenderer, so
+ scrolling back over levels already seen never loads or draws them again.
+ The least recently used thumbnails are dropped once the cache goes over
+ its memory limit. If it is given a directory, every thumbnail is also
+ written there, one small compressed file each, and thumbnails dropped
+ from memory or drawn by an earlier run are read back from disk instead of
+ parsing their level. The directory has its own limit, and the least
+ recently used files are deleted to stay under it.
+
+ A thumbnail is keyed by where its level comes from and the level's
+ fingerprint, so a level file that was edited gets a new thumbnail.
+
+ File layout, all big endian, compressed with gzip:
+   magic, version, pixel count (ints), then the ARGB pixels (ints)
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An LRU cache of thumbnails in memory, and optionally on disk. All
+ * methods may be called from any thread.
+ */
+public class ThumbnailCache {
+    static final int MAGIC = 0x534C5448;            // "SLTH"
+    static final int VERSION = 1;
+    static final long DEFAULT_MAX_BYTES = 32L << 20;
+    static final long DEFAULT_MAX_DISK_BYTES = 64L << 20;
+    static final String DEFAULT_DIRECTORY = "thumbnails";
+    static final String EXTENSION = ".thumb";
+    static final String TEMP_SUFFIX = ".tmp";
+    static final int HEX = 16;
+    // Rough memory used by an entry besides its pixels
+    static final int ENTRY_OVERHEAD = 64;
+
+    final int pixelCount;               // of every thumbnail
+    final long maxBytes;
+    long bytes;                         // memory used by entries
+    long hits, diskHits, misses;
+    // In access order, least recently used first
+    final LinkedHashMap<Long, int[]> entries =
+        new LinkedHashMap<Long, int[]>(16, 0.75f, true);
+
+    final File directory;               // null if nothing goes to disk
+    final long maxDiskBytes;
+    long diskBytes;                     // size of the files in directory
+    // Size of each file in directory, least recently used first
+    final LinkedHashMap<Long, Long> files =
+        new LinkedHashMap<Long, Long>(16, 0.75f, true);
+    boolean diskFailed;                 // a write failed, disk is off
+
+    /**
+     * Constructor that makes an empty cache kept only in memory.
+     * @param size pixels on each side of a thumbnail, type int
+     * @param maxBytes about how much memory thumbnails may use, type long
+     * @return none, constructor method
+     */
+    public ThumbnailCache(int size, long maxBytes) {
+        this(size, maxBytes, null, 0);
+    }
+
+    /**
+     * Constructor that makes a cache backed by a directory, picking up the
+     * thumbnails an earlier run left there.
+     * @param size pixels on each side of a thumbnail, type int
+     * @param maxBytes about how much memory thumbnails may use, type long
+     * @param directory where thumbnails are written, made if missing, or
+     * null to keep them only in memory, type File
+     * @param maxDiskBytes how much the files may take, type long
+     * @return none, constructor method
+     */
+    public ThumbnailCache(int size, long maxBytes, File directory,
+            long maxDiskBytes) {
+        this.pixelCount = size * size;
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        if(directory == null){
+            return;
+        }
+        directory.mkdirs();
+        File[] saved = directory.listFiles(
+                (dir, name) -> name.endsWith(EXTENSION));
+        if(saved == null){
+            return;
+        }
+        // Oldest first, so the least recently used are deleted first
+        Arrays.sort(saved, Comparator.comparingLong(File::lastModified));
+        for(File file : saved){
+            String name = file.getName();
+            try {
+                long key = Long.parseUnsignedLong(name.substring(0,
+                            name.length() - EXTENSION.length()), HEX);
+                files.put(key, file.length());
+                diskBytes += file.length();
+            }
+            catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        trimDisk();
+    }
+
+    /**
+     * Makes the key of a level's thumbnail.
+     * @param source where the level comes from, type LevelSource
+     * @param index which level, type int
+     * @return the key, type long
+     */
+    static long key(LevelSource source, int index) {
+        long result = BitboardGameState.mix(0, source.fingerprint(index));
+        String description = source.describe(index);
+        for(int i = 0; i < description.length(); i++){
+            result = BitboardGameState.mix(result, description.charAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * Finds a thumbnail in memory only, never touching the disk, so it is
+     * quick enough for the FX thread.
+     * @param key type long
+     * @return the pixels, or null, type int[]
+     */
+    public synchronized int[] getInMemory(long key) {
+        int[] pixels = entries.get(key);
+        if(pixels != null){
+            hits++;
+        }
+        return pixels;
+    }
+
+    /**
+     * Finds a thumbnail in memory, or else on disk. One found on disk is
+     * kept in memory again.
+     * @param key type long
+     * @return the pixels, or null if the level has to be drawn, type int[]
+     */
+    public int[] get(long key) {
+        synchronized (this) {
+            int[] pixels = entries.get(key);
+            if(pixels != null){
+                hits++;
+                return pixels;
+            }
+            if(directory == null || files.get(key) == null){
+                misses++;
+                return null;
+            }
+        }
+        // Read without the lock, so other threads aren't held up
+        File file = fileFor(key);
+        int[] pixels = read(file);
+        synchronized (this) {
+            if(pixels == null){
+                // damaged, or drawn at another size
+                forget(key);
+                misses++;
+                return null;
+            }
+            diskHits++;
+            file.setLastModified(System.currentTimeMillis());
+            putInMemory(key, pixels);
+            return pixels;
+        }
+    }
+
+    /**
+     * Adds a thumbnail, dropping the least recently used ones if the
+     * cache goes over its limits, and writes it to disk.
+     * @param key type long
+     * @param pixels type int[]
+     * @return none
+     */
+    public void put(long key, int[] pixels) {
+        synchronized (this) {
+            putInMemory(key, pixels);
+            if(directory == null || diskFailed){
+                return;
+            }
+        }
+        File file = fileFor(key);
+        File temp = null;
+        try {
+            // A file of its own, in case another thread writes the same key
+            temp = Files.createTempFile(directory.toPath(), file.getName(),
+                    TEMP_SUFFIX).toFile();
+            write(temp, pixels);
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            if(temp != null){
+                temp.delete();
+            }
+            synchronized (this) {
+                if(!diskFailed){
+                    System.out.printf("Not saving thumbnails in %s: %s\n",
+                            directory, e.getMessage());
+                }
+                diskFailed = true;
+            }
+            return;
+        }
+        synchronized (this) {
+            Long old = files.put(key, file.length());
+            if(old != null){
+                diskBytes -= old;
+            }
+            diskBytes += file.length();
+            trimDisk();
+        }
+    }
+
+    private synchronized void putInMemory(long key, int[] pixels) {
+        int[] old = entries.put(key, pixels);
+        if(old != null){
+            bytes -= entrySize(old);
+        }
+        bytes += entrySize(pixels);
+        Iterator<int[]> eldest = entries.values().iterator();
+        while(bytes > maxBytes && eldest.hasNext()){
+            bytes -= entrySize(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static long entrySize(int[] pixels) {
+        return ENTRY_OVERHEAD + (long) pixels.length * Integer.BYTES;
+    }
+
+    /**
+     * Deletes the least recently used files until the directory is under
+     * its limit. Called with the lock held.
+     * @param none
+     * @return none
+     */
+    private void trimDisk() {
+        Iterator<Map.Entry<Long, Long>> eldest = files.entrySet().iterator();
+        while(diskBytes > maxDiskBytes && eldest.hasNext()){
+            Map.Entry<Long, Long> entry = eldest.next();
+            diskBytes -= entry.getValue();
+            fileFor(entry.getKey()).delete();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Deletes one file. Called with the lock held.
+     * @param key type long
+     * @return none
+     */
+    private void forget(long key) {
+        Long size = files.remove(key);
+        if(size != null){
+            diskBytes -= size;
+        }
+        fileFor(key).delete();
+    }
+
+    private File fileFor(long key) {
+        return new File(directory, Long.toHexString(key) + EXTENSION);
+    }
+
+    /**
+     * Reads one thumbnail file.
+     * @param file type File
+     * @return the pixels, or null if the file is damaged or holds a
+     * thumbnail of another size, type int[]
+     */
+    private int[] read(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new GZIPInputStream(new FileInputStream(file))))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != pixelCount){
+                return null;
+            }
+            int[] pixels = new int[pixelCount];
+            for(int i = 0; i < pixelCount; i++){
+                pixels[i] = in.readInt();
+            }
+            return pixels;
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(File file, int[] pixels) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new GZIPOutputStream(
+                            new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pixels.length);
+            for(int pixel : pixels){
+                out.writeInt(pixel);
+            }
+        }
+    }
+
+    /**
+     * Getter for the number of thumbnails in memory.
+     * @param none
+     * @return the count, type int
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Describes how well the cache is doing.
+     * @param none
+     * @return the description, type String
+     */
+    public synchronized String describe() {
+        return String.format("%d hits, %d from disk, %d drawn, %d " +
+                "thumbnails in about %d KB, %d KB on disk", hits, diskHits,
+                misses, entries.size(), bytes >> 10, diskBytes >> 10);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: ThumbnailRenderer.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file draws small pictures of levels for the level select screen. A
+ thumbnail is drawn straight into an array of ARGB pixels on a background
+ thread, with no JavaFX nodes, so the FX thread only copies the finished
+ pixels into an image. Every thumbnail is the same number of pixels, and
+ each pixel looks at one cell, so a huge level costs no more to draw than
+ a small one. Only a level's starting state is loaded to draw it, not the
+ engine and tables needed to play it.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Draws thumbnails of levels on a pool of background threads, using a
+ * ThumbnailCache to skip levels drawn before.
+ */
+public class ThumbnailRenderer {
+    static final int DEFAULT_SIZE = 64;         // pixels on each side
+    static final int RENDER_THREADS =
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    // Where each color goes in the palette
+    static final int BACKGROUND = 0;
+    static final int BOARD = 1;
+    static final int OBSTACLE = 2;
+    static final int TRAIL = 3;
+    static final int GOAL = 4;
+    static final int PLAYER = 5;
+    static final int PALETTE_SIZE = 6;
+    static final int HALF_DIVISOR = 2;
+    static final double PIXEL_CENTER = 0.5;
+
+    final int size;
+    final int[] palette;                // ARGB, indexed by the names above
+    final ThumbnailCache cache;
+    final ExecutorService executor;
+
+    /**
+     * Constructor that starts the render threads.
+     * @param size pixels on each side of a thumbnail, type int
+     * @param palette PALETTE_SIZE ARGB colors, type int[]
+     * @param cache where finished thumbnails are kept, type ThumbnailCache
+     * @return none, constructor method
+     */
+    public ThumbnailRenderer(int size, int[] palette, ThumbnailCache cache) {
+        if(palette.length != PALETTE_SIZE){
+            throw new IllegalArgumentException("palette needs "
+                    + PALETTE_SIZE + " colors");
+        }
+        this.size = size;
+        this.palette = palette.clone();
+        this.cache = cache;
+        this.executor = Executors.newFixedThreadPool(RENDER_THREADS,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "thumbnail");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Draws a level's thumbnail in the background, unless it is cached.
+     * Cancelling the result before a thread gets to it skips the level, so
+     * levels scrolled past before their turn are never loaded.
+     * @param source where the level comes from, type LevelSource
+     * @param index which level, type int
+     * @return the pixels, row major, once drawn, type
+     * CompletableFuture<int[]>
+     */
+    public CompletableFuture<int[]> request(LevelSource source, int index) {
+        final long key = ThumbnailCache.key(source, index);
+        final CompletableFuture<int[]> result =
+            new CompletableFuture<int[]>();
+        int[] cached = cache.getInMemory(key);
+        if(cached != null){
+            result.complete(cached);
+            return result;
+        }
+        executor.execute(() -> {
+            if(result.isDone()){
+                return;
+            }
+            try {
+                int[] pixels = cache.get(key);
+                if(pixels == null){
+                    pixels = render(source.loadState(index));
+                    cache.put(key, pixels);
+                }
+                result.complete(pixels);
+            }
+            catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Draws a thumbnail of a state. The board is centered and keeps its
+     * shape, each pixel showing the cell under its center. The goal and
+     * player are drawn at least one pixel big, so they show on any board.
+     * @param state type BitboardGameState
+     * @return size * size ARGB pixels, row major, type int[]
+     */
+    public int[] render(BitboardGameState state) {
+        int[] pixels = new int[size * size];
+        Arrays.fill(pixels, palette[BACKGROUND]);
+        double cellSize = Math.min((double) size / state.width,
+                (double) size / state.height);
+        int boardWidth = Math.max(1, (int) (state.width * cellSize));
+        int boardHeight = Math.max(1, (int) (state.height * cellSize));
+        int left = (size - boardWidth) / HALF_DIVISOR;
+        int top = (size - boardHeight) / HALF_DIVISOR;
+
+        // The cell under each column and row of pixels
+        int[] colAt = new int[boardWidth];
+        for(int x = 0; x < boardWidth; x++){
+            colAt[x] = Math.min(state.width - 1,
+                    (int) ((x + PIXEL_CENTER) / cellSize));
+        }
+        for(int y = 0; y < boardHeight; y++){
+            int row = Math.min(state.height - 1,
+                    (int) ((y + PIXEL_CENTER) / cellSize));
+            int offset = (top + y) * size + left;
+            for(int x = 0; x < boardWidth; x++){
+                int color = BOARD;
+                if(state.isObstacle(row, colAt[x])){
+                    color = OBSTACLE;
+                }
+                else if(state.isTrail(row, colAt[x])){
+                    color = TRAIL;
+                }
+                pixels[offset + x] = palette[color];
+            }
+        }
+        fillCell(pixels, state.goalRow, state.goalCol, cellSize, left, top,
+                palette[GOAL]);
+        fillCell(pixels, state.playerRow, state.playerCol, cellSize, left,
+                top, palette[PLAYER]);
+        return pixels;
+    }
+
+    /**
+     * Fills the pixels of one cell, at least one pixel.
+     * @param pixels type int[]
+     * @param row,col the cell, type int
+     * @param cellSize pixels per cell, type double
+     * @param left,top where the board starts, type int
+     * @param color ARGB, type int
+     * @return none
+     */
+    private void fillCell(int[] pixels, int row, int col, double cellSize,
+            int left, int top, int color) {
+        int x0 = left + (int) (col * cellSize);
+        int y0 = top + (int) (row * cellSize);
+        int x1 = Math.max(x0 + 1, left + (int) ((col + 1) * cellSize));
+        int y1 = Math.max(y0 + 1, top + (int) ((row + 1) * cellSize));
+        for(int y = y0; y < Math.min(y1, size); y++){
+            for(int x = x0; x < Math.min(x1, size); x++){
+                pixels[y * size + x] = color;
+            }
+        }
+    }
+
+    /**
+     * Stops the render threads. Thumbnails not drawn yet never complete.
+     * @param none
+     * @return none
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: TranspositionTable.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file holds the set of already seen states used by the solver. States
+ are stored only by their 64 bit Zobrist hash in an open addressing table,
+ so adding a state from several threads at once needs no locks.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of Zobrist hashes. add() may be called from many threads at once,
+ * but ensureCapacity() must only be called while no other thread is adding.
+ */
+public class TranspositionTable {
+    static final int DEFAULT_CAPACITY = 1 << 12;
+    static final int MAX_LOAD_DIVISOR = 2;    // keep the table half empty
+    static final long EMPTY_SLOT = 0L;
+    // Stands in for a real hash of 0, which would look like an empty slot
+    static final long ZERO_HASH = 1L;
+    // Mixes the hash before picking a slot (golden ratio multiplier)
+    static final long MIX_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    AtomicLongArray slots;
+    int mask;
+    final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Constructor that creates an empty table with the default capacity.
+     * @param none
+     * @return none, constructor method
+     */
+    public TranspositionTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that creates an empty table with room for at least the
+     * given number of states.
+     * @param expectedStates type int
+     * @return none, constructor method
+     */
+    public TranspositionTable(int expectedStates) {
+        int capacity = Integer.highestOneBit(
+                Math.max(expectedStates * MAX_LOAD_DIVISOR, 1)) << 1;
+        slots = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds a hash to the table.
+     * @param hash type long
+     * @return true if the hash was not in the table yet, type boolean
+     */
+    public boolean add(long hash) {
+        long key = hash == EMPTY_SLOT ? ZERO_HASH : hash;
+        int slot = (int) ((key * MIX_MULTIPLIER) >>> Integer.SIZE) & mask;
+        while(true){
+            long current = slots.get(slot);
+            if(current == key){
+                return false;
+            }
+            if(current == EMPTY_SLOT){
+                if(slots.compareAndSet(slot, EMPTY_SLOT, key)){
+                    size.incrementAndGet();
+                    return true;
+                }
+                // Someone else took the slot, look at it again
+                continue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Getter for the number of hashes in the table.
+     * @param none
+     * @return size, type int
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Grows the table so that the given number of extra hashes can be added
+     * while staying under the maximum load. Not safe to call while other
+     * threads are adding.
+     * @param extra the number of hashes about to be added, type int
+     * @return none
+     */
+    public void ensureCapacity(int extra) {
+        long needed = ((long) size() + extra) * MAX_LOAD_DIVISOR;
+        if(needed <= slots.length()){
+            return;
+        }
+        AtomicLongArray old = slots;
+        int capacity = slots.length();
+        while(capacity < needed){
+            capacity <<= 1;
+        }
+        slots = new AtomicLongArray(capacity);
+        mask = capacity - 1;
+        size.set(0);
+        for(int i = 0; i < old.length(); i++){
+            long key = old.get(i);
+            if(key != EMPTY_SLOT){
+                add(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ Author: Jose Falconi
+ Email: jfalconi@ucsd.edu
+ CS8B Login: cs8bwaaw
+ Date: 3/6/19
+ File: ZobristKeys.java
+ Sources of Help: piazza, tutors, PSA6 writeup
+
+ This file holds the random numbers used to hash a game state. The hash of
+ a state is the xor of one number per trail cell and one number for the
+ cell the player is on, so a move only has to xor in the cells it changed.
+ */
+
+import java.util.SplittableRandom;
+
+/**
+ * Random keys for Zobrist hashing of a BitboardGameState. One set of keys
+ * is made per level and shared by every state of that level.
+ */
+public class ZobristKeys {
+    // Fixed so the same level always hashes the same way
+    static final long DEFAULT_SEED = 0x5EED5EED5EEDL;
+
+    final long[] trailKeys;             // one key per cell with a trail
+    final long[] playerKeys;            // one key per player position
+
+    /**
+     * Constructor that makes keys for a board with the given cell count.
+     * @param cells number of cells on the board, type int
+     * @return none, constructor method
+     */
+    public ZobristKeys(int cells) {
+        this(cells, DEFAULT_SEED);
+    }
+
+    /**
+     * Constructor that makes keys for a board with the given cell count.
+     * @param cells number of cells on the board, type int
+     * @param seed seed for the random numbers, type long
+     * @return none, constructor method
+     */
+    public ZobristKeys(int cells, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        trailKeys = new long[cells];
+        playerKeys = new long[cells];
+        for(int i = 0; i < cells; i++){
+            trailKeys[i] = random.nextLong();
+            playerKeys[i] = random.nextLong();
+        }
+    }
+}